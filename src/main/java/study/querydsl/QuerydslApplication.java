@@ -3,6 +3,7 @@ package study.querydsl;
 import com.querydsl.jpa.impl.JPAQueryFactory;
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
+import org.springframework.boot.context.metrics.buffering.BufferingApplicationStartup;
 import org.springframework.context.annotation.Bean;
 
 import javax.persistence.EntityManager;
@@ -10,9 +11,15 @@ import javax.persistence.EntityManager;
 @SpringBootApplication
 public class QuerydslApplication {
 
+	private static final int STARTUP_EVENTS_CAPACITY = 10_000;
 
 	public static void main(String[] args) {
-		SpringApplication.run(QuerydslApplication.class, args);
+		SpringApplication application = new SpringApplication(QuerydslApplication.class);
+		// -Dquerydsl.startup.report=true 면 빈/단계별 기동 시간을 모은다 (StartupReport, /actuator/startup)
+		if (Boolean.getBoolean("querydsl.startup.report")) {
+			application.setApplicationStartup(new BufferingApplicationStartup(STARTUP_EVENTS_CAPACITY));
+		}
+		application.run(args);
 	}
 
 	@Bean
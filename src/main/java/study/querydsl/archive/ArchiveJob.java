@@ -0,0 +1,69 @@
+package study.querydsl.archive;
+
+import lombok.AccessLevel;
+import lombok.Getter;
+import study.querydsl.dto.MemberSearchCondition;
+
+import java.time.LocalDateTime;
+
+/**
+ * 보관/복원 작업 진행 상태 (GET /v1/admin/archive/jobs/{id})
+ */
+@Getter
+public class ArchiveJob {
+
+    public enum Direction {
+        ARCHIVE, RESTORE
+    }
+
+    public enum State {
+        QUEUED, RUNNING, COMPLETED, FAILED
+    }
+
+    private final long id;
+    private final Direction direction;
+    private final MemberSearchCondition rule;
+    private final int batchSize;
+    private volatile State state = State.QUEUED;
+    private volatile long processed;
+    private volatile LocalDateTime startedAt;
+    private volatile LocalDateTime finishedAt;
+    private volatile String error;
+    @Getter(AccessLevel.NONE)
+    private volatile long startedNanos;
+    @Getter(AccessLevel.NONE)
+    private volatile long elapsedNanos;
+
+    ArchiveJob(long id, Direction direction, MemberSearchCondition rule, int batchSize) {
+        this.id = id;
+        this.direction = direction;
+        this.rule = rule;
+        this.batchSize = batchSize;
+    }
+
+    public double getRowsPerSecond() {
+        long nanos = state == State.RUNNING ? System.nanoTime() - startedNanos : elapsedNanos;
+        return nanos > 0 ? processed * 1_000_000_000.0 / nanos : 0;
+    }
+
+    void started() {
+        startedAt = LocalDateTime.now();
+        startedNanos = System.nanoTime();
+        state = State.RUNNING;
+    }
+
+    void progressed(long rows) {
+        processed += rows;
+    }
+
+    void finished(Throwable failure) {
+        elapsedNanos = System.nanoTime() - startedNanos;
+        finishedAt = LocalDateTime.now();
+        if (failure != null) {
+            error = failure.getMessage();
+            state = State.FAILED;
+        } else {
+            state = State.COMPLETED;
+        }
+    }
+}
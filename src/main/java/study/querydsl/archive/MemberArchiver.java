@@ -0,0 +1,236 @@
+package study.querydsl.archive;
+
+import com.querydsl.core.types.Predicate;
+import com.querydsl.jpa.impl.JPAQueryFactory;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import study.querydsl.changefeed.ChangeLogWriter;
+import study.querydsl.dto.MemberSearchCondition;
+import study.querydsl.entity.ChangeLog;
+import study.querydsl.repository.MemberPredicates;
+import study.querydsl.support.BadRequestException;
+import study.querydsl.support.InLists;
+
+import javax.annotation.PreDestroy;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.LongConsumer;
+
+import static study.querydsl.entity.QMember.member;
+import static study.querydsl.entity.QMemberArchive.memberArchive;
+import static study.querydsl.entity.QTeam.team;
+
+/**
+ * 회원 보관(hot -> cold) / 복원(cold -> hot)
+ *
+ * 규칙(MemberSearchCondition)에 맞는 회원을 id 순서로 batchSize 씩 옮긴다.
+ * 한 batch 는 한 트랜잭션에서 insert ... select 로 복사하고 원래 테이블에서 지운다. 중간에 실패해도 이미 옮긴 batch 는 그대로 남고
+ * 같은 규칙으로 다시 돌리면 남은 것만 옮긴다.
+ *
+ * 기본 검색(MemberJpaRepository.search)은 member 테이블만 보고, includeArchived=true 면 member_archive 도 같이 본다.
+ * 옮길 때 member 테이블이 바뀌므로 검색 ETag 도 같이 바뀐다.
+ */
+@Slf4j
+@Component
+public class MemberArchiver {
+
+    private static final int MAX_KEPT_JOBS = 100;
+
+    private static final String COPY_TO_ARCHIVE =
+            "insert into member_archive (member_id, username, username_lower, age, team_id, archived_at) " +
+                    "select member_id, username, username_lower, age, team_id, ? from member where member_id in (%s)";
+    private static final String DELETE_MEMBER = "delete from member where member_id in (%s)";
+    // 보관 중에 팀이 지워졌으면 member.team_id FK 에 걸리므로 팀 없는 회원으로 복원한다
+    private static final String COPY_TO_MEMBER =
+            "insert into member (member_id, username, username_lower, age, team_id) " +
+                    "select a.member_id, a.username, a.username_lower, a.age, t.id " +
+                    "from member_archive a left join team t on t.id = a.team_id where a.member_id in (%s)";
+    private static final String DELETE_ARCHIVE = "delete from member_archive where member_id in (%s)";
+
+    private final JPAQueryFactory queryFactory;
+    private final JdbcTemplate jdbcTemplate;
+    private final ChangeLogWriter changeLogWriter;
+    private final TransactionTemplate transactionTemplate;
+    private final MeterRegistry meterRegistry;
+    private final ExecutorService executor;
+
+    private final AtomicLong jobIds = new AtomicLong();
+    private final Map<Long, ArchiveJob> jobs = new ConcurrentHashMap<>();
+
+    public MemberArchiver(JPAQueryFactory queryFactory, JdbcTemplate jdbcTemplate, ChangeLogWriter changeLogWriter,
+                          PlatformTransactionManager transactionManager, MeterRegistry meterRegistry) {
+        this.queryFactory = queryFactory;
+        this.jdbcTemplate = jdbcTemplate;
+        this.changeLogWriter = changeLogWriter;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.meterRegistry = meterRegistry;
+        // 보관/복원 작업은 한번에 하나씩
+        this.executor = Executors.newSingleThreadExecutor(r -> {
+            Thread thread = new Thread(r, "member-archiver");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    public ArchiveJob submit(ArchiveJob.Direction direction, MemberSearchCondition rule, int batchSize) {
+        validate(rule, batchSize);
+        ArchiveJob job = new ArchiveJob(jobIds.incrementAndGet(), direction, rule.normalize(), batchSize);
+        jobs.put(job.getId(), job);
+        jobs.remove(job.getId() - MAX_KEPT_JOBS);
+
+        executor.execute(() -> {
+            job.started();
+            try {
+                if (direction == ArchiveJob.Direction.ARCHIVE) {
+                    archive(job.getRule(), batchSize, job::progressed);
+                } else {
+                    restore(job.getRule(), batchSize, job::progressed);
+                }
+                job.finished(null);
+            } catch (RuntimeException e) {
+                log.error("member {} job {} failed", direction, job.getId(), e);
+                job.finished(e);
+            }
+        });
+        return job;
+    }
+
+    public Optional<ArchiveJob> job(long id) {
+        return Optional.ofNullable(jobs.get(id));
+    }
+
+    /**
+     * @return 보관한 회원 수
+     */
+    public long archive(MemberSearchCondition rule, int batchSize) {
+        return archive(rule, batchSize, rows -> {
+        });
+    }
+
+    /**
+     * @return 복원한 회원 수
+     */
+    public long restore(MemberSearchCondition rule, int batchSize) {
+        return restore(rule, batchSize, rows -> {
+        });
+    }
+
+    private long archive(MemberSearchCondition rule, int batchSize, LongConsumer progress) {
+        validate(rule, batchSize);
+        Predicate[] predicates = MemberPredicates.of(rule.normalize());
+        return move(ArchiveJob.Direction.ARCHIVE, batchSize, progress, afterId -> queryFactory
+                .select(member.id)
+                .from(member)
+                .leftJoin(member.team, team)
+                .where(predicates)
+                .where(afterId != null ? member.id.gt(afterId) : null)
+                .orderBy(member.id.asc())
+                .limit(batchSize)
+                .fetch(), ids -> {
+            changeLogWriter.recordMemberTeams(ids, -1);
+            jdbcTemplate.update(String.format(COPY_TO_ARCHIVE, placeholders(ids)),
+                    withLeading(Timestamp.valueOf(LocalDateTime.now()), ids));
+            jdbcTemplate.update(String.format(DELETE_MEMBER, placeholders(ids)), ids.toArray());
+            changeLogWriter.recordAll(ChangeLog.EntityType.MEMBER, ChangeLog.Operation.DELETE, distinct(ids));
+        });
+    }
+
+    private long restore(MemberSearchCondition rule, int batchSize, LongConsumer progress) {
+        validate(rule, batchSize);
+        Predicate[] predicates = MemberPredicates.archiveOf(rule.normalize());
+        return move(ArchiveJob.Direction.RESTORE, batchSize, progress, afterId -> queryFactory
+                .select(memberArchive.id)
+                .from(memberArchive)
+                .leftJoin(team).on(team.id.eq(memberArchive.teamId))
+                .where(predicates)
+                .where(afterId != null ? memberArchive.id.gt(afterId) : null)
+                .orderBy(memberArchive.id.asc())
+                .limit(batchSize)
+                .fetch(), ids -> {
+            jdbcTemplate.update(String.format(COPY_TO_MEMBER, placeholders(ids)), ids.toArray());
+            jdbcTemplate.update(String.format(DELETE_ARCHIVE, placeholders(ids)), ids.toArray());
+            changeLogWriter.recordAll(ChangeLog.EntityType.MEMBER, ChangeLog.Operation.INSERT, distinct(ids));
+            changeLogWriter.recordMemberTeams(ids, 1);
+        });
+    }
+
+    private long move(ArchiveJob.Direction direction, int batchSize, LongConsumer progress,
+                      Function<Long, List<Long>> nextIds,
+                      Consumer<List<Long>> moveBatch) {
+        String tag = direction.name().toLowerCase(Locale.ROOT);
+        long moved = 0;
+        Long lastId = null;
+        while (true) {
+            Long afterId = lastId;
+            long start = System.nanoTime();
+            List<Long> ids = transactionTemplate.execute(status -> {
+                List<Long> batch = nextIds.apply(afterId);
+                if (!batch.isEmpty()) {
+                    moveBatch.accept(InLists.pad(batch));
+                }
+                return batch;
+            });
+            if (ids == null || ids.isEmpty()) {
+                return moved;
+            }
+            meterRegistry.timer("member.archive.batch", "direction", tag).record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+            meterRegistry.counter("member.archive.rows", "direction", tag).increment(ids.size());
+            progress.accept(ids.size());
+            moved += ids.size();
+            lastId = ids.get(ids.size() - 1);
+            if (ids.size() < batchSize) {
+                return moved;
+            }
+        }
+    }
+
+    // 조건 없는 규칙은 전체를 옮기게 되므로 막는다
+    private static void validate(MemberSearchCondition rule, int batchSize) {
+        if (!rule.hasAnyFilter()) {
+            throw new BadRequestException("archive rule needs at least one condition");
+        }
+        if (batchSize < 1) {
+            throw new BadRequestException("batchSize must be positive: " + batchSize);
+        }
+    }
+
+    private static String placeholders(List<Long> ids) {
+        return String.join(", ", Collections.nCopies(ids.size(), "?"));
+    }
+
+    private static Object[] withLeading(Object first, List<Long> ids) {
+        Object[] args = new Object[ids.size() + 1];
+        args[0] = first;
+        for (int i = 0; i < ids.size(); i++) {
+            args[i + 1] = ids.get(i);
+        }
+        return args;
+    }
+
+    private static List<Long> distinct(List<Long> paddedIds) {
+        return new ArrayList<>(new LinkedHashSet<>(paddedIds));
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+}
@@ -0,0 +1,50 @@
+package study.querydsl.changefeed;
+
+import com.querydsl.jpa.impl.JPAQueryFactory;
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Repository;
+import study.querydsl.dto.ChangeDto;
+import study.querydsl.dto.QChangeDto;
+import study.querydsl.support.SearchDeadline;
+
+import java.util.List;
+
+import static study.querydsl.entity.QChangeLog.changeLog;
+
+@Repository
+@RequiredArgsConstructor
+public class ChangeFeedRepository {
+
+    private final JPAQueryFactory queryFactory;
+
+    /**
+     * since 보다 큰 버전의 변경을 버전 순서로 limit 개
+     *
+     * 버전(id)은 커밋 순서대로 정해지므로(ChangeLogWriter) 마지막으로 받은 버전 이하에서 나중에 새로 보이는 변경은 없다.
+     */
+    public List<ChangeDto> findSince(long since, int limit) {
+        return SearchDeadline.apply(queryFactory
+                .select(new QChangeDto(
+                        changeLog.id,
+                        changeLog.entityType,
+                        changeLog.entityId,
+                        changeLog.operation,
+                        changeLog.changedAt))
+                .from(changeLog)
+                .where(changeLog.id.gt(since))
+                .orderBy(changeLog.id.asc())
+                .limit(limit))
+                .fetch();
+    }
+
+    /**
+     * 지금까지 기록된 가장 큰 버전 (없으면 0). 전체를 읽기 전에 받아두고 그 뒤로는 findSince 로 따라간다
+     */
+    public long latestVersion() {
+        Long latest = queryFactory
+                .select(changeLog.id.max())
+                .from(changeLog)
+                .fetchOne();
+        return latest != null ? latest : 0L;
+    }
+}
@@ -0,0 +1,117 @@
+package study.querydsl.changefeed;
+
+import lombok.RequiredArgsConstructor;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.hibernate.event.service.spi.EventListenerRegistry;
+import org.hibernate.event.spi.EventSource;
+import org.hibernate.event.spi.EventType;
+import org.hibernate.event.spi.PostDeleteEvent;
+import org.hibernate.event.spi.PostDeleteEventListener;
+import org.hibernate.event.spi.PostInsertEvent;
+import org.hibernate.event.spi.PostInsertEventListener;
+import org.hibernate.event.spi.PostUpdateEvent;
+import org.hibernate.event.spi.PostUpdateEventListener;
+import org.hibernate.persister.entity.EntityPersister;
+import org.hibernate.proxy.HibernateProxy;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.stereotype.Component;
+import study.querydsl.entity.ChangeLog;
+import study.querydsl.entity.Member;
+import study.querydsl.entity.Team;
+
+import javax.annotation.PostConstruct;
+import javax.persistence.EntityManagerFactory;
+import java.io.Serializable;
+import java.util.Objects;
+
+/**
+ * Member, Team 의 insert/update/delete 를 change_log 에 기록하는 하이버네이트 이벤트 리스너
+ * 엔티티 SQL 이 실행될 때마다 세션별로 모아두고, 커밋 직전에 같은 커넥션(같은 트랜잭션)으로 한 번에 쓴다 (ChangeLogWriter)
+ * 회원의 insert/delete 와 팀 변경, 팀의 insert/delete 는 팀 회원 수(team_member_count) 증감으로도 남긴다
+ *
+ * 아무도 주입받지 않는 빈이라 lazy-initialization(fast 프로파일)에서도 항상 만들어지도록 @Lazy(false)
+ */
+@Lazy(false)
+@Component
+@RequiredArgsConstructor
+public class ChangeLogEventListener implements PostInsertEventListener, PostUpdateEventListener, PostDeleteEventListener {
+
+    private final EntityManagerFactory entityManagerFactory;
+    private final ChangeLogWriter changeLogWriter;
+
+    @PostConstruct
+    public void register() {
+        SessionFactoryImplementor sessionFactory = entityManagerFactory.unwrap(SessionFactoryImplementor.class);
+        EventListenerRegistry registry = sessionFactory.getServiceRegistry().getService(EventListenerRegistry.class);
+        registry.appendListeners(EventType.POST_INSERT, this);
+        registry.appendListeners(EventType.POST_UPDATE, this);
+        registry.appendListeners(EventType.POST_DELETE, this);
+    }
+
+    @Override
+    public void onPostInsert(PostInsertEvent event) {
+        record(event.getSession(), event.getEntity(), event.getId(), ChangeLog.Operation.INSERT);
+        if (event.getEntity() instanceof Member) {
+            changeLogWriter.recordMemberCount(event.getSession(), teamIdOf(event.getPersister(), event.getState()), 1);
+        } else if (event.getEntity() instanceof Team) {
+            changeLogWriter.recordTeamCreated(event.getSession(), (Long) event.getId());
+        }
+    }
+
+    @Override
+    public void onPostUpdate(PostUpdateEvent event) {
+        record(event.getSession(), event.getEntity(), event.getId(), ChangeLog.Operation.UPDATE);
+        // 더티 체킹/merge 로 나간 update 는 읽어온 상태(oldState)가 있다
+        if (event.getEntity() instanceof Member && event.getOldState() != null) {
+            Long oldTeamId = teamIdOf(event.getPersister(), event.getOldState());
+            Long newTeamId = teamIdOf(event.getPersister(), event.getState());
+            if (!Objects.equals(oldTeamId, newTeamId)) {
+                changeLogWriter.recordMemberCount(event.getSession(), oldTeamId, -1);
+                changeLogWriter.recordMemberCount(event.getSession(), newTeamId, 1);
+            }
+        }
+    }
+
+    @Override
+    public void onPostDelete(PostDeleteEvent event) {
+        record(event.getSession(), event.getEntity(), event.getId(), ChangeLog.Operation.DELETE);
+        if (event.getEntity() instanceof Member) {
+            changeLogWriter.recordMemberCount(event.getSession(), teamIdOf(event.getPersister(), event.getDeletedState()), -1);
+        } else if (event.getEntity() instanceof Team) {
+            changeLogWriter.recordTeamDeleted(event.getSession(), (Long) event.getId());
+        }
+    }
+
+    // 커밋 후가 아니라 커밋 전에 같은 트랜잭션으로 기록해야 한다
+    @Override
+    public boolean requiresPostCommitHanding(EntityPersister persister) {
+        return false;
+    }
+
+    private void record(EventSource session, Object entity, Serializable id, ChangeLog.Operation operation) {
+        ChangeLog.EntityType entityType = entityTypeOf(entity);
+        if (entityType == null) {
+            return;
+        }
+        changeLogWriter.record(session, entityType, operation, (Long) id);
+    }
+
+    // 팀이 프록시여도 초기화하지 않고 id 만 꺼낸다
+    private static Long teamIdOf(EntityPersister persister, Object[] state) {
+        Object team = state[persister.getEntityMetamodel().getPropertyIndex("team")];
+        if (team instanceof HibernateProxy) {
+            return (Long) ((HibernateProxy) team).getHibernateLazyInitializer().getIdentifier();
+        }
+        return team == null ? null : ((Team) team).getId();
+    }
+
+    private static ChangeLog.EntityType entityTypeOf(Object entity) {
+        if (entity instanceof Member) {
+            return ChangeLog.EntityType.MEMBER;
+        }
+        if (entity instanceof Team) {
+            return ChangeLog.EntityType.TEAM;
+        }
+        return null;
+    }
+}
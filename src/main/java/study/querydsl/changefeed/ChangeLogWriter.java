@@ -0,0 +1,330 @@
+package study.querydsl.changefeed;
+
+import com.querydsl.core.Tuple;
+import com.querydsl.core.types.SubQueryExpression;
+import com.querydsl.jpa.impl.JPAQueryFactory;
+import org.hibernate.action.spi.AfterTransactionCompletionProcess;
+import org.hibernate.action.spi.BeforeTransactionCompletionProcess;
+import org.hibernate.engine.spi.SessionImplementor;
+import org.hibernate.engine.spi.SharedSessionContractImplementor;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import study.querydsl.entity.ChangeLog;
+import study.querydsl.entity.ChangeLogLock;
+import study.querydsl.support.InLists;
+import study.querydsl.support.TranslatedQuery;
+
+import javax.annotation.PostConstruct;
+import javax.persistence.EntityManager;
+import javax.persistence.LockModeType;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static study.querydsl.entity.QMember.member;
+
+/**
+ * change_log insert
+ *
+ * 엔티티 단위 변경은 ChangeLogEventListener 가 자동으로 기록하지만,
+ * 벌크 update/delete, JDBC update 는 하이버네이트 이벤트가 안 나가므로 그 코드에서 직접 recordAll 을 호출해야 한다.
+ * 호출한 쪽의 트랜잭션에 같이 묶인다.
+ *
+ * 기록은 트랜잭션(세션)마다 모아뒀다가 커밋 직전에 change_log_lock 행을 잠그고 batch insert 한 번으로 쓴다.
+ * 잠금은 커밋할 때 풀리므로 다음 트랜잭션의 id 는 앞 트랜잭션이 커밋된 뒤에 정해진다
+ * -> 어떤 버전이 보이면 그보다 작은 버전은 이미 보이거나(커밋) 영원히 비어 있다(롤백). 읽는 쪽은 max 버전만 기억하면 된다.
+ * 잠그는 구간이 change_log insert + 커밋뿐이라 회원 행 잠금과 엇갈려 데드락이 나지 않는다.
+ * (예외: recordMembers 는 벌크 update 전에 잠근다. 그 사이 같은 회원을 잡고 커밋을 기다리는 트랜잭션이 있으면 DB 가 한쪽을 롤백한다)
+ *
+ * 팀 회원 수(team_member_count)의 증감도 같이 모았다가 잠근 뒤에 팀 id 순서로 반영한다.
+ * 커밋 구간이 이미 잠금 하나로 줄을 서므로 팀 행을 여러 개로 나누지(stripe) 않는다.
+ * 엔티티 변경은 리스너가 원래 팀/새 팀을 알려주고, 벌크 연산은 recordMemberCount / recordMemberTeams 를 직접 호출한다.
+ */
+@Component
+public class ChangeLogWriter {
+
+    static final String INSERT_SQL =
+            "insert into change_log (entity_type, entity_id, operation, changed_at) values (?, ?, ?, ?)";
+    static final String LOCK_SQL =
+            "update change_log_lock set commits = commits + 1 where id = " + ChangeLogLock.ID;
+    // %s 는 회원 id 를 고르는 select (TranslatedQuery)
+    static final String INSERT_MEMBERS_SQL =
+            "insert into change_log (entity_type, entity_id, operation, changed_at) " +
+                    "select ?, member_id, ?, ? from member where member_id in (%s)";
+    static final String CREATE_COUNT_SQL = "insert into team_member_count (team_id, member_count) values (?, 0)";
+    static final String ADD_COUNT_SQL = "update team_member_count set member_count = member_count + ? where team_id = ?";
+    static final String DELETE_COUNT_SQL = "delete from team_member_count where team_id = ?";
+
+    private static final int IN_LIST_CHUNK_SIZE = 256;
+
+    private final EntityManager em;
+    private final JPAQueryFactory queryFactory;
+    private final JdbcTemplate jdbcTemplate;
+    // 세션(= 트랜잭션)별로 커밋 직전까지 모아둔 기록. 커밋이든 롤백이든 끝나면 지운다
+    private final Map<SharedSessionContractImplementor, Pending> pending = new ConcurrentHashMap<>();
+
+    public ChangeLogWriter(EntityManager em, JPAQueryFactory queryFactory, JdbcTemplate jdbcTemplate) {
+        this.em = em;
+        this.queryFactory = queryFactory;
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    // 잠글 행은 기동할 때 한 번 만든다 (ddl-auto: validate 면 이전 실행의 행이 남아있다)
+    @PostConstruct
+    public void createLockRow() {
+        Integer rows = jdbcTemplate.queryForObject(
+                "select count(*) from change_log_lock where id = " + ChangeLogLock.ID, Integer.class);
+        if (rows == null || rows == 0) {
+            jdbcTemplate.update("insert into change_log_lock (id, commits) values (?, 0)", ChangeLogLock.ID);
+        }
+    }
+
+    // 팀 회원 수 행이 없는 팀(validate 로 이전 데이터를 그대로 쓰는 경우)은 기동할 때 한 번 센다
+    @PostConstruct
+    public void createMemberCountRows() {
+        jdbcTemplate.update("insert into team_member_count (team_id, member_count) " +
+                "select t.id, (select count(*) from member m where m.team_id = t.id) from team t " +
+                "where not exists (select 1 from team_member_count c where c.team_id = t.id)");
+    }
+
+    /**
+     * 지금 트랜잭션이 커밋될 때 같이 기록한다. 트랜잭션 밖에서 부르면 기록할 곳이 없으므로 예외
+     */
+    public void recordAll(ChangeLog.EntityType entityType, ChangeLog.Operation operation, Collection<Long> ids) {
+        if (ids.isEmpty()) {
+            return;
+        }
+        Pending records = currentPending();
+        for (Long id : ids) {
+            records.add(entityType, operation, id);
+        }
+    }
+
+    void record(SessionImplementor session, ChangeLog.EntityType entityType, ChangeLog.Operation operation, Long id) {
+        pendingFor(session).add(entityType, operation, id);
+    }
+
+    /**
+     * memberIds 가 고르는 회원을 insert ... select 한 번으로 change_log 에 쓴다 (벌크 update 전에 같은 조건으로 부른다)
+     *
+     * 커밋 직전에 잡던 change_log_lock 을 지금 잡는다. 그래야 바로 쓰는 change_log id 도 커밋 순서를 지키고,
+     * 회원을 바꾸는 다른 트랜잭션은 커밋할 때 이 잠금을 기다리므로 뒤따르는 update 도 같은 회원을 고른다.
+     * 대신 이 트랜잭션이 끝날 때까지 다른 쓰기의 커밋이 기다린다.
+     * @return 기록한 회원 수
+     */
+    public int recordMembers(ChangeLog.Operation operation, SubQueryExpression<Long> memberIds) {
+        // 커밋할 때 남은 기록과 팀 회원 수를 쓰도록 등록해둔다
+        currentPending();
+        jdbcTemplate.update(LOCK_SQL);
+
+        TranslatedQuery selected = TranslatedQuery.of(em, memberIds);
+        List<Object> parameters = new ArrayList<>(selected.getParameters().size() + 3);
+        parameters.add(ChangeLog.EntityType.MEMBER.name());
+        parameters.add(operation.name());
+        parameters.add(Timestamp.valueOf(LocalDateTime.now()));
+        parameters.addAll(selected.getParameters());
+        return jdbcTemplate.update(String.format(INSERT_MEMBERS_SQL, selected.getSql()), parameters.toArray());
+    }
+
+    /**
+     * 지금 트랜잭션이 커밋될 때 팀 회원 수에 delta 를 더한다 (옮긴 팀을 알고 있는 벌크 연산)
+     */
+    public void recordMemberCount(Long teamId, long delta) {
+        if (teamId == null || delta == 0) {
+            return;
+        }
+        currentPending().addMemberCount(teamId, delta);
+    }
+
+    /**
+     * 지금 DB 에 있는 회원들의 팀을 세서 팀 회원 수에 sign(+1/-1) 만큼 더한다
+     * 지우거나 팀을 바꾸기 전에 -1, 넣거나 팀을 바꾼 뒤에 +1 로 부른다 (벌크/JDBC 로 원래 팀을 모르는 경우)
+     * 읽은 팀이 update 전에 다른 트랜잭션에서 바뀌지 않게 회원 행을 잠그고 읽는다
+     */
+    public void recordMemberTeams(Collection<Long> memberIds, int sign) {
+        if (memberIds.isEmpty()) {
+            return;
+        }
+        Pending records = currentPending();
+        for (List<Long> chunk : InLists.chunkAndPad(new LinkedHashSet<>(memberIds), IN_LIST_CHUNK_SIZE)) {
+            List<Tuple> rows = queryFactory
+                    .select(member.id, member.team.id)
+                    .from(member)
+                    .where(member.id.in(chunk))
+                    .setLockMode(LockModeType.PESSIMISTIC_WRITE)
+                    .fetch();
+            for (Tuple row : rows) {
+                Long teamId = row.get(member.team.id);
+                if (teamId != null) {
+                    records.addMemberCount(teamId, sign);
+                }
+            }
+        }
+    }
+
+    void recordMemberCount(SessionImplementor session, Long teamId, long delta) {
+        if (teamId != null && delta != 0) {
+            pendingFor(session).addMemberCount(teamId, delta);
+        }
+    }
+
+    void recordTeamCreated(SessionImplementor session, Long teamId) {
+        pendingFor(session).teamCreated(teamId);
+    }
+
+    void recordTeamDeleted(SessionImplementor session, Long teamId) {
+        pendingFor(session).teamDeleted(teamId);
+    }
+
+    /**
+     * 지금 트랜잭션에서 아직 team_member_count 에 반영되지 않은 증감 (플러시된 것까지)
+     * @return 이 트랜잭션에서 만든 팀이면 created = true
+     */
+    public PendingCount pendingMemberCount(Long teamId) {
+        if (!TransactionSynchronizationManager.isActualTransactionActive()) {
+            return PendingCount.NONE;
+        }
+        Pending records = pending.get(em.unwrap(SessionImplementor.class));
+        return records == null ? PendingCount.NONE : records.memberCount(teamId);
+    }
+
+    private Pending currentPending() {
+        if (!TransactionSynchronizationManager.isActualTransactionActive()) {
+            throw new IllegalStateException("change_log must be recorded inside a transaction");
+        }
+        return pendingFor(em.unwrap(SessionImplementor.class));
+    }
+
+    private Pending pendingFor(SessionImplementor session) {
+        return pending.computeIfAbsent(session, s -> {
+            Pending records = new Pending();
+            session.getActionQueue().registerProcess((BeforeTransactionCompletionProcess) records::write);
+            session.getActionQueue().registerProcess(
+                    (AfterTransactionCompletionProcess) (success, completed) -> pending.remove(completed));
+            return records;
+        });
+    }
+
+    public static class PendingCount {
+        static final PendingCount NONE = new PendingCount(false, false, 0);
+
+        private final boolean created;
+        private final boolean deleted;
+        private final long delta;
+
+        PendingCount(boolean created, boolean deleted, long delta) {
+            this.created = created;
+            this.deleted = deleted;
+            this.delta = delta;
+        }
+
+        public boolean isCreated() {
+            return created;
+        }
+
+        public boolean isDeleted() {
+            return deleted;
+        }
+
+        public long getDelta() {
+            return delta;
+        }
+    }
+
+    private static class Pending {
+        private final List<Object[]> rows = new ArrayList<>();
+        // 팀 id 순서로 반영한다
+        private final Set<Long> createdTeams = new TreeSet<>();
+        private final Set<Long> deletedTeams = new TreeSet<>();
+        private final Map<Long, Long> memberCounts = new TreeMap<>();
+
+        synchronized void add(ChangeLog.EntityType entityType, ChangeLog.Operation operation, Long id) {
+            rows.add(new Object[]{entityType.name(), id, operation.name()});
+        }
+
+        synchronized void addMemberCount(Long teamId, long delta) {
+            memberCounts.merge(teamId, delta, Long::sum);
+        }
+
+        synchronized void teamCreated(Long teamId) {
+            createdTeams.add(teamId);
+        }
+
+        synchronized void teamDeleted(Long teamId) {
+            deletedTeams.add(teamId);
+        }
+
+        synchronized PendingCount memberCount(Long teamId) {
+            return new PendingCount(createdTeams.contains(teamId), deletedTeams.contains(teamId),
+                    memberCounts.getOrDefault(teamId, 0L));
+        }
+
+        // 플러시가 끝난 뒤, 커밋 직전에 하이버네이트가 부른다
+        synchronized void write(SessionImplementor session) {
+            if (rows.isEmpty() && createdTeams.isEmpty() && deletedTeams.isEmpty() && memberCounts.isEmpty()) {
+                return;
+            }
+            session.doWork(connection -> {
+                try (Statement lock = connection.createStatement()) {
+                    lock.executeUpdate(LOCK_SQL);
+                }
+                Timestamp now = Timestamp.valueOf(LocalDateTime.now());
+                try (PreparedStatement statement = connection.prepareStatement(INSERT_SQL)) {
+                    for (Object[] row : rows) {
+                        statement.setString(1, (String) row[0]);
+                        statement.setLong(2, (Long) row[1]);
+                        statement.setString(3, (String) row[2]);
+                        statement.setTimestamp(4, now);
+                        statement.addBatch();
+                    }
+                    statement.executeBatch();
+                }
+                writeMemberCounts(connection);
+            });
+            rows.clear();
+            createdTeams.clear();
+            deletedTeams.clear();
+            memberCounts.clear();
+        }
+
+        private void writeMemberCounts(Connection connection) throws SQLException {
+            try (PreparedStatement statement = connection.prepareStatement(CREATE_COUNT_SQL)) {
+                for (Long teamId : createdTeams) {
+                    statement.setLong(1, teamId);
+                    statement.addBatch();
+                }
+                statement.executeBatch();
+            }
+            try (PreparedStatement statement = connection.prepareStatement(ADD_COUNT_SQL)) {
+                for (Map.Entry<Long, Long> count : memberCounts.entrySet()) {
+                    if (count.getValue() != 0) {
+                        statement.setLong(1, count.getValue());
+                        statement.setLong(2, count.getKey());
+                        statement.addBatch();
+                    }
+                }
+                statement.executeBatch();
+            }
+            try (PreparedStatement statement = connection.prepareStatement(DELETE_COUNT_SQL)) {
+                for (Long teamId : deletedTeams) {
+                    statement.setLong(1, teamId);
+                    statement.addBatch();
+                }
+                statement.executeBatch();
+            }
+        }
+    }
+}
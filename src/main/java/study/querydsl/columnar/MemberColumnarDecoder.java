@@ -0,0 +1,116 @@
+package study.querydsl.columnar;
+
+import study.querydsl.dto.MemberTeamDto;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * MemberColumnarFormat 디코더 (내부 서비스에서 Accept: application/x-member-columnar 로 받을 때 사용)
+ *
+ * List&lt;MemberTeamDto&gt; rows = new MemberColumnarDecoder().decode(response.body());
+ */
+public class MemberColumnarDecoder {
+
+    public List<MemberTeamDto> decode(InputStream source) throws IOException {
+        InputStream in = source instanceof BufferedInputStream ? source : new BufferedInputStream(source);
+        for (byte expected : MemberColumnarFormat.MAGIC) {
+            if (readByte(in) != expected) {
+                throw new IOException("not a member columnar stream");
+            }
+        }
+        int version = readByte(in);
+        if (version != MemberColumnarFormat.VERSION) {
+            throw new IOException("unsupported member columnar version: " + version);
+        }
+
+        int total = (int) readVarint(in);
+        List<MemberTeamDto> rows = new ArrayList<>(total);
+        while (rows.size() < total) {
+            decodeBlock(in, rows);
+        }
+        return rows;
+    }
+
+    public List<MemberTeamDto> decode(byte[] bytes) {
+        try {
+            return decode(new ByteArrayInputStream(bytes));
+        } catch (IOException e) {
+            throw new IllegalArgumentException(e);
+        }
+    }
+
+    private void decodeBlock(InputStream in, List<MemberTeamDto> rows) throws IOException {
+        int size = (int) readVarint(in);
+
+        int dictionarySize = (int) readVarint(in);
+        Long[] teamIds = new Long[dictionarySize];
+        String[] teamNames = new String[dictionarySize];
+        for (int i = 0; i < dictionarySize; i++) {
+            long id = readVarint(in);
+            teamIds[i] = id == 0 ? null : id - 1;
+            teamNames[i] = readString(in);
+        }
+
+        long[] memberIds = new long[size];
+        long previousId = 0;
+        for (int i = 0; i < size; i++) {
+            previousId += unzigzag(readVarint(in));
+            memberIds[i] = previousId;
+        }
+        String[] usernames = new String[size];
+        for (int i = 0; i < size; i++) {
+            usernames[i] = readString(in);
+        }
+        int[] ages = new int[size];
+        for (int i = 0; i < size; i++) {
+            ages[i] = (int) unzigzag(readVarint(in));
+        }
+        for (int i = 0; i < size; i++) {
+            int team = (int) readVarint(in);
+            rows.add(new MemberTeamDto(memberIds[i], usernames[i], ages[i], teamIds[team], teamNames[team]));
+        }
+    }
+
+    private String readString(InputStream in) throws IOException {
+        long length = readVarint(in);
+        if (length == 0) {
+            return null;
+        }
+        byte[] bytes = in.readNBytes((int) (length - 1));
+        if (bytes.length != length - 1) {
+            throw new EOFException();
+        }
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private long readVarint(InputStream in) throws IOException {
+        long result = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            int b = readByte(in);
+            result |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return result;
+            }
+        }
+        throw new IOException("malformed varint");
+    }
+
+    private int readByte(InputStream in) throws IOException {
+        int b = in.read();
+        if (b < 0) {
+            throw new EOFException();
+        }
+        return b;
+    }
+
+    static long unzigzag(long value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+}
@@ -0,0 +1,165 @@
+package study.querydsl.columnar;
+
+import study.querydsl.dto.MemberTeamDto;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+import static study.querydsl.columnar.MemberColumnarFormat.BLOCK_ROWS;
+
+/**
+ * 검색 결과 행들을 MemberColumnarFormat 으로 인코딩한다
+ *
+ * 스트리밍 인코더가 아니다. 헤더에 전체 행 수를 먼저 쓰므로 이미 다 읽어온 List 를 받는다 (검색 결과 전체는 메모리에 있다).
+ * 인코딩한 바이트는 블록 하나씩 내부 버퍼에 모았다가 out 으로 내보내므로, 결과 전체를 byte[] 로 한번 더 들고 있지는 않는다.
+ */
+public class MemberColumnarEncoder {
+
+    private byte[] buffer = new byte[64 * 1024];
+    private int position;
+
+    public void encode(List<MemberTeamDto> rows, OutputStream out) throws IOException {
+        position = 0;
+        for (byte b : MemberColumnarFormat.MAGIC) {
+            writeByte(b);
+        }
+        writeByte(MemberColumnarFormat.VERSION);
+        writeVarint(rows.size());
+        flushTo(out);
+
+        for (int from = 0; from < rows.size(); from += BLOCK_ROWS) {
+            encodeBlock(rows.subList(from, Math.min(from + BLOCK_ROWS, rows.size())));
+            flushTo(out);
+        }
+    }
+
+    public byte[] encode(List<MemberTeamDto> rows) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try {
+            encode(rows, out);
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+        return out.toByteArray();
+    }
+
+    private void encodeBlock(List<MemberTeamDto> block) {
+        writeVarint(block.size());
+
+        // 팀 사전
+        Map<TeamKey, Integer> dictionary = new HashMap<>();
+        int[] teamIndexes = new int[block.size()];
+        for (int i = 0; i < block.size(); i++) {
+            MemberTeamDto row = block.get(i);
+            TeamKey key = new TeamKey(row.getTeamId(), row.getTeamName());
+            Integer index = dictionary.get(key);
+            if (index == null) {
+                index = dictionary.size();
+                dictionary.put(key, index);
+            }
+            teamIndexes[i] = index;
+        }
+        TeamKey[] entries = new TeamKey[dictionary.size()];
+        dictionary.forEach((key, index) -> entries[index] = key);
+        writeVarint(entries.length);
+        for (TeamKey entry : entries) {
+            writeNullableId(entry.teamId);
+            writeString(entry.teamName);
+        }
+
+        long previousId = 0;
+        for (MemberTeamDto row : block) {
+            long id = Objects.requireNonNull(row.getMemberId(), "memberId");
+            writeVarint(zigzag(id - previousId));
+            previousId = id;
+        }
+        for (MemberTeamDto row : block) {
+            writeString(row.getUsername());
+        }
+        for (MemberTeamDto row : block) {
+            writeVarint(zigzag(row.getAge()));
+        }
+        for (int index : teamIndexes) {
+            writeVarint(index);
+        }
+    }
+
+    private void writeNullableId(Long id) {
+        writeVarint(id == null ? 0 : id + 1);
+    }
+
+    private void writeString(String value) {
+        if (value == null) {
+            writeVarint(0);
+            return;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        writeVarint(bytes.length + 1L);
+        ensureCapacity(bytes.length);
+        System.arraycopy(bytes, 0, buffer, position, bytes.length);
+        position += bytes.length;
+    }
+
+    private void writeVarint(long value) {
+        ensureCapacity(10);
+        while ((value & ~0x7FL) != 0) {
+            buffer[position++] = (byte) ((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        buffer[position++] = (byte) value;
+    }
+
+    private void writeByte(int value) {
+        ensureCapacity(1);
+        buffer[position++] = (byte) value;
+    }
+
+    private void ensureCapacity(int extra) {
+        if (position + extra > buffer.length) {
+            buffer = Arrays.copyOf(buffer, Math.max(buffer.length * 2, position + extra));
+        }
+    }
+
+    private void flushTo(OutputStream out) throws IOException {
+        out.write(buffer, 0, position);
+        position = 0;
+    }
+
+    static long zigzag(long value) {
+        return (value << 1) ^ (value >> 63);
+    }
+
+    private static final class TeamKey {
+        private final Long teamId;
+        private final String teamName;
+
+        TeamKey(Long teamId, String teamName) {
+            this.teamId = teamId;
+            this.teamName = teamName;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof TeamKey)) {
+                return false;
+            }
+            TeamKey other = (TeamKey) o;
+            return Objects.equals(teamId, other.teamId) && Objects.equals(teamName, other.teamName);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(teamId, teamName);
+        }
+    }
+}
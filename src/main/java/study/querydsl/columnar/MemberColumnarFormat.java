@@ -0,0 +1,34 @@
+package study.querydsl.columnar;
+
+import org.springframework.http.MediaType;
+
+/**
+ * List&lt;MemberTeamDto&gt; 용 컬럼 기반 바이너리 포맷
+ *
+ * <pre>
+ * header   : 'M' 'T' 'C' version(1byte) rowCount(varint)
+ * block*   : rows(varint)                                  -- 블록당 최대 BLOCK_ROWS 행
+ *            teamDictSize(varint)
+ *              { teamId(varint, +1 / 0=null) teamName(string) } * teamDictSize
+ *            memberId  : zigzag varint, 이전 행과의 차이 (블록 첫 행은 0 기준)
+ *            username  : string * rows
+ *            age       : zigzag varint * rows
+ *            team      : varint * rows                     -- 팀 사전의 인덱스
+ * string   : length(varint, +1 / 0=null) utf-8 bytes
+ * </pre>
+ *
+ * JSON 은 행마다 필드 이름을 반복하지만, 여기서는 팀 정보는 사전으로 한번만 쓰고 (teamId 가 같으면 teamName 도 같다)
+ * memberId 는 보통 정렬/증가 순서라 차이값이 1바이트로 끝나고, age 도 대부분 1바이트다.
+ */
+public final class MemberColumnarFormat {
+
+    public static final String MEDIA_TYPE_VALUE = "application/x-member-columnar";
+    public static final MediaType MEDIA_TYPE = MediaType.parseMediaType(MEDIA_TYPE_VALUE);
+
+    static final byte[] MAGIC = {'M', 'T', 'C'};
+    static final int VERSION = 1;
+    static final int BLOCK_ROWS = 1024;
+
+    private MemberColumnarFormat() {
+    }
+}
@@ -0,0 +1,62 @@
+package study.querydsl.columnar;
+
+import org.springframework.core.ResolvableType;
+import org.springframework.http.HttpInputMessage;
+import org.springframework.http.HttpOutputMessage;
+import org.springframework.http.MediaType;
+import org.springframework.http.converter.AbstractGenericHttpMessageConverter;
+import study.querydsl.dto.MemberTeamDto;
+
+import java.io.IOException;
+import java.lang.reflect.Type;
+import java.util.List;
+
+/**
+ * Accept: application/x-member-columnar 일 때 List&lt;MemberTeamDto&gt; 응답을 컬럼 포맷으로 쓴다
+ * 다른 타입의 응답이나 Accept 가 없는 요청은 그대로 JSON 으로 나간다.
+ */
+public class MemberColumnarHttpMessageConverter extends AbstractGenericHttpMessageConverter<List<MemberTeamDto>> {
+
+    public MemberColumnarHttpMessageConverter() {
+        super(MemberColumnarFormat.MEDIA_TYPE);
+    }
+
+    @Override
+    protected boolean supports(Class<?> clazz) {
+        return List.class.isAssignableFrom(clazz);
+    }
+
+    @Override
+    public boolean canRead(Type type, Class<?> contextClass, MediaType mediaType) {
+        return isMemberTeamDtoList(type) && canRead(mediaType);
+    }
+
+    @Override
+    public boolean canWrite(Type type, Class<?> clazz, MediaType mediaType) {
+        return isMemberTeamDtoList(type) && supports(clazz) && canWrite(mediaType);
+    }
+
+    @Override
+    protected void writeInternal(List<MemberTeamDto> rows, Type type, HttpOutputMessage outputMessage) throws IOException {
+        new MemberColumnarEncoder().encode(rows, outputMessage.getBody());
+    }
+
+    @Override
+    protected List<MemberTeamDto> readInternal(Class<? extends List<MemberTeamDto>> clazz, HttpInputMessage inputMessage) throws IOException {
+        return new MemberColumnarDecoder().decode(inputMessage.getBody());
+    }
+
+    @Override
+    public List<MemberTeamDto> read(Type type, Class<?> contextClass, HttpInputMessage inputMessage) throws IOException {
+        return new MemberColumnarDecoder().decode(inputMessage.getBody());
+    }
+
+    private static boolean isMemberTeamDtoList(Type type) {
+        if (type == null) {
+            return false;
+        }
+        ResolvableType resolved = ResolvableType.forType(type);
+        return List.class.isAssignableFrom(resolved.toClass())
+                && MemberTeamDto.class.equals(resolved.asCollection().resolveGeneric(0));
+    }
+}
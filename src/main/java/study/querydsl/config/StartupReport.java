@@ -0,0 +1,98 @@
+package study.querydsl.config;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.SpringApplication;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.boot.context.metrics.buffering.BufferingApplicationStartup;
+import org.springframework.boot.context.metrics.buffering.StartupTimeline;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.metrics.StartupStep;
+import org.springframework.stereotype.Component;
+
+import java.lang.management.ManagementFactory;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 기동 시간 리포트 (빈별 / 단계별)
+ *
+ * -Dquerydsl.startup.report=true 로 띄우면 QuerydslApplication 이 BufferingApplicationStartup 으로 기동 단계를 모으고,
+ * 다 뜬 시점에 여기서 로그로 요약한다. 자세한 타임라인은 /actuator/startup
+ *
+ * 시간은 자기 자신만의 시간(self)이다. 빈 A 를 만들다가 의존하는 빈 B 를 만든 시간은 B 쪽에 잡힌다.
+ *
+ * querydsl.startup.exit-on-ready=true 면 리포트 후 바로 종료한다 (cdsArchive 학습 실행용)
+ */
+@Slf4j
+@Component
+public class StartupReport {
+
+    private static final String BEAN_INSTANTIATE = "spring.beans.instantiate";
+    private static final int TOP_BEANS = 20;
+
+    private final boolean exitOnReady;
+
+    public StartupReport(@Value("${querydsl.startup.exit-on-ready:false}") boolean exitOnReady) {
+        this.exitOnReady = exitOnReady;
+    }
+
+    @EventListener
+    public void onReady(ApplicationReadyEvent event) {
+        ConfigurableApplicationContext context = event.getApplicationContext();
+        if (context.getApplicationStartup() instanceof BufferingApplicationStartup) {
+            StartupTimeline timeline = ((BufferingApplicationStartup) context.getApplicationStartup()).getBufferedTimeline();
+            log.info("startup report\n{}", report(timeline));
+        }
+        if (exitOnReady) {
+            System.exit(SpringApplication.exit(context));
+        }
+    }
+
+    static String report(StartupTimeline timeline) {
+        Map<Long, Duration> childDurations = new HashMap<>();
+        for (StartupTimeline.TimelineEvent event : timeline.getEvents()) {
+            Long parentId = event.getStartupStep().getParentId();
+            if (parentId != null) {
+                childDurations.merge(parentId, event.getDuration(), Duration::plus);
+            }
+        }
+
+        Map<String, Duration> phases = new HashMap<>();
+        List<Map.Entry<String, Duration>> beans = new ArrayList<>();
+        for (StartupTimeline.TimelineEvent event : timeline.getEvents()) {
+            StartupStep step = event.getStartupStep();
+            Duration self = event.getDuration().minus(childDurations.getOrDefault(step.getId(), Duration.ZERO));
+            phases.merge(step.getName(), self, Duration::plus);
+            if (BEAN_INSTANTIATE.equals(step.getName())) {
+                beans.add(Map.entry(tag(step, "beanName"), self));
+            }
+        }
+
+        StringBuilder report = new StringBuilder();
+        report.append(String.format("jvm uptime at ready: %d ms%n", ManagementFactory.getRuntimeMXBean().getUptime()));
+        report.append(String.format("-- phases (self ms) --%n"));
+        phases.entrySet().stream()
+                .sorted(Map.Entry.<String, Duration>comparingByValue().reversed())
+                .forEach(e -> report.append(String.format("%8d  %s%n", e.getValue().toMillis(), e.getKey())));
+        report.append(String.format("-- top %d beans (self ms) --%n", TOP_BEANS));
+        beans.stream()
+                .sorted(Map.Entry.<String, Duration>comparingByValue().reversed())
+                .limit(TOP_BEANS)
+                .forEach(e -> report.append(String.format("%8d  %s%n", e.getValue().toMillis(), e.getKey())));
+        return report.toString();
+    }
+
+    private static String tag(StartupStep step, String key) {
+        for (StartupStep.Tag tag : step.getTags()) {
+            if (key.equals(tag.getKey())) {
+                return tag.getValue();
+            }
+        }
+        return "?";
+    }
+}
@@ -0,0 +1,61 @@
+package study.querydsl.config;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.http.converter.HttpMessageConverter;
+import org.springframework.web.servlet.config.annotation.InterceptorRegistry;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
+import study.querydsl.columnar.MemberColumnarHttpMessageConverter;
+import study.querydsl.sharding.ShardedWriteInterceptor;
+import study.querydsl.sql.ConnectionHoldInterceptor;
+import study.querydsl.sql.SqlTraceInterceptor;
+import study.querydsl.support.SearchDeadlineInterceptor;
+
+import java.util.List;
+
+@Configuration
+public class WebConfig implements WebMvcConfigurer {
+
+    private final long defaultTimeoutMillis;
+    private final long maxTimeoutMillis;
+    private final double sqlTraceSampleRate;
+    private final boolean sharded;
+    private final MeterRegistry meterRegistry;
+
+    public WebConfig(@Value("${querydsl.search.default-timeout-ms:3000}") long defaultTimeoutMillis,
+                     @Value("${querydsl.search.max-timeout-ms:30000}") long maxTimeoutMillis,
+                     @Value("${querydsl.sql.trace.sample-rate:0}") double sqlTraceSampleRate,
+                     @Value("${querydsl.sharding.enabled:false}") boolean sharded,
+                     MeterRegistry meterRegistry) {
+        this.defaultTimeoutMillis = defaultTimeoutMillis;
+        this.maxTimeoutMillis = maxTimeoutMillis;
+        this.sqlTraceSampleRate = sqlTraceSampleRate;
+        this.sharded = sharded;
+        this.meterRegistry = meterRegistry;
+    }
+
+    /**
+     * 기본 JSON 컨버터 뒤에 추가한다 -> Accept 를 명시한 경우에만 선택된다
+     */
+    @Override
+    public void extendMessageConverters(List<HttpMessageConverter<?>> converters) {
+        converters.add(new MemberColumnarHttpMessageConverter());
+    }
+
+    @Override
+    public void addInterceptors(InterceptorRegistry registry) {
+        registry.addInterceptor(new SearchDeadlineInterceptor(defaultTimeoutMillis, maxTimeoutMillis))
+                .addPathPatterns("/v1/**", "/v2/**");
+        registry.addInterceptor(new SqlTraceInterceptor(sqlTraceSampleRate))
+                .addPathPatterns("/v1/**", "/v2/**");
+        registry.addInterceptor(new ConnectionHoldInterceptor(meterRegistry))
+                .addPathPatterns("/v1/**", "/v2/**");
+        // 샤드로 보내지 못하는 회원/팀 쓰기 (PATCH 회원 수정, 팀 일괄 변경, 아카이브/복원). /v1/members/batch 는 조회
+        if (sharded) {
+            registry.addInterceptor(new ShardedWriteInterceptor())
+                    .addPathPatterns("/v1/members/*", "/v1/teams/*/members", "/v1/admin/archive", "/v1/admin/archive/restore")
+                    .excludePathPatterns("/v1/members/batch");
+        }
+    }
+}
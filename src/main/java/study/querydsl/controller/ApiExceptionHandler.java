@@ -0,0 +1,91 @@
+package study.querydsl.controller;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.hibernate.LazyInitializationException;
+import org.springframework.core.NestedExceptionUtils;
+import org.springframework.dao.QueryTimeoutException;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.http.converter.HttpMessageNotWritableException;
+import org.springframework.web.bind.annotation.ExceptionHandler;
+import org.springframework.web.bind.annotation.RestControllerAdvice;
+import study.querydsl.dto.ErrorResponse;
+import study.querydsl.sharding.ShardedWriteUnsupportedException;
+import study.querydsl.support.BadRequestException;
+import study.querydsl.support.SearchTimeoutException;
+
+import java.util.concurrent.RejectedExecutionException;
+
+@Slf4j
+@RestControllerAdvice
+@RequiredArgsConstructor
+public class ApiExceptionHandler {
+
+    private final MeterRegistry meterRegistry;
+
+    /**
+     * 데드라인이 지나기 전에 쿼리를 시작도 못했거나(deadline), DB 가 statement 를 취소한 경우(statement)
+     */
+    @ExceptionHandler(SearchTimeoutException.class)
+    public ResponseEntity<ErrorResponse> deadlineExceeded(SearchTimeoutException e) {
+        return timeout("deadline", e.getMessage());
+    }
+
+    @ExceptionHandler({QueryTimeoutException.class, javax.persistence.QueryTimeoutException.class})
+    public ResponseEntity<ErrorResponse> queryTimeout(RuntimeException e) {
+        return timeout("statement", "query cancelled after request deadline");
+    }
+
+    /**
+     * 요청 값이 잘못된 경우만 400. 그 밖의 IllegalArgumentException 은 내부 오류이므로 메시지를 내보내지 않고 500 으로 둔다
+     */
+    @ExceptionHandler(BadRequestException.class)
+    public ResponseEntity<ErrorResponse> badRequest(BadRequestException e) {
+        return ResponseEntity.badRequest()
+                .body(new ErrorResponse("BAD_REQUEST", e.getMessage()));
+    }
+
+    // write-behind 버퍼가 가득 찼거나 종료 중, username 자동완성 인덱스를 아직 채우는 중
+    @ExceptionHandler(RejectedExecutionException.class)
+    public ResponseEntity<ErrorResponse> rejected(RejectedExecutionException e) {
+        return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                .body(new ErrorResponse("BUSY", e.getMessage()));
+    }
+
+    // 샤딩이 켜져 있어서 샤드로 보내지 못하는 쓰기 (ShardedWriteInterceptor)
+    @ExceptionHandler(ShardedWriteUnsupportedException.class)
+    public ResponseEntity<ErrorResponse> shardedWrite(ShardedWriteUnsupportedException e) {
+        return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                .body(new ErrorResponse("SHARDED", e.getMessage()));
+    }
+
+    /**
+     * open-in-view 가 꺼져 있어서 트랜잭션 밖(컨트롤러, JSON 직렬화)에서는 지연 로딩이 안 된다
+     * 엔티티가 웹 계층까지 나왔다는 뜻이므로 버그로 보고 500. 리포지토리에서 DTO 로 바꿔서 돌려줘야 한다
+     */
+    @ExceptionHandler(LazyInitializationException.class)
+    public ResponseEntity<ErrorResponse> lazyLoading(LazyInitializationException e) {
+        log.error("lazy loading outside of a transaction (open-in-view is off, return DTOs from the repository)", e);
+        meterRegistry.counter("http.lazy.loading.failures").increment();
+        return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
+                .body(new ErrorResponse("LAZY_LOADING", "entity association accessed outside of a transaction: " + e.getMessage()));
+    }
+
+    // 직렬화 중에 지연 로딩이 터지면 jackson 이 감싸서 던진다
+    @ExceptionHandler(HttpMessageNotWritableException.class)
+    public ResponseEntity<ErrorResponse> notWritable(HttpMessageNotWritableException e) {
+        Throwable cause = NestedExceptionUtils.getMostSpecificCause(e);
+        if (cause instanceof LazyInitializationException) {
+            return lazyLoading((LazyInitializationException) cause);
+        }
+        throw e;
+    }
+
+    private ResponseEntity<ErrorResponse> timeout(String reason, String message) {
+        meterRegistry.counter("member.search.timeouts", "reason", reason).increment();
+        return ResponseEntity.status(HttpStatus.GATEWAY_TIMEOUT)
+                .body(new ErrorResponse("SEARCH_TIMEOUT", message));
+    }
+}
@@ -0,0 +1,54 @@
+package study.querydsl.controller;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+import study.querydsl.archive.ArchiveJob;
+import study.querydsl.archive.MemberArchiver;
+import study.querydsl.dto.MemberSearchCondition;
+
+@RestController
+@RequiredArgsConstructor
+public class ArchiveController {
+
+    private final MemberArchiver memberArchiver;
+
+    /**
+     * 규칙에 맞는 회원을 보관 테이블로 옮기는 작업을 시작한다 (202 + 작업 상태)
+     *
+     * POST http://localhost:8080/v1/admin/archive?batchSize=500
+     * { "ageLoe": 20 }
+     */
+    @PostMapping("/v1/admin/archive")
+    public ResponseEntity<ArchiveJob> archive(@RequestBody MemberSearchCondition rule,
+                                              @RequestParam(defaultValue = "500") int batchSize) {
+        return ResponseEntity.accepted().body(memberArchiver.submit(ArchiveJob.Direction.ARCHIVE, rule, batchSize));
+    }
+
+    /**
+     * 보관된 회원 중 규칙에 맞는 회원을 되돌린다
+     *
+     * POST http://localhost:8080/v1/admin/archive/restore?batchSize=500
+     * { "teamName": "teamA" }
+     */
+    @PostMapping("/v1/admin/archive/restore")
+    public ResponseEntity<ArchiveJob> restore(@RequestBody MemberSearchCondition rule,
+                                              @RequestParam(defaultValue = "500") int batchSize) {
+        return ResponseEntity.accepted().body(memberArchiver.submit(ArchiveJob.Direction.RESTORE, rule, batchSize));
+    }
+
+    /**
+     * http://localhost:8080/v1/admin/archive/jobs/1
+     *
+     * { "id": 1, "direction": "ARCHIVE", "state": "COMPLETED", "processed": 21, "rowsPerSecond": 1830.5, ... }
+     */
+    @GetMapping("/v1/admin/archive/jobs/{id}")
+    public ResponseEntity<ArchiveJob> job(@PathVariable long id) {
+        return ResponseEntity.of(memberArchiver.job(id));
+    }
+}
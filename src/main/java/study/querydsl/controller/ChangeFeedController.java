@@ -0,0 +1,40 @@
+package study.querydsl.controller;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+import study.querydsl.changefeed.ChangeFeedRepository;
+import study.querydsl.dto.ChangeDto;
+import study.querydsl.dto.ChangeFeedResponse;
+import study.querydsl.support.BadRequestException;
+
+import java.util.List;
+
+@RestController
+@RequiredArgsConstructor
+public class ChangeFeedController {
+
+    private static final int MAX_LIMIT = 1000;
+
+    private final ChangeFeedRepository changeFeedRepository;
+
+    /**
+     * 회원/팀 변경 피드
+     *
+     * http://localhost:8080/v1/changes?since=0&limit=500
+     *
+     * 응답의 nextSince 를 저장해뒀다가 다음 요청의 since 로 넘기면 변경분만 받아갈 수 있다.
+     * hasMore 가 true 면 바로 이어서 요청한다.
+     */
+    @GetMapping("/v1/changes")
+    public ChangeFeedResponse changes(@RequestParam(defaultValue = "0") long since,
+                                      @RequestParam(defaultValue = "500") int limit) {
+        if (limit < 1 || limit > MAX_LIMIT) {
+            throw new BadRequestException("limit must be between 1 and " + MAX_LIMIT);
+        }
+        List<ChangeDto> changes = changeFeedRepository.findSince(since, limit);
+        long nextSince = changes.isEmpty() ? since : changes.get(changes.size() - 1).getVersion();
+        return new ChangeFeedResponse(changes, nextSince, changes.size() == limit);
+    }
+}
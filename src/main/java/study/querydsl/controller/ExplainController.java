@@ -0,0 +1,55 @@
+package study.querydsl.controller;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.data.domain.Sort;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.DeleteMapping;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+import study.querydsl.dto.MemberSearchCondition;
+import study.querydsl.explain.SearchPlan;
+import study.querydsl.explain.SearchPlanExplainer;
+import study.querydsl.explain.SearchPlanSampler;
+import study.querydsl.explain.SearchShapePlan;
+
+import java.util.List;
+
+@RestController
+@RequiredArgsConstructor
+public class ExplainController {
+
+    private final SearchPlanExplainer searchPlanExplainer;
+    private final SearchPlanSampler searchPlanSampler;
+
+    /**
+     * /v1/members 와 같은 파라미터로 검색 쿼리의 실행계획을 본다 (analyze=true 면 실제로 실행해서 읽은 row 수까지)
+     *
+     * http://localhost:8080/v1/admin/explain/members?teamName=teamA&ageGoe=20&sort=age,desc
+     *
+     * { "shape": "teamName+ageGoe sort=age", "jpql": "select ...", "sql": "select ...", "parameters": ["teamA", 20],
+     *   "plan": "SELECT ... PUBLIC.MEMBER.tableScan ...", "tableScans": ["PUBLIC.MEMBER"],
+     *   "estimatedRows": { "PUBLIC.MEMBER": 100, "PUBLIC.TEAM": 2 }, "fullScan": true }
+     */
+    @GetMapping("/v1/admin/explain/members")
+    public SearchPlan explain(MemberSearchCondition condition, Sort sort,
+                              @RequestParam(defaultValue = "false") boolean analyze) {
+        return searchPlanExplainer.explain(condition, sort, analyze);
+    }
+
+    /**
+     * querydsl.explain.sample-rate 로 모은 조건 모양별 실행계획 (테이블 스캔이 많은 모양부터)
+     *
+     * http://localhost:8080/v1/admin/explain/shapes
+     */
+    @GetMapping("/v1/admin/explain/shapes")
+    public List<SearchShapePlan> shapes() {
+        return searchPlanSampler.shapes();
+    }
+
+    @DeleteMapping("/v1/admin/explain/shapes")
+    public ResponseEntity<Void> resetShapes() {
+        searchPlanSampler.reset();
+        return ResponseEntity.noContent().build();
+    }
+}
@@ -1,12 +1,16 @@
 package study.querydsl.controller;
 
 import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
 import org.springframework.context.annotation.Profile;
+import org.springframework.context.event.EventListener;
 import org.springframework.stereotype.Component;
 import study.querydsl.entity.Member;
 import study.querydsl.entity.Team;
+import study.querydsl.sharding.MemberShards;
 
-import javax.annotation.PostConstruct;
 import javax.persistence.EntityManager;
 import javax.persistence.PersistenceContext;
 import javax.transaction.Transactional;
@@ -17,12 +21,44 @@ import javax.transaction.Transactional;
 public class InitMember {
 
     private final InitMemberService initMemberService;
+    // querydsl.sharding.enabled=true 면 샘플 데이터를 기본 DB 대신 샤드에 넣는다 (기본 DB 의 member / team 쓰기는 막혀 있다)
+    private final ObjectProvider<MemberShards> memberShards;
 
-    @PostConstruct
+    // true 면 별도 스레드에서 넣는다 -> 기동 시간에서 빠지고, 대신 뜬 직후 잠깐은 데이터가 비어있을 수 있다
+    @Value("${querydsl.startup.async-seed:false}")
+    private boolean asyncSeed;
+
+    // 빈 초기화(@PostConstruct) 대신 애플리케이션이 다 뜬 다음에 넣는다
+    @EventListener(ApplicationReadyEvent.class)
     public void init() {
+        if (!asyncSeed) {
+            seed();
+            return;
+        }
+        Thread seeder = new Thread(this::seed, "init-member");
+        seeder.setDaemon(true);
+        seeder.start();
+    }
+
+    private void seed() {
+        MemberShards shards = memberShards.getIfAvailable();
+        if (shards != null) {
+            seedShards(shards);
+            return;
+        }
         initMemberService.init();
     }
 
+    // 샤드는 기동할 때마다 임베디드 DB 를 새로 만드므로 항상 비어있다
+    private static void seedShards(MemberShards shards) {
+        Team teamA = shards.saveTeam(new Team("teamA"));
+        Team teamB = shards.saveTeam(new Team("teamB"));
+        for (int i = 0; i < 100; i++) {
+            Team selectedTeam = i % 2 == 0 ? teamA : teamB;
+            shards.saveMember(new Member("member" + i, i, selectedTeam));
+        }
+    }
+
     @Component
     static class InitMemberService {
         @PersistenceContext
@@ -30,6 +66,12 @@ public class InitMember {
 
         @Transactional // 데이터 초기화하는 로직
         public void init() {
+            // ddl-auto 가 create 가 아니면 (fast 프로파일은 validate) 이전 실행의 데이터가 남아있다
+            Long memberCount = em.createQuery("select count(m) from Member m", Long.class).getSingleResult();
+            if (memberCount > 0) {
+                return;
+            }
+
             Team teamA = new Team("teamA");
             Team teamB = new Team("teamB");
 
@@ -46,7 +88,7 @@ public class InitMember {
 
 
 /**
- * 데이터베이스에 초기 데이터를 입력하는 기능을 하는 코드입니다. 스프링 애플리케이션을 시작할 때 @PostConstruct 어노테이션이 붙은 init() 메소드가 실행되면서 초기 데이터를 입력합니다.
+ * 데이터베이스에 초기 데이터를 입력하는 기능을 하는 코드입니다. 스프링 애플리케이션이 다 뜬 다음(ApplicationReadyEvent) init() 메소드가 실행되면서 초기 데이터를 입력합니다. 이미 회원이 있으면 넣지 않습니다.
  *
  * InitMember 클래스는 InitMemberService 클래스를 주입받아 init() 메소드를 호출하는 역할을 합니다.
  *
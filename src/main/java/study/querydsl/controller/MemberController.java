@@ -1,19 +1,58 @@
 package study.querydsl.controller;
 
 import lombok.RequiredArgsConstructor;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Sort;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.util.DigestUtils;
 import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PatchMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.context.request.WebRequest;
+import study.querydsl.columnar.MemberColumnarFormat;
+import study.querydsl.dto.MemberBatchRequest;
+import study.querydsl.dto.MemberBatchResponse;
 import study.querydsl.dto.MemberSearchCondition;
+import study.querydsl.dto.MemberTeamAgeDto;
 import study.querydsl.dto.MemberTeamDto;
+import study.querydsl.dto.MemberUpdateRequest;
+import study.querydsl.dto.UsernameSuggestionDto;
+import study.querydsl.explain.SearchPlanSampler;
 import study.querydsl.repository.MemberJpaRepository;
+import study.querydsl.repository.MemberRepository;
+import study.querydsl.repository.MemberWriteBehindBuffer;
+import study.querydsl.suggest.UsernameSuggester;
+import study.querydsl.support.BadRequestException;
+import study.querydsl.support.TableVersions;
 
+import javax.servlet.http.HttpServletResponse;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Set;
 
 @RestController
 @RequiredArgsConstructor
 public class MemberController {
 
+    private static final int MAX_BATCH_IDS = 1000;
+    private static final int MAX_SUGGESTIONS = 50;
+
     private final MemberJpaRepository memberJpaRepository;
+    private final MemberRepository memberRepository;
+    private final TableVersions tableVersions;
+    private final MemberWriteBehindBuffer memberWriteBehindBuffer;
+    private final SearchPlanSampler searchPlanSampler;
+    private final UsernameSuggester usernameSuggester;
 
     /**
      *
@@ -29,11 +68,133 @@ public class MemberController {
      *     }
      * ]
      *
+     * 정렬: sort=age,desc&sort=username (username, age, teamName, memberId 만 가능, 그 외는 400. teamName 은 팀 조건이 있어야 한다)
+     *
+     * Accept: application/x-member-columnar 이면 같은 결과를 컬럼 기반 바이너리로 준다 (MemberColumnarDecoder 로 읽는다)
+     *
      * @param condition
      * @return
      */
-    @GetMapping("/v1/members")
-    public List<MemberTeamDto> searchMemberV1(MemberSearchCondition condition) {
-        return memberJpaRepository.search(condition);
+    @GetMapping(value = "/v1/members", produces = {MediaType.APPLICATION_JSON_VALUE, MemberColumnarFormat.MEDIA_TYPE_VALUE})
+    public List<MemberTeamDto> searchMemberV1(MemberSearchCondition condition, Sort sort, WebRequest request,
+                                              HttpServletResponse response) {
+        // member, team 테이블이 안 바뀌었고 같은 조건이면 검색하지 않고 304
+        // JSON 과 컬럼 포맷은 본문이 다르므로 Accept 도 ETag 에 포함한다
+        response.addHeader(HttpHeaders.VARY, HttpHeaders.ACCEPT);
+        if (request.checkNotModified(searchETag(condition, sort, request.getHeader(HttpHeaders.ACCEPT)), searchLastModified())) {
+            return null;
+        }
+        searchPlanSampler.sample(condition, sort);
+        return memberJpaRepository.search(condition, sort);
+    }
+
+    /**
+     * 페이징 검색 (MemberRepository). querydsl.sharding.enabled=true 면 모든 샤드에서 모아서 정렬/페이징한다
+     *
+     * http://localhost:8080/v2/members?teamName=teamA&page=0&size=10&sort=age,desc
+     */
+    @GetMapping("/v2/members")
+    public Page<MemberTeamDto> searchMemberV2(MemberSearchCondition condition, Pageable pageable) {
+        return memberRepository.searchPage(condition, pageable);
+    }
+
+    /**
+     * 회원 + 소속 팀 평균/최대 나이
+     *
+     * http://localhost:8080/v1/members/team-age?teamName=teamA&aboveAverageOnly=true
+     */
+    @GetMapping("/v1/members/team-age")
+    public List<MemberTeamAgeDto> searchTeamAge(MemberSearchCondition condition, Sort sort,
+                                                @RequestParam(defaultValue = "false") boolean aboveAverageOnly) {
+        return aboveAverageOnly
+                ? memberJpaRepository.searchAboveTeamAverage(condition, sort)
+                : memberJpaRepository.searchWithTeamAgeStats(condition, sort);
+    }
+
+    /**
+     * username 자동완성 (메모리 인덱스, DB 를 가지 않는다). 사전 순서로 limit 개
+     *
+     * http://localhost:8080/v1/members/suggest?prefix=member1&limit=5
+     *
+     * [ { "memberId": 3, "username": "member1", "teamId": 2, "teamName": "teamB" }, ... ]
+     */
+    @GetMapping("/v1/members/suggest")
+    public List<UsernameSuggestionDto> suggest(@RequestParam String prefix,
+                                               @RequestParam(defaultValue = "10") int limit) {
+        if (prefix.isEmpty()) {
+            throw new BadRequestException("prefix must not be empty");
+        }
+        if (limit < 1 || limit > MAX_SUGGESTIONS) {
+            throw new BadRequestException("limit must be between 1 and " + MAX_SUGGESTIONS + ": " + limit);
+        }
+        return usernameSuggester.suggest(prefix, limit);
+    }
+
+    /**
+     * 회원 나이/팀 변경 (write-behind 버퍼를 거친다)
+     *
+     * PATCH http://localhost:8080/v1/members/34
+     * { "age": 32, "teamId": 1 }
+     *
+     * 버퍼가 비동기 모드(FLUSH_ON_SHUTDOWN)면 202, 반영이 끝났으면 204
+     */
+    @PatchMapping("/v1/members/{id}")
+    public ResponseEntity<Void> updateMember(@PathVariable Long id, @RequestBody MemberUpdateRequest request) {
+        memberWriteBehindBuffer.submit(id, request.getAge(), request.getTeamId());
+        return memberWriteBehindBuffer.isAsync()
+                ? ResponseEntity.accepted().build()
+                : ResponseEntity.noContent().build();
+    }
+
+    private String searchETag(MemberSearchCondition condition, Sort sort, String accept) {
+        String conditionHash = DigestUtils.md5DigestAsHex(
+                (condition.normalize() + "|" + sort + "|" + accept).getBytes(StandardCharsets.UTF_8));
+        return "\"" + tableVersions.epoch()
+                + "-" + tableVersions.version(TableVersions.MEMBER)
+                + "-" + tableVersions.version(TableVersions.TEAM)
+                + "-" + conditionHash + "\"";
+    }
+
+    private long searchLastModified() {
+        return TableVersions.httpLastModified(Math.max(tableVersions.lastModified(TableVersions.MEMBER),
+                tableVersions.lastModified(TableVersions.TEAM)), System.currentTimeMillis());
+    }
+
+    /**
+     * id 목록으로 회원 한번에 조회
+     *
+     * POST http://localhost:8080/v1/members/batch
+     * { "ids": [34, 9999, 3] }
+     *
+     * {
+     *     "members": [ { "memberId": 34, ... }, { "memberId": 3, ... } ],
+     *     "missingIds": [ 9999 ]
+     * }
+     */
+    @PostMapping("/v1/members/batch")
+    public MemberBatchResponse findMembersByIds(@RequestBody MemberBatchRequest request) {
+        List<Long> ids = request.getIds();
+        if (ids == null || ids.contains(null)) {
+            throw new BadRequestException("ids is required and must not contain null");
+        }
+        if (ids.size() > MAX_BATCH_IDS) {
+            throw new BadRequestException("too many ids: " + ids.size() + " (max " + MAX_BATCH_IDS + ")");
+        }
+
+        // 엔티티는 컨트롤러로 가져오지 않는다 (open-in-view 가 꺼져 있어서 트랜잭션 밖에서는 지연 로딩이 안 된다)
+        List<MemberTeamDto> result = memberJpaRepository.findDtosByIds(ids);
+
+        Set<Long> foundIds = new HashSet<>();
+        for (MemberTeamDto dto : result) {
+            foundIds.add(dto.getMemberId());
+        }
+
+        List<Long> missingIds = new ArrayList<>();
+        for (Long id : new LinkedHashSet<>(ids)) {
+            if (!foundIds.contains(id)) {
+                missingIds.add(id);
+            }
+        }
+        return new MemberBatchResponse(result, missingIds);
     }
 }
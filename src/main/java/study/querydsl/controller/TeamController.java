@@ -0,0 +1,45 @@
+package study.querydsl.controller;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RestController;
+import study.querydsl.dto.MemberSearchCondition;
+import study.querydsl.dto.TeamMemberCountDto;
+import study.querydsl.dto.TeamMoveResultDto;
+import study.querydsl.repository.TeamJpaRepository;
+
+@RestController
+@RequiredArgsConstructor
+public class TeamController {
+
+    private final TeamJpaRepository teamJpaRepository;
+
+    /**
+     * 팀 회원 수 (Team.members 를 읽지 않고 팀별 회원 수 행 하나를 읽는다, 없는 팀이면 404)
+     *
+     * http://localhost:8080/v1/teams/1/count
+     *
+     * { "teamId": 1, "memberCount": 50 }
+     */
+    @GetMapping("/v1/teams/{id}/count")
+    public ResponseEntity<TeamMemberCountDto> countMembers(@PathVariable Long id) {
+        return ResponseEntity.of(teamJpaRepository.countMembers(id).map(count -> new TeamMemberCountDto(id, count)));
+    }
+
+    /**
+     * 조건에 맞는 회원을 모두 이 팀으로 옮긴다 (회원을 읽지 않고 조건으로 update 한번 + change_log insert ... select 한번, 조건이 하나도 없으면 400)
+     *
+     * POST http://localhost:8080/v1/teams/2/members
+     * { "teamName": "teamA", "ageGoe": 30 }
+     *
+     * { "teamId": 2, "moved": 35 }
+     */
+    @PostMapping("/v1/teams/{id}/members")
+    public TeamMoveResultDto moveMembers(@PathVariable Long id, @RequestBody MemberSearchCondition condition) {
+        return new TeamMoveResultDto(id, teamJpaRepository.bulkChangeTeam(condition, id));
+    }
+}
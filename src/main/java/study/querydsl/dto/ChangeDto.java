@@ -0,0 +1,26 @@
+package study.querydsl.dto;
+
+import com.querydsl.core.annotations.QueryProjection;
+import lombok.Data;
+import study.querydsl.entity.ChangeLog;
+
+import java.time.LocalDateTime;
+
+@Data
+public class ChangeDto {
+
+    private Long version;
+    private ChangeLog.EntityType entityType;
+    private Long entityId;
+    private ChangeLog.Operation operation;
+    private LocalDateTime changedAt;
+
+    @QueryProjection
+    public ChangeDto(Long version, ChangeLog.EntityType entityType, Long entityId, ChangeLog.Operation operation, LocalDateTime changedAt) {
+        this.version = version;
+        this.entityType = entityType;
+        this.entityId = entityId;
+        this.operation = operation;
+        this.changedAt = changedAt;
+    }
+}
@@ -0,0 +1,17 @@
+package study.querydsl.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+import java.util.List;
+
+@Data
+@AllArgsConstructor
+public class ChangeFeedResponse {
+
+    private List<ChangeDto> changes;
+    // 다음 요청의 since 값
+    private long nextSince;
+    // true 면 바로 다음 배치를 요청
+    private boolean hasMore;
+}
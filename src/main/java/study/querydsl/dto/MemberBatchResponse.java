@@ -0,0 +1,16 @@
+package study.querydsl.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+import java.util.List;
+
+@Data
+@AllArgsConstructor
+public class MemberBatchResponse {
+
+    // 요청한 id 순서 그대로
+    private List<MemberTeamDto> members;
+    // 요청했지만 없는 id
+    private List<Long> missingIds;
+}
@@ -1,13 +1,128 @@
 package study.querydsl.dto;
 
 import lombok.Data;
+import study.querydsl.entity.Member;
+import study.querydsl.support.BadRequestException;
+import study.querydsl.support.InLists;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.TreeSet;
+import java.util.function.Function;
+
+import static org.springframework.util.StringUtils.hasText;
 
 @Data
 public class MemberSearchCondition {
+
+    // 한 번의 검색을 나눠 보낼 수 있는 최대 쿼리 수 (목록 조건 조각 수의 곱)
+    private static final int MAX_SPLIT_QUERIES = 64;
+
     // 회원명, 팀명, 나이(ageGoe, ageLoe)
     private String username;
     private String teamName;
     private Integer ageGoe;
     private Integer ageLoe;
+    // 여러 값 중 하나 (in). teamNames=teamA,teamB 또는 teamNames=teamA&teamNames=teamB
+    private List<String> usernames;
+    private List<String> teamNames;
+    private List<Long> memberIds;
+    // true 면 보관된 회원(member_archive)도 같이 검색
+    private boolean includeArchived;
+    // true 면 username 을 대소문자 구분 없이 비교 (Member.usernameLower)
+    private boolean ignoreCase;
+
+    /**
+     * 같은 검색인지 비교하기 위한 정규화된 복사본
+     * 검색 쿼리는 빈 문자열을 조건 없음으로 보기 때문에 ("" 과 null 은 같은 검색) 빈 문자열을 null 로 바꾼다
+     * ignoreCase 면 username 도 소문자로 바꾼다 ("Member1" 과 "member1" 은 같은 검색)
+     * 목록 조건은 빈 값과 중복을 빼고 정렬한다 (순서가 달라도 같은 검색)
+     * 목록을 줬는데 남는 값이 없으면 (usernames= 처럼 빈 값만) 조건을 빼면 전체 회원이 되므로 BadRequestException
+     */
+    public MemberSearchCondition normalize() {
+        MemberSearchCondition normalized = new MemberSearchCondition();
+        normalized.setUsername(hasText(username) ? (ignoreCase ? Member.lowerCase(username) : username) : null);
+        normalized.setTeamName(hasText(teamName) ? teamName : null);
+        normalized.setAgeGoe(ageGoe);
+        normalized.setAgeLoe(ageLoe);
+        normalized.setUsernames(normalizeList("usernames", usernames, name -> hasText(name)
+                ? (ignoreCase ? Member.lowerCase(name) : name)
+                : null));
+        normalized.setTeamNames(normalizeList("teamNames", teamNames, name -> hasText(name) ? name : null));
+        normalized.setMemberIds(normalizeList("memberIds", memberIds, Function.identity()));
+        normalized.setIncludeArchived(includeArchived);
+        normalized.setIgnoreCase(ignoreCase);
+        return normalized;
+    }
+
+    /**
+     * 조건이 하나라도 있는지 (없으면 전체 회원)
+     */
+    public boolean hasAnyFilter() {
+        MemberSearchCondition normalized = normalize();
+        return normalized.username != null || normalized.teamName != null
+                || normalized.ageGoe != null || normalized.ageLoe != null
+                || normalized.usernames != null || normalized.teamNames != null || normalized.memberIds != null;
+    }
+
+    /**
+     * 목록 조건이 maxValues 개를 넘으면 나눠서 보낼 조건들로 쪼갠다 (각 조각의 결과는 서로 겹치지 않는다)
+     *
+     * 목록마다 maxValues 개씩 자르고 2의 거듭제곱 개수로 채워서 (InLists) IN 절 모양이 몇 가지로만 나오게 한다.
+     * 목록이 여러 개 크면 조각의 조합마다 쿼리 하나라서 그 수가 MAX_SPLIT_QUERIES 를 넘으면 거절한다.
+     */
+    public List<MemberSearchCondition> split(int maxValues) {
+        MemberSearchCondition normalized = normalize();
+        List<List<String>> usernameChunks = chunks(normalized.usernames, maxValues);
+        List<List<String>> teamNameChunks = chunks(normalized.teamNames, maxValues);
+        List<List<Long>> memberIdChunks = chunks(normalized.memberIds, maxValues);
+        long queries = (long) usernameChunks.size() * teamNameChunks.size() * memberIdChunks.size();
+        if (queries > MAX_SPLIT_QUERIES) {
+            throw new BadRequestException("too many filter values: " + queries + " queries needed (max "
+                    + MAX_SPLIT_QUERIES + " x " + maxValues + " values)");
+        }
+
+        List<MemberSearchCondition> parts = new ArrayList<>((int) queries);
+        for (List<String> usernameChunk : usernameChunks) {
+            for (List<String> teamNameChunk : teamNameChunks) {
+                for (List<Long> memberIdChunk : memberIdChunks) {
+                    MemberSearchCondition part = normalize();
+                    part.setUsernames(usernameChunk);
+                    part.setTeamNames(teamNameChunk);
+                    part.setMemberIds(memberIdChunk);
+                    parts.add(part);
+                }
+            }
+        }
+        return parts;
+    }
+
+    private static <T extends Comparable<? super T>> List<T> normalizeList(String name, Collection<T> values,
+                                                                           Function<T, T> normalizer) {
+        if (values == null) {
+            return null;
+        }
+        TreeSet<T> distinct = new TreeSet<>();
+        for (T value : values) {
+            T normalized = value != null ? normalizer.apply(value) : null;
+            if (normalized != null) {
+                distinct.add(normalized);
+            }
+        }
+        if (distinct.isEmpty()) {
+            throw new BadRequestException(name + " must contain at least one non-blank value");
+        }
+        return new ArrayList<>(distinct);
+    }
 
+    // 조건이 없으면 null 한 조각 (조합을 만들 때 그 목록은 조건 없음)
+    private static <T> List<List<T>> chunks(List<T> values, int maxValues) {
+        if (values == null) {
+            List<List<T>> none = new ArrayList<>();
+            none.add(null);
+            return none;
+        }
+        return InLists.chunkAndPad(values, maxValues);
+    }
 }
@@ -0,0 +1,34 @@
+package study.querydsl.dto;
+
+import lombok.Data;
+
+/**
+ * 회원 + 소속 팀의 평균/최대 나이
+ * 팀이 없는 회원은 teamAvgAge, teamMaxAge 가 null
+ */
+@Data
+public class MemberTeamAgeDto {
+
+    private Long memberId;
+    private String username;
+    private int age;
+    private Long teamId;
+    private String teamName;
+    private Double teamAvgAge;
+    private Integer teamMaxAge;
+
+    public MemberTeamAgeDto(MemberTeamDto member, Double teamAvgAge, Integer teamMaxAge) {
+        this.memberId = member.getMemberId();
+        this.username = member.getUsername();
+        this.age = member.getAge();
+        this.teamId = member.getTeamId();
+        this.teamName = member.getTeamName();
+        this.teamAvgAge = teamAvgAge;
+        this.teamMaxAge = teamMaxAge;
+    }
+
+    // subQueryGoe 와 같은 기준 (평균 이상)
+    public boolean isAboveTeamAverage() {
+        return teamAvgAge != null && age >= teamAvgAge;
+    }
+}
@@ -0,0 +1,11 @@
+package study.querydsl.dto;
+
+import lombok.Data;
+
+@Data
+public class MemberUpdateRequest {
+
+    // null 이면 바꾸지 않음
+    private Integer age;
+    private Long teamId;
+}
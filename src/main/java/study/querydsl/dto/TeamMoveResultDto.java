@@ -0,0 +1,12 @@
+package study.querydsl.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+@Data
+@AllArgsConstructor
+public class TeamMoveResultDto {
+
+    private Long teamId;
+    private long moved;
+}
@@ -0,0 +1,14 @@
+package study.querydsl.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+@Data
+@AllArgsConstructor
+public class UsernameSuggestionDto {
+
+    private Long memberId;
+    private String username;
+    private Long teamId;
+    private String teamName;
+}
@@ -0,0 +1,49 @@
+package study.querydsl.entity;
+
+import lombok.AccessLevel;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+
+import javax.persistence.Entity;
+import javax.persistence.EnumType;
+import javax.persistence.Enumerated;
+import javax.persistence.GeneratedValue;
+import javax.persistence.GenerationType;
+import javax.persistence.Id;
+import javax.persistence.Table;
+import java.time.LocalDateTime;
+
+/**
+ * Member, Team 변경 기록 (transactional outbox)
+ *
+ * 변경한 트랜잭션 안에서 같이 insert 되므로 롤백되면 기록도 같이 사라진다.
+ * id 가 곧 변경 버전이고 커밋 순서대로 증가한다. (ChangeLogWriter 가 커밋 직전에 change_log_lock 을 잠그고 insert)
+ */
+@Entity
+@Getter
+@NoArgsConstructor(access = AccessLevel.PROTECTED)
+@Table(name = "change_log")
+public class ChangeLog {
+
+    public enum EntityType {
+        MEMBER, TEAM
+    }
+
+    public enum Operation {
+        INSERT, UPDATE, DELETE
+    }
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Enumerated(EnumType.STRING)
+    private EntityType entityType;
+
+    private Long entityId;
+
+    @Enumerated(EnumType.STRING)
+    private Operation operation;
+
+    private LocalDateTime changedAt;
+}
@@ -0,0 +1,28 @@
+package study.querydsl.entity;
+
+import lombok.AccessLevel;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+
+import javax.persistence.Entity;
+import javax.persistence.Id;
+import javax.persistence.Table;
+
+/**
+ * change_log 를 쓰는 트랜잭션이 커밋 직전에 잠그는 행 하나 (ChangeLogWriter)
+ *
+ * 잠금은 커밋할 때 풀리므로 change_log id(버전)가 커밋 순서대로 정해진다. commits 는 잠근 횟수
+ */
+@Entity
+@Getter
+@NoArgsConstructor(access = AccessLevel.PROTECTED)
+@Table(name = "change_log_lock")
+public class ChangeLogLock {
+
+    public static final long ID = 1L;
+
+    @Id
+    private Long id;
+
+    private long commits;
+}
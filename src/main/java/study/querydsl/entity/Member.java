@@ -2,25 +2,40 @@ package study.querydsl.entity;
 
 
 import lombok.*;
+import org.hibernate.Hibernate;
+import org.hibernate.annotations.GenericGenerator;
 
 import javax.persistence.*;
-
-
-import lombok.*;
-
-import javax.persistence.*;
+import java.util.Locale;
 
 @Entity
 @Getter @Setter
 @NoArgsConstructor(access = AccessLevel.PROTECTED)
 @ToString(of = {"id", "username", "age"})
+// 검색 조건 + 정렬용 인덱스. 정렬 인덱스는 PK 동점 처리까지 포함하고 방향마다 하나씩 (MemberSortKeys)
+// username 인덱스는 nulls last 로 만들어야 해서 @Index 대신 import.sql 에 있다
+@Table(indexes = {
+        @Index(name = "idx_member_username_lower", columnList = "username_lower"),
+        @Index(name = "idx_member_age", columnList = "age, member_id"),
+        @Index(name = "idx_member_age_desc", columnList = "age desc, member_id"),
+        @Index(name = "idx_member_id_desc", columnList = "member_id desc"),
+        @Index(name = "idx_member_team", columnList = "team_id")
+})
 public class Member {
 
-    @Id @GeneratedValue
+    @Id
+    @GeneratedValue(generator = "member_seq")
+    @GenericGenerator(name = "member_seq", strategy = "study.querydsl.support.PooledSequenceGenerator")
     @Column(name = "member_id")
     private Long id;
 
     private String username;
+
+    // 대소문자 무시 검색용 (lower(username) 으로 비교하면 인덱스를 못 탄다). username 을 바꿀 때 같이 바뀐다
+    @Setter(AccessLevel.NONE)
+    @Column(name = "username_lower")
+    private String usernameLower;
+
     private int age;
 
     @ManyToOne(fetch = FetchType.LAZY)
@@ -36,15 +51,33 @@ public class Member {
     }
 
     public Member(String usernae, int age, Team team) {
-        this.username = usernae;
+        setUsername(usernae);
         this.age = age;
         if(team != null) {
             changeTeam(team);
         }
     }
+    public void setUsername(String username) {
+        this.username = username;
+        this.usernameLower = lowerCase(username);
+    }
+
+    public static String lowerCase(String username) {
+        return username != null ? username.toLowerCase(Locale.ROOT) : null;
+    }
+
+    /**
+     * Team.members 는 이미 메모리에 올라와 있을 때만 맞춰준다 (팀 크기만큼 컬렉션을 읽어오지 않는다)
+     * 프록시가 초기화되지 않은 팀은 컬렉션도 안 올라와 있으므로 건드리지 않는다
+     */
     public void changeTeam(Team team) {
+        if (this.team != null && Hibernate.isInitialized(this.team)) {
+            this.team.removeLoadedMember(this);
+        }
         this.team = team;
-        team.getMembers().add(this);
+        if (Hibernate.isInitialized(team)) {
+            team.addLoadedMember(this);
+        }
     }
 
     @Override
@@ -0,0 +1,45 @@
+package study.querydsl.entity;
+
+import lombok.AccessLevel;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.Id;
+import javax.persistence.Index;
+import javax.persistence.Table;
+import java.time.LocalDateTime;
+
+/**
+ * 보관(cold) 회원
+ *
+ * 검색 대상에서 빠진 회원을 member 테이블에서 옮겨둔다 (MemberArchiver). id 는 원래 회원 id 그대로라 복원하면 같은 id 로 돌아간다.
+ * 팀은 FK 없이 id 만 들고 있다 (보관 중에 팀이 지워질 수 있다)
+ */
+@Entity
+@Getter
+@NoArgsConstructor(access = AccessLevel.PROTECTED)
+@Table(name = "member_archive", indexes = {
+        @Index(name = "idx_member_archive_username", columnList = "username"),
+        @Index(name = "idx_member_archive_username_lower", columnList = "username_lower"),
+        @Index(name = "idx_member_archive_team", columnList = "team_id")
+})
+public class MemberArchive {
+
+    @Id
+    @Column(name = "member_id")
+    private Long id;
+
+    private String username;
+
+    @Column(name = "username_lower")
+    private String usernameLower;
+
+    private int age;
+
+    @Column(name = "team_id")
+    private Long teamId;
+
+    private LocalDateTime archivedAt;
+}
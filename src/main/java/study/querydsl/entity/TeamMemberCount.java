@@ -0,0 +1,27 @@
+package study.querydsl.entity;
+
+import lombok.AccessLevel;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+
+import javax.persistence.Entity;
+import javax.persistence.Id;
+import javax.persistence.Table;
+
+/**
+ * 팀 회원 수 (팀마다 한 행). 회원을 세지 않고 이 행 하나를 읽는다 (TeamJpaRepository.countMembers)
+ *
+ * 회원이 바뀌는 트랜잭션이 커밋 직전에 change_log 와 같이 증감을 반영한다 (ChangeLogWriter).
+ * 행이 없으면 없는 팀이다. 팀 FK 는 걸지 않는다 (팀 delete 가 이 행보다 먼저 나간다)
+ */
+@Entity
+@Getter
+@NoArgsConstructor(access = AccessLevel.PROTECTED)
+@Table(name = "team_member_count")
+public class TeamMemberCount {
+
+    @Id
+    private Long teamId;
+
+    private long memberCount;
+}
@@ -0,0 +1,28 @@
+package study.querydsl.explain;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+import java.util.List;
+import java.util.Map;
+
+@Data
+@AllArgsConstructor
+public class SearchPlan {
+
+    private String shape;
+    // search 가 보내는 쿼리 수 (목록 조건이 길면 나눠 보낸다). jpql, sql, plan 은 그중 첫 번째 쿼리
+    private int queries;
+    private String jpql;
+    private String sql;
+    private List<Object> parameters;
+    private String plan;
+    // 인덱스 없이 전체를 읽는 테이블 (SCHEMA.TABLE)
+    private List<String> tableScans;
+    // 실행계획에 나온 테이블별 예상 row 수
+    private Map<String, Long> estimatedRows;
+
+    public boolean isFullScan() {
+        return !tableScans.isEmpty();
+    }
+}
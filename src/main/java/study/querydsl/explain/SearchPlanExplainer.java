@@ -0,0 +1,147 @@
+package study.querydsl.explain;
+
+import com.querydsl.jpa.impl.JPAQuery;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.dao.DataAccessException;
+import org.springframework.data.domain.Sort;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import study.querydsl.dto.MemberSearchCondition;
+import study.querydsl.dto.MemberTeamDto;
+import study.querydsl.repository.MemberJpaRepository;
+import study.querydsl.repository.MemberSortKeys;
+import study.querydsl.support.TranslatedQuery;
+
+import javax.persistence.EntityManager;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.StringJoiner;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+
+/**
+ * MemberJpaRepository.search 가 만드는 쿼리 그대로의 실행계획
+ *
+ * searchQuery 로 만든 쿼리를 JPQL -> (하이버네이트) SQL 로 바꾸고 같은 바인딩 값으로 EXPLAIN 을 돌린다. 쿼리는 실행하지 않는다.
+ * 목록 조건이 길어서 search 가 여러 번 나눠 보내는 경우에는 첫 번째 쿼리를 본다 (나머지는 값만 다르고 모양이 같다).
+ * analyze=true 면 EXPLAIN ANALYZE 라서 실제로 실행하고 H2 가 읽은 row 수(scanCount)도 계획에 나온다.
+ *
+ * 테이블 스캔 표시(tableScan)와 예상 row 수(information_schema.tables.row_count_estimate)는 H2 기준이다.
+ * 다른 DB 에서는 EXPLAIN 결과만 그대로 돌려준다.
+ */
+@Slf4j
+@Component
+public class SearchPlanExplainer {
+
+    private static final Pattern TABLE = Pattern.compile("(?:FROM|JOIN)\\s+(\\w+)\\.(\\w+)", Pattern.CASE_INSENSITIVE);
+    private static final Pattern TABLE_SCAN = Pattern.compile("/\\*\\s*(\\w+)\\.(\\w+)\\.tableScan");
+
+    private static final String ROW_ESTIMATE =
+            "select row_count_estimate from information_schema.tables where table_schema = ? and table_name = ?";
+
+    private final EntityManager em;
+    private final MemberJpaRepository memberJpaRepository;
+    private final JdbcTemplate jdbcTemplate;
+
+    public SearchPlanExplainer(EntityManager em, MemberJpaRepository memberJpaRepository, JdbcTemplate jdbcTemplate) {
+        this.em = em;
+        this.memberJpaRepository = memberJpaRepository;
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    public SearchPlan explain(MemberSearchCondition condition, Sort sort, boolean analyze) {
+        Sort resolvedSort = sort != null ? sort : Sort.unsorted();
+        // 목록 조건이 길면 search 도 나눠 보내므로 같은 첫 조각의 쿼리를 본다
+        List<MemberSearchCondition> parts = memberJpaRepository.searchParts(condition);
+        JPAQuery<MemberTeamDto> query = memberJpaRepository.searchQuery(parts.get(0), MemberSortKeys.toOrderSpecifiers(resolvedSort, condition));
+
+        TranslatedQuery translated = TranslatedQuery.of(em, query);
+        String jpql = translated.getJpql();
+        String sql = translated.getSql();
+        List<Object> parameters = translated.getParameters();
+
+        List<String> rows = jdbcTemplate.query((analyze ? "explain analyze " : "explain ") + sql,
+                ps -> {
+                    for (int i = 0; i < parameters.size(); i++) {
+                        ps.setObject(i + 1, parameters.get(i));
+                    }
+                },
+                (rs, rowNum) -> rs.getString(1));
+        String plan = String.join("\n", rows);
+
+        return new SearchPlan(shapeOf(condition, resolvedSort), parts.size(), jpql, sql, parameters, plan,
+                tableScans(plan), estimatedRows(plan));
+    }
+
+    /**
+     * 조건 중 값이 있는 필드 + 정렬 속성 (값은 빼고 모양만). 샘플을 모을 때 키로 쓴다
+     *
+     * ex) teamName+ageGoe sort=age,username
+     */
+    public static String shapeOf(MemberSearchCondition condition, Sort sort) {
+        MemberSearchCondition normalized = condition.normalize();
+        StringJoiner fields = new StringJoiner("+");
+        if (normalized.getUsername() != null) {
+            fields.add(normalized.isIgnoreCase() ? "usernameIgnoreCase" : "username");
+        }
+        if (normalized.getTeamName() != null) {
+            fields.add("teamName");
+        }
+        if (normalized.getAgeGoe() != null) {
+            fields.add("ageGoe");
+        }
+        if (normalized.getAgeLoe() != null) {
+            fields.add("ageLoe");
+        }
+        if (normalized.getUsernames() != null) {
+            fields.add(normalized.isIgnoreCase() ? "usernamesIgnoreCase" : "usernames");
+        }
+        if (normalized.getTeamNames() != null) {
+            fields.add("teamNames");
+        }
+        if (normalized.getMemberIds() != null) {
+            fields.add("memberIds");
+        }
+        String shape = fields.length() == 0 ? "(none)" : fields.toString();
+        if (sort == null || sort.isUnsorted()) {
+            return shape;
+        }
+        return shape + " sort=" + sort.stream().map(Sort.Order::getProperty).collect(Collectors.joining(","));
+    }
+
+    private List<String> tableScans(String plan) {
+        Set<String> tables = new LinkedHashSet<>();
+        Matcher matcher = TABLE_SCAN.matcher(plan);
+        while (matcher.find()) {
+            tables.add(matcher.group(1) + "." + matcher.group(2));
+        }
+        return new ArrayList<>(tables);
+    }
+
+    private Map<String, Long> estimatedRows(String plan) {
+        Map<String, Long> estimates = new LinkedHashMap<>();
+        Matcher matcher = TABLE.matcher(plan);
+        while (matcher.find()) {
+            String table = matcher.group(1) + "." + matcher.group(2);
+            if (estimates.containsKey(table)) {
+                continue;
+            }
+            try {
+                List<Long> rows = jdbcTemplate.queryForList(ROW_ESTIMATE, Long.class, matcher.group(1), matcher.group(2));
+                if (!rows.isEmpty()) {
+                    estimates.put(table, rows.get(0));
+                }
+            } catch (DataAccessException e) {
+                // H2 가 아니면 row_count_estimate 가 없다
+                log.debug("row estimate not available for {}: {}", table, e.getMessage());
+                return estimates;
+            }
+        }
+        return estimates;
+    }
+}
@@ -0,0 +1,120 @@
+package study.querydsl.explain;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Sort;
+import org.springframework.stereotype.Component;
+import study.querydsl.dto.MemberSearchCondition;
+
+import javax.annotation.PreDestroy;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.Collectors;
+
+/**
+ * 실제 검색 요청 중 sample-rate 비율로 실행계획을 떠서 조건 모양(SearchPlanExplainer.shapeOf)별로 모은다
+ *
+ * EXPLAIN 은 별도 스레드 하나에서 돌리고, 밀려 있으면 요청 스레드를 막지 않고 버린다 (search.explain.dropped 카운터)
+ * 기본값 0 이면 아무것도 하지 않는다.
+ */
+@Slf4j
+@Component
+public class SearchPlanSampler {
+
+    private static final int QUEUE_CAPACITY = 16;
+
+    private final SearchPlanExplainer explainer;
+    private final double sampleRate;
+    private final ThreadPoolExecutor executor;
+    private final Counter dropped;
+
+    private final Map<String, ShapeStats> byShape = new ConcurrentHashMap<>();
+
+    public SearchPlanSampler(SearchPlanExplainer explainer, MeterRegistry meterRegistry,
+                             @Value("${querydsl.explain.sample-rate:0}") double sampleRate) {
+        this.explainer = explainer;
+        this.sampleRate = sampleRate;
+        this.dropped = meterRegistry.counter("search.explain.dropped");
+        this.executor = new ThreadPoolExecutor(1, 1, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(QUEUE_CAPACITY), r -> {
+                    Thread thread = new Thread(r, "search-plan-sampler");
+                    thread.setDaemon(true);
+                    return thread;
+                });
+    }
+
+    /**
+     * @return 이번 검색을 샘플로 넘겼으면 true
+     */
+    public boolean sample(MemberSearchCondition condition, Sort sort) {
+        if (sampleRate <= 0 || ThreadLocalRandom.current().nextDouble() >= sampleRate) {
+            return false;
+        }
+        // 요청이 끝난 뒤 바인딩 객체가 바뀌어도 상관없게 복사해서 넘긴다
+        MemberSearchCondition copy = condition.normalize();
+        try {
+            executor.execute(() -> record(copy, sort));
+            return true;
+        } catch (RejectedExecutionException e) {
+            dropped.increment();
+            return false;
+        }
+    }
+
+    public List<SearchShapePlan> shapes() {
+        return byShape.entrySet().stream()
+                .filter(entry -> entry.getValue().last != null)
+                .map(entry -> entry.getValue().toPlan(entry.getKey()))
+                .sorted(Comparator.comparingLong(SearchShapePlan::getFullScans).reversed()
+                        .thenComparing(Comparator.comparingLong(SearchShapePlan::getSamples).reversed()))
+                .collect(Collectors.toList());
+    }
+
+    public void reset() {
+        byShape.clear();
+    }
+
+    private void record(MemberSearchCondition condition, Sort sort) {
+        try {
+            SearchPlan plan = explainer.explain(condition, sort, false);
+            byShape.computeIfAbsent(plan.getShape(), shape -> new ShapeStats()).add(plan);
+        } catch (RuntimeException e) {
+            log.warn("search plan sampling failed: {}", e.getMessage());
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    private static class ShapeStats {
+        final LongAdder samples = new LongAdder();
+        final LongAdder fullScans = new LongAdder();
+        volatile SearchPlan last;
+
+        void add(SearchPlan plan) {
+            last = plan;
+            samples.increment();
+            if (plan.isFullScan()) {
+                fullScans.increment();
+            }
+        }
+
+        SearchShapePlan toPlan(String shape) {
+            SearchPlan plan = last;
+            return new SearchShapePlan(shape, samples.sum(), fullScans.sum(),
+                    plan.getTableScans(), plan.getSql(), plan.getPlan());
+        }
+    }
+}
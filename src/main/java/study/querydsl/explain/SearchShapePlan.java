@@ -0,0 +1,18 @@
+package study.querydsl.explain;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+import java.util.List;
+
+@Data
+@AllArgsConstructor
+public class SearchShapePlan {
+
+    private String shape;
+    private long samples;
+    private long fullScans;
+    private List<String> tableScans;
+    private String lastSql;
+    private String lastPlan;
+}
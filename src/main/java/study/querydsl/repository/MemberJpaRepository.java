@@ -1,35 +1,95 @@
 package study.querydsl.repository;
 
 import com.querydsl.core.BooleanBuilder;
+import com.querydsl.core.Tuple;
 import com.querydsl.core.types.Predicate;
-import com.querydsl.core.types.dsl.BooleanExpression;
+import com.querydsl.core.types.OrderSpecifier;
+import com.querydsl.jpa.impl.JPAQuery;
 import com.querydsl.jpa.impl.JPAQueryFactory;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.hibernate.engine.spi.SessionImplementor;
+import org.hibernate.persister.entity.EntityPersister;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.data.domain.Sort;
+import org.springframework.orm.jpa.EntityManagerFactoryUtils;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
 import org.springframework.util.StringUtils;
+import study.querydsl.changefeed.ChangeLogWriter;
 import study.querydsl.dto.MemberSearchCondition;
+import study.querydsl.dto.MemberTeamAgeDto;
 import study.querydsl.dto.MemberTeamDto;
 import study.querydsl.dto.QMemberDto;
 import study.querydsl.dto.QMemberTeamDto;
+import study.querydsl.entity.ChangeLog;
 import study.querydsl.entity.Member;
 import study.querydsl.entity.QTeam;
+import study.querydsl.sharding.ShardedMemberSearch;
+import study.querydsl.support.InLists;
+import study.querydsl.support.SearchDeadline;
+import study.querydsl.support.SingleFlight;
+import study.querydsl.support.TableVersions;
 
 import javax.persistence.EntityManager;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.function.LongConsumer;
 
 import static org.springframework.util.StringUtils.*;
 import static study.querydsl.entity.QMember.member;
+import static study.querydsl.entity.QMemberArchive.memberArchive;
 import static study.querydsl.entity.QTeam.team;
 
 @Repository
 public class MemberJpaRepository {
 
+    private static final int IN_LIST_CHUNK_SIZE = 256;
+
     private final EntityManager em;
     private final JPAQueryFactory queryFactory;
+    private final SingleFlight<List<Object>, List<MemberTeamDto>> searchFlight;
+    private final TableVersions tableVersions;
+    private final ChangeLogWriter changeLogWriter;
+    private final TransactionTemplate chunkTransaction;
+    // querydsl.sharding.enabled=true 일 때만 있다. 회원이 샤드에 있으므로 search 는 여기로 넘긴다
+    private final ShardedMemberSearch shardedSearch;
+    private final Counter chunkRows;
+    private final Timer chunkTimer;
+    private volatile TeamAgeStatsSnapshot teamAgeStatsSnapshot;
 
-    public MemberJpaRepository(EntityManager em, JPAQueryFactory queryFactory) {
+    public MemberJpaRepository(EntityManager em, JPAQueryFactory queryFactory, MeterRegistry meterRegistry,
+                               TableVersions tableVersions, ChangeLogWriter changeLogWriter,
+                               PlatformTransactionManager transactionManager,
+                               ObjectProvider<ShardedMemberSearch> shardedSearch) {
         this.em = em;
         this.queryFactory = queryFactory;
+        this.searchFlight = new SingleFlight<>(meterRegistry, "memberJpaRepository.search");
+        this.tableVersions = tableVersions;
+        this.changeLogWriter = changeLogWriter;
+        // 청크마다 커밋해야 하므로 호출한 쪽에 트랜잭션이 있어도 새로 연다
+        this.chunkTransaction = new TransactionTemplate(transactionManager);
+        this.chunkTransaction.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        this.shardedSearch = shardedSearch.getIfAvailable();
+        this.chunkRows = meterRegistry.counter("member.chunk.rows");
+        this.chunkTimer = meterRegistry.timer("member.chunk.duration");
     }
 
     // jpa 저장하기
@@ -42,27 +102,128 @@ public class MemberJpaRepository {
         return Optional.ofNullable(findMember);
     }
 
+    /**
+     * id 목록으로 한번에 조회 (요청한 순서대로, 없는 id 는 빠진다)
+     *
+     * 1. 영속성 컨텍스트(1차 캐시)에 이미 있으면 그대로 쓰고
+     * 2. 나머지만 IN 절로 조회하는데, 플랜 캐시가 커지지 않게 2의 거듭제곱 크기로 나누고 채워서 보낸다
+     */
+    public List<Member> findAllByIds(Collection<Long> ids) {
+        Set<Long> requested = new LinkedHashSet<>();
+        for (Long id : ids) {
+            if (id != null) {
+                requested.add(id);
+            }
+        }
+
+        Map<Long, Member> found = new HashMap<>();
+        List<Long> misses = new ArrayList<>();
+        for (Long id : requested) {
+            Member managed = findManaged(id);
+            if (managed != null) {
+                found.put(id, managed);
+            } else {
+                misses.add(id);
+            }
+        }
+
+        for (List<Long> chunk : InLists.chunkAndPad(misses, IN_LIST_CHUNK_SIZE)) {
+            List<Member> members = SearchDeadline.apply(queryFactory
+                    .selectFrom(member)
+                    .leftJoin(member.team, team).fetchJoin()
+                    .where(member.id.in(chunk)))
+                    .fetch();
+            for (Member m : members) {
+                found.put(m.getId(), m);
+            }
+        }
+
+        List<Member> result = new ArrayList<>(found.size());
+        for (Long id : requested) {
+            Member m = found.get(id);
+            if (m != null) {
+                result.add(m);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * id 목록으로 DTO 를 바로 조회한다 (컨트롤러용, 요청한 순서대로, 없는 id 는 빠진다)
+     *
+     * 엔티티를 거치지 않고 member left join team 한번으로 필요한 컬럼만 읽으므로 트랜잭션이 끝난 뒤 지연 로딩할 것이 없다.
+     * IN 절은 findAllByIds 와 같이 나누고 채워서 보낸다.
+     */
+    public List<MemberTeamDto> findDtosByIds(Collection<Long> ids) {
+        Set<Long> requested = new LinkedHashSet<>();
+        for (Long id : ids) {
+            if (id != null) {
+                requested.add(id);
+            }
+        }
+
+        Map<Long, MemberTeamDto> found = new HashMap<>();
+        for (List<Long> chunk : InLists.chunkAndPad(requested, IN_LIST_CHUNK_SIZE)) {
+            List<MemberTeamDto> rows = SearchDeadline.apply(queryFactory
+                    .select(new QMemberTeamDto(
+                            member.id,
+                            member.username,
+                            member.age,
+                            team.id,
+                            team.name
+                    ))
+                    .from(member)
+                    .leftJoin(member.team, team)
+                    .where(member.id.in(chunk)))
+                    .fetch();
+            for (MemberTeamDto row : rows) {
+                found.put(row.getMemberId(), row);
+            }
+        }
+
+        List<MemberTeamDto> result = new ArrayList<>(found.size());
+        for (Long id : requested) {
+            MemberTeamDto row = found.get(id);
+            if (row != null) {
+                result.add(row);
+            }
+        }
+        return result;
+    }
+
+    // 현재 스레드에 묶인 영속성 컨텍스트가 없으면 확인할 1차 캐시도 없다
+    private Member findManaged(Long id) {
+        EntityManager current = EntityManagerFactoryUtils.getTransactionalEntityManager(em.getEntityManagerFactory());
+        if (current == null) {
+            return null;
+        }
+        SessionImplementor session = current.unwrap(SessionImplementor.class);
+        EntityPersister persister = session.getFactory().getMetamodel().entityPersister(Member.class);
+        Object entity = session.getPersistenceContext().getEntity(session.generateEntityKey(id, persister));
+        return entity instanceof Member ? (Member) entity : null;
+    }
+
     public List<Member> findAll() {
-        return em.createQuery("select m from Member m", Member.class)
+        return SearchDeadline.apply(em.createQuery("select m from Member m", Member.class))
                 .getResultList();
     }
 
     public List<Member> findAll_Querydsl(){
-        return queryFactory
-                .selectFrom(member)
+        return SearchDeadline.apply(queryFactory
+                .selectFrom(member))
                 .fetch();
     }
 
     public List<Member> findByUsername(String username) {
-        return em.createQuery("select m from Member m where m.username = :username", Member.class)
+        return SearchDeadline.apply(em.createQuery("select m from Member m where m.username = :username", Member.class))
                 .setParameter("username", username)
                 .getResultList();
     }
 
     public List<Member> findByUsername_Querydsl (String username) {
-        return queryFactory
+        return SearchDeadline.apply(queryFactory
                 .selectFrom(member)
-                .where(member.username.eq(username))
+                .where(member.username.eq(username)))
                 .fetch();
     }
 
@@ -70,7 +231,7 @@ public class MemberJpaRepository {
 
         BooleanBuilder builder = new BooleanBuilder();
         if (hasText(condition.getUsername())) {
-            builder.and(member.username.eq(condition.getUsername()));
+            builder.and(MemberPredicates.usernameEq(condition.getUsername(), condition.isIgnoreCase()));
         }
         if (hasText(condition.getTeamName())) {
             builder.and(team.name.eq(condition.getTeamName()));
@@ -81,7 +242,11 @@ public class MemberJpaRepository {
         if (condition.getAgeLoe() != null) {
             builder.and(member.age.loe(condition.getAgeLoe()));
         }
-        return queryFactory
+        MemberSearchCondition normalized = condition.normalize();
+        builder.and(MemberPredicates.usernameIn(normalized.getUsernames(), normalized.isIgnoreCase()));
+        builder.and(MemberPredicates.teamNameIn(normalized.getTeamNames()));
+        builder.and(MemberPredicates.memberIdIn(normalized.getMemberIds()));
+        return SearchDeadline.apply(queryFactory
                 .select(new QMemberTeamDto(
                         member.id.as("memberId"),
                         member.username,
@@ -91,13 +256,93 @@ public class MemberJpaRepository {
                 ))
                 .from(member)
                 .leftJoin(member.team, team)
-                .where(builder)
+                .where(builder))
                 .fetch();
     }
 
     public List<MemberTeamDto> search(MemberSearchCondition condition) {
+        return search(condition, Sort.unsorted());
+    }
+
+    public List<MemberTeamDto> search(MemberSearchCondition condition, Sort sort) {
+        // 허용하지 않는 정렬 키는 쿼리 전에 거절
+        Sort resolvedSort = sort != null ? sort : Sort.unsorted();
+        OrderSpecifier<?>[] orders = MemberSortKeys.toOrderSpecifiers(resolvedSort, condition);
+        // 동시에 들어온 같은 검색은 쿼리 한번으로 합친다
+        return searchFlight.execute(List.of(condition.normalize(), resolvedSort),
+                () -> Collections.unmodifiableList(runSearch(condition, resolvedSort, orders)));
+    }
+
+    private List<MemberTeamDto> runSearch(MemberSearchCondition condition, Sort sort, OrderSpecifier<?>[] orders) {
+        if (shardedSearch != null) {
+            return shardedSearch.search(condition, sort);
+        }
+        return condition.isIncludeArchived()
+                ? withArchived(doSearch(condition, sort, orders), condition, sort)
+                : doSearch(condition, sort, orders);
+    }
+
+    /**
+     * 보관된 회원(member_archive)도 같은 MemberTeamDto 로 읽어서 붙인다
+     * 정렬이 있으면 합친 뒤 같은 순서로 다시 정렬한다
+     */
+    private List<MemberTeamDto> withArchived(List<MemberTeamDto> hot, MemberSearchCondition condition, Sort sort) {
+        List<MemberTeamDto> result = new ArrayList<>(hot);
+        for (MemberSearchCondition part : condition.split(IN_LIST_CHUNK_SIZE)) {
+            result.addAll(SearchDeadline.apply(queryFactory
+                    .select(new QMemberTeamDto(
+                            memberArchive.id,
+                            memberArchive.username,
+                            memberArchive.age,
+                            team.id,
+                            team.name
+                    ))
+                    .from(memberArchive)
+                    .leftJoin(team).on(team.id.eq(memberArchive.teamId))
+                    .where(MemberPredicates.archiveOf(part)))
+                    .fetch());
+        }
 
-        return queryFactory
+        if (sort.isSorted()) {
+            result.sort(MemberSortKeys.toComparator(sort));
+        }
+        return result;
+    }
+
+    /**
+     * 목록 조건(usernames, teamNames, memberIds)이 IN_LIST_CHUNK_SIZE 개를 넘으면 조각마다 한번씩 보내고 합친다
+     * 조각끼리는 결과가 겹치지 않으므로 이어 붙이고, 정렬이 있으면 다시 정렬한다
+     */
+    private List<MemberTeamDto> doSearch(MemberSearchCondition condition, Sort sort, OrderSpecifier<?>[] orders) {
+        List<MemberSearchCondition> parts = searchParts(condition);
+        if (parts.size() == 1) {
+            return SearchDeadline.apply(searchQuery(parts.get(0), orders))
+                    .fetch();
+        }
+        List<MemberTeamDto> result = new ArrayList<>();
+        for (MemberSearchCondition part : parts) {
+            result.addAll(SearchDeadline.apply(searchQuery(part, orders))
+                    .fetch());
+        }
+        if (sort.isSorted()) {
+            result.sort(MemberSortKeys.toComparator(sort));
+        }
+        return result;
+    }
+
+    /**
+     * search 가 searchQuery 로 보내는 조건 조각 (정규화됨). 목록 조건이 IN_LIST_CHUNK_SIZE 개를 넘으면 여러 개
+     */
+    public List<MemberSearchCondition> searchParts(MemberSearchCondition condition) {
+        return condition.split(IN_LIST_CHUNK_SIZE);
+    }
+
+    /**
+     * search 가 member 테이블에 보내는 쿼리 (실행하지 않은 상태, condition 은 searchParts 의 조각 하나)
+     * SearchPlanExplainer 가 같은 쿼리의 실행계획을 볼 때도 쓴다
+     */
+    public JPAQuery<MemberTeamDto> searchQuery(MemberSearchCondition condition, OrderSpecifier<?>... orders) {
+        return MemberPredicates.joinTeam(queryFactory
                 .select(new QMemberTeamDto(
                         member.id.as("memberId"),
                         member.username,
@@ -105,33 +350,253 @@ public class MemberJpaRepository {
                         team.id.as("teamId"),
                         team.name.as("teamName")
                 ))
+                .from(member), condition)
+                .where(MemberPredicates.of(condition))
+                .orderBy(orders);
+    }
+
+    /**
+     * 조건에 맞는 회원 나이를 delta 만큼 더한다 (QuerydslBasicTest.bulkAdd 의 조건 버전)
+     *
+     * 벌크 연산은 하이버네이트 이벤트가 안 나가므로 대상 id 를 먼저 조회해서 change_log 에 직접 기록한다.
+     * 벌크 연산은 영속성 컨텍스트를 무시하므로, 이미 올라와 있는 Member 가 필요하면 호출 후 em.clear() 할 것.
+     * 요청 데드라인이 지나면 다음 청크를 보내지 않는다 (실행 중인 update 는 SearchDeadlineCanceller 가 취소, 트랜잭션은 롤백).
+     */
+    @Transactional
+    public long bulkAddAge(MemberSearchCondition condition, int delta) {
+        List<Long> ids = findIds(condition);
+        for (List<Long> chunk : InLists.chunkAndPad(ids, IN_LIST_CHUNK_SIZE)) {
+            SearchDeadline.check();
+            queryFactory
+                    .update(member)
+                    .set(member.age, member.age.add(delta))
+                    .where(member.id.in(chunk))
+                    .execute();
+        }
+        changeLogWriter.recordAll(ChangeLog.EntityType.MEMBER, ChangeLog.Operation.UPDATE, ids);
+        return ids.size();
+    }
+
+    /**
+     * 조건에 맞는 회원 삭제 (QuerydslBasicTest.bulkDelete 의 조건 버전)
+     */
+    @Transactional
+    public long bulkDelete(MemberSearchCondition condition) {
+        List<Long> ids = findIds(condition);
+        changeLogWriter.recordMemberTeams(ids, -1);
+        for (List<Long> chunk : InLists.chunkAndPad(ids, IN_LIST_CHUNK_SIZE)) {
+            SearchDeadline.check();
+            queryFactory
+                    .delete(member)
+                    .where(member.id.in(chunk))
+                    .execute();
+        }
+        changeLogWriter.recordAll(ChangeLog.EntityType.MEMBER, ChangeLog.Operation.DELETE, ids);
+        return ids.size();
+    }
+
+    private List<Long> findIds(MemberSearchCondition condition) {
+        return SearchDeadline.apply(queryFactory
+                .select(member.id)
                 .from(member)
                 .leftJoin(member.team, team)
-                .where(
-                        usernameEq(condition.getUsername()),
-                        teamNameEq(condition.getTeamName()),
-                        ageGoe(condition.getAgeGoe()),
-                        ageLoe(condition.getAgeLoe())
-                )
+                .where(MemberPredicates.of(condition.normalize())))
                 .fetch();
+    }
 
+    /**
+     * 조건에 맞는 회원 전체를 chunkSize 씩 나눠서 consumer 에 넘긴다 (재계산, 백필 같은 배치 작업용)
+     *
+     * findAll() 처럼 전부를 한 영속성 컨텍스트에 올리지 않고, id 순서로 "id > 마지막 id" 조건(keyset)을 걸어 읽는다.
+     * 청크마다 새 트랜잭션에서 consumer 실행 -> flush -> clear -> 커밋하므로 consumer 가 바꾼 값은 변경감지로 저장되고,
+     * 메모리에는 한 청크만 남는다. 청크 트랜잭션은 호출한 쪽의 트랜잭션과 별개라 호출한 쪽에서 아직 커밋하지 않은 데이터는 보이지 않는다.
+     *
+     * @return 처리한 회원 수
+     */
+    public long forEachChunk(MemberSearchCondition condition, int chunkSize, Consumer<List<Member>> consumer) {
+        return forEachChunk(condition, chunkSize, null, consumer, lastId -> {
+        });
     }
 
-    private BooleanExpression usernameEq(String username) {
-        return hasText(username) ? member.username.eq(username) : null;
+    /**
+     * @param afterId    이 id 다음부터 처리한다 (처음부터면 null)
+     * @param checkpoint 청크가 커밋될 때마다 그 청크의 마지막 id 를 받는다. 저장해뒀다가 중단된 뒤 afterId 로 넘기면 이어서 처리
+     */
+    public long forEachChunk(MemberSearchCondition condition, int chunkSize, Long afterId,
+                             Consumer<List<Member>> consumer, LongConsumer checkpoint) {
+        return processRange(condition, chunkSize, afterId, null, consumer, checkpoint);
     }
 
-    private BooleanExpression teamNameEq(String teamName) {
-        return hasText(teamName) ? team.name.eq(teamName) : null;
+    /**
+     * id 범위를 parallelism 개로 나눠서 범위마다 별도 스레드, 별도 트랜잭션으로 forEachChunk 한다
+     * 범위 사이의 처리 순서는 보장하지 않으므로 consumer 는 여러 스레드에서 동시에 불려도 안전해야 한다.
+     * 한 범위라도 실패하면 나머지를 중단하고 그 예외를 던진다 (이미 커밋된 청크는 그대로 남는다)
+     */
+    public long forEachChunkParallel(MemberSearchCondition condition, int chunkSize, int parallelism,
+                                     Consumer<List<Member>> consumer) {
+        if (parallelism < 1) {
+            throw new IllegalArgumentException("parallelism must be positive: " + parallelism);
+        }
+        Tuple bounds = queryFactory
+                .select(member.id.min(), member.id.max())
+                .from(member)
+                .leftJoin(member.team, team)
+                .where(MemberPredicates.of(condition.normalize()))
+                .fetchOne();
+        Long minId = bounds != null ? bounds.get(member.id.min()) : null;
+        Long maxId = bounds != null ? bounds.get(member.id.max()) : null;
+        if (minId == null || maxId == null) {
+            return 0;
+        }
+
+        long step = (maxId - minId) / parallelism + 1;
+        AtomicInteger threadIndex = new AtomicInteger();
+        ExecutorService executor = Executors.newFixedThreadPool(parallelism, r -> {
+            Thread thread = new Thread(r, "member-chunk-" + threadIndex.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        try {
+            List<Future<Long>> ranges = new ArrayList<>();
+            for (long lower = minId; lower <= maxId; lower += step) {
+                long afterId = lower - 1;
+                long upToId = Math.min(lower + step - 1, maxId);
+                ranges.add(executor.submit(() -> processRange(condition, chunkSize, afterId, upToId, consumer, lastId -> {
+                })));
+            }
+            long processed = 0;
+            for (Future<Long> range : ranges) {
+                processed += range.get();
+            }
+            return processed;
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            throw cause instanceof RuntimeException ? (RuntimeException) cause : new IllegalStateException(cause);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("interrupted", e);
+        } finally {
+            executor.shutdownNow();
+        }
     }
 
-    private BooleanExpression ageGoe(Integer ageGoe) {
-        return ageGoe != null ? member.age.goe(ageGoe) : null;
+    // (afterId, upToId] 범위를 chunkSize 씩
+    private long processRange(MemberSearchCondition condition, int chunkSize, Long afterId, Long upToId,
+                              Consumer<List<Member>> consumer, LongConsumer checkpoint) {
+        if (chunkSize < 1) {
+            throw new IllegalArgumentException("chunkSize must be positive: " + chunkSize);
+        }
+        Predicate[] predicates = MemberPredicates.of(condition.normalize());
+        long processed = 0;
+        Long lastId = afterId;
+        while (true) {
+            Long from = lastId;
+            List<Member> chunk = chunkTimer.record(() -> chunkTransaction.execute(status -> {
+                List<Member> members = queryFactory
+                        .selectFrom(member)
+                        .leftJoin(member.team, team).fetchJoin()
+                        .where(predicates)
+                        .where(from != null ? member.id.gt(from) : null,
+                                upToId != null ? member.id.loe(upToId) : null)
+                        .orderBy(member.id.asc())
+                        .limit(chunkSize)
+                        .fetch();
+                if (!members.isEmpty()) {
+                    consumer.accept(members);
+                    em.flush();
+                    em.clear();
+                }
+                return members;
+            }));
+            if (chunk == null || chunk.isEmpty()) {
+                return processed;
+            }
+
+            lastId = chunk.get(chunk.size() - 1).getId();
+            processed += chunk.size();
+            chunkRows.increment(chunk.size());
+            checkpoint.accept(lastId);
+            if (chunk.size() < chunkSize) {
+                return processed;
+            }
+        }
     }
 
-    private BooleanExpression ageLoe(Integer ageLoe) {
-        return ageLoe != null ? member.age.loe(ageLoe) : null;
+    /**
+     * 검색 결과 + 팀별 평균/최대 나이
+     *
+     * 회원마다 상관 서브쿼리(select avg(memberSub.age) from Member memberSub where memberSub.team = member.team)를
+     * 돌리는 대신, 팀별 집계(group by)를 한번 구해서 메모리에서 붙인다.
+     * 팀별 집계는 member/team 테이블 버전이 바뀌기 전까지 재사용하므로 보통은 검색 쿼리 하나로 끝난다.
+     */
+    public List<MemberTeamAgeDto> searchWithTeamAgeStats(MemberSearchCondition condition, Sort sort) {
+        Map<Long, TeamAgeStats> stats = teamAgeStats();
+        List<MemberTeamDto> rows = search(condition, sort);
+
+        List<MemberTeamAgeDto> result = new ArrayList<>(rows.size());
+        for (MemberTeamDto row : rows) {
+            TeamAgeStats teamStats = row.getTeamId() != null ? stats.get(row.getTeamId()) : null;
+            result.add(teamStats != null
+                    ? new MemberTeamAgeDto(row, teamStats.avgAge, teamStats.maxAge)
+                    : new MemberTeamAgeDto(row, null, null));
+        }
+        return result;
+    }
+
+    /**
+     * 소속 팀 평균 나이 이상인 회원 (QuerydslBasicTest.subQueryGoe 의 팀별 버전)
+     */
+    public List<MemberTeamAgeDto> searchAboveTeamAverage(MemberSearchCondition condition, Sort sort) {
+        List<MemberTeamAgeDto> result = new ArrayList<>();
+        for (MemberTeamAgeDto row : searchWithTeamAgeStats(condition, sort)) {
+            if (row.isAboveTeamAverage()) {
+                result.add(row);
+            }
+        }
+        return result;
+    }
+
+    private Map<Long, TeamAgeStats> teamAgeStats() {
+        long memberVersion = tableVersions.version(TableVersions.MEMBER);
+        long teamVersion = tableVersions.version(TableVersions.TEAM);
+        TeamAgeStatsSnapshot snapshot = teamAgeStatsSnapshot;
+        if (snapshot != null && snapshot.memberVersion == memberVersion && snapshot.teamVersion == teamVersion) {
+            return snapshot.stats;
+        }
+
+        List<Tuple> tuples = SearchDeadline.apply(queryFactory
+                .select(team.id, member.age.avg(), member.age.max())
+                .from(member)
+                .join(member.team, team)
+                .groupBy(team.id))
+                .fetch();
+        Map<Long, TeamAgeStats> stats = new HashMap<>();
+        for (Tuple tuple : tuples) {
+            stats.put(tuple.get(team.id), new TeamAgeStats(tuple.get(member.age.avg()), tuple.get(member.age.max())));
+        }
+        teamAgeStatsSnapshot = new TeamAgeStatsSnapshot(memberVersion, teamVersion, stats);
+        return stats;
     }
 
+    private static class TeamAgeStats {
+        private final Double avgAge;
+        private final Integer maxAge;
 
+        TeamAgeStats(Double avgAge, Integer maxAge) {
+            this.avgAge = avgAge;
+            this.maxAge = maxAge;
+        }
+    }
+
+    private static class TeamAgeStatsSnapshot {
+        private final long memberVersion;
+        private final long teamVersion;
+        private final Map<Long, TeamAgeStats> stats;
+
+        TeamAgeStatsSnapshot(long memberVersion, long teamVersion, Map<Long, TeamAgeStats> stats) {
+            this.memberVersion = memberVersion;
+            this.teamVersion = teamVersion;
+            this.stats = stats;
+        }
+    }
 }
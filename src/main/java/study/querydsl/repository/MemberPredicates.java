@@ -0,0 +1,135 @@
+package study.querydsl.repository;
+
+import com.querydsl.core.types.Predicate;
+import com.querydsl.core.types.dsl.BooleanExpression;
+import com.querydsl.jpa.impl.JPAQuery;
+import study.querydsl.dto.MemberSearchCondition;
+import study.querydsl.entity.Member;
+import study.querydsl.support.InLists;
+
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.springframework.util.StringUtils.hasText;
+import static study.querydsl.entity.QMember.member;
+import static study.querydsl.entity.QMemberArchive.memberArchive;
+import static study.querydsl.entity.QTeam.team;
+
+/**
+ * 회원 검색 조건(MemberSearchCondition) -> where 절
+ *
+ * member + team 검색(of, joinTeam)과 member_archive left join team 검색(archiveOf)에서 같이 쓴다.
+ * 값이 없는 조건은 null 이라 where(...) 에 그대로 넘기면 빠진다.
+ *
+ * 목록 조건은 normalize() 나 split() 을 거친 값을 넘길 것 (빈 값과 중복이 빠지고, split 이면 조각 크기 이하).
+ * IN 절 파라미터 개수는 2의 거듭제곱으로 채워서(InLists) 쿼리 플랜이 몇 가지로만 나오게 한다.
+ * 대소문자 무시는 lower(username) 대신 소문자로 저장해둔 username_lower 인덱스로 비교한다.
+ */
+public final class MemberPredicates {
+
+    private MemberPredicates() {
+    }
+
+    /**
+     * member 에 team 을 붙인다. 팀 조건(teamName, teamNames)이 있으면 팀 없는 회원은 어차피 빠지므로 inner join
+     *
+     * left join 이면 DB 가 member 부터 읽어야 해서 팀 조건이 있어도 member 전체를 스캔한다.
+     * inner join 이면 team.name 인덱스(idx_team_name)로 팀을 찾고 member.team_id 인덱스(idx_member_team)로 회원을 찾을 수 있다.
+     */
+    public static <T> JPAQuery<T> joinTeam(JPAQuery<T> query, MemberSearchCondition condition) {
+        return filtersByTeam(condition)
+                ? query.join(member.team, team)
+                : query.leftJoin(member.team, team);
+    }
+
+    public static boolean filtersByTeam(MemberSearchCondition condition) {
+        return hasText(condition.getTeamName())
+                || (condition.getTeamNames() != null && !condition.getTeamNames().isEmpty());
+    }
+
+    public static Predicate[] of(MemberSearchCondition condition) {
+        return new Predicate[]{
+                usernameEq(condition.getUsername(), condition.isIgnoreCase()),
+                teamNameEq(condition.getTeamName()),
+                ageGoe(condition.getAgeGoe()),
+                ageLoe(condition.getAgeLoe()),
+                usernameIn(condition.getUsernames(), condition.isIgnoreCase()),
+                teamNameIn(condition.getTeamNames()),
+                memberIdIn(condition.getMemberIds())
+        };
+    }
+
+    public static Predicate[] archiveOf(MemberSearchCondition condition) {
+        return new Predicate[]{
+                archiveUsernameEq(condition.getUsername(), condition.isIgnoreCase()),
+                teamNameEq(condition.getTeamName()),
+                condition.getAgeGoe() != null ? memberArchive.age.goe(condition.getAgeGoe()) : null,
+                condition.getAgeLoe() != null ? memberArchive.age.loe(condition.getAgeLoe()) : null,
+                archiveUsernameIn(condition.getUsernames(), condition.isIgnoreCase()),
+                teamNameIn(condition.getTeamNames()),
+                archiveMemberIdIn(condition.getMemberIds())
+        };
+    }
+
+    public static BooleanExpression usernameEq(String username, boolean ignoreCase) {
+        if (!hasText(username)) {
+            return null;
+        }
+        return ignoreCase ? member.usernameLower.eq(Member.lowerCase(username)) : member.username.eq(username);
+    }
+
+    public static BooleanExpression teamNameEq(String teamName) {
+        return hasText(teamName) ? team.name.eq(teamName) : null;
+    }
+
+    public static BooleanExpression ageGoe(Integer ageGoe) {
+        return ageGoe != null ? member.age.goe(ageGoe) : null;
+    }
+
+    public static BooleanExpression ageLoe(Integer ageLoe) {
+        return ageLoe != null ? member.age.loe(ageLoe) : null;
+    }
+
+    public static BooleanExpression usernameIn(List<String> usernames, boolean ignoreCase) {
+        if (usernames == null || usernames.isEmpty()) {
+            return null;
+        }
+        return ignoreCase
+                ? member.usernameLower.in(InLists.pad(lowerCase(usernames)))
+                : member.username.in(InLists.pad(usernames));
+    }
+
+    public static BooleanExpression teamNameIn(List<String> teamNames) {
+        return teamNames != null && !teamNames.isEmpty() ? team.name.in(InLists.pad(teamNames)) : null;
+    }
+
+    public static BooleanExpression memberIdIn(List<Long> memberIds) {
+        return memberIds != null && !memberIds.isEmpty() ? member.id.in(InLists.pad(memberIds)) : null;
+    }
+
+    public static BooleanExpression archiveUsernameEq(String username, boolean ignoreCase) {
+        if (!hasText(username)) {
+            return null;
+        }
+        return ignoreCase
+                ? memberArchive.usernameLower.eq(Member.lowerCase(username))
+                : memberArchive.username.eq(username);
+    }
+
+    public static BooleanExpression archiveUsernameIn(List<String> usernames, boolean ignoreCase) {
+        if (usernames == null || usernames.isEmpty()) {
+            return null;
+        }
+        return ignoreCase
+                ? memberArchive.usernameLower.in(InLists.pad(lowerCase(usernames)))
+                : memberArchive.username.in(InLists.pad(usernames));
+    }
+
+    public static BooleanExpression archiveMemberIdIn(List<Long> memberIds) {
+        return memberIds != null && !memberIds.isEmpty() ? memberArchive.id.in(InLists.pad(memberIds)) : null;
+    }
+
+    private static List<String> lowerCase(List<String> usernames) {
+        return usernames.stream().map(Member::lowerCase).collect(Collectors.toList());
+    }
+}
@@ -1,5 +1,8 @@
 package study.querydsl.repository;
 
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Sort;
 import study.querydsl.dto.MemberSearchCondition;
 import study.querydsl.dto.MemberTeamDto;
 
@@ -8,4 +11,10 @@ import java.util.List;
 public interface MemberRepositoryCustom {
 
     List<MemberTeamDto> search(MemberSearchCondition condition);
+
+    // sort 키는 MemberSortKeys 에 있는 것만 허용
+    List<MemberTeamDto> search(MemberSearchCondition condition, Sort sort);
+
+    // pageable 의 sort 도 MemberSortKeys 에 있는 것만 허용
+    Page<MemberTeamDto> searchPage(MemberSearchCondition condition, Pageable pageable);
 }
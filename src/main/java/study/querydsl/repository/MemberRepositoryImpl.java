@@ -1,63 +1,173 @@
 package study.querydsl.repository;
 
-import com.querydsl.core.types.dsl.BooleanExpression;
+import com.querydsl.core.types.OrderSpecifier;
+import com.querydsl.jpa.impl.JPAQuery;
 import com.querydsl.jpa.impl.JPAQueryFactory;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageImpl;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Sort;
 import study.querydsl.dto.MemberSearchCondition;
 import study.querydsl.dto.MemberTeamDto;
 import study.querydsl.dto.QMemberTeamDto;
+import study.querydsl.sharding.ShardedMemberSearch;
+import study.querydsl.support.SearchDeadline;
+import study.querydsl.support.SingleFlight;
 
 import javax.persistence.EntityManager;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 
-import static org.springframework.util.StringUtils.hasText;
 import static study.querydsl.entity.QMember.member;
+import static study.querydsl.entity.QMemberArchive.memberArchive;
 import static study.querydsl.entity.QTeam.team;
 
 public class MemberRepositoryImpl implements MemberRepositoryCustom {
 
+    private static final int IN_LIST_CHUNK_SIZE = 256;
+
     private final JPAQueryFactory  queryFactory;
+    private final SingleFlight<List<Object>, List<MemberTeamDto>> searchFlight;
+    // querydsl.sharding.enabled=true 일 때만 있다
+    private final ShardedMemberSearch shardedSearch;
 
-    public MemberRepositoryImpl(EntityManager em) {
+    public MemberRepositoryImpl(EntityManager em, MeterRegistry meterRegistry,
+                                ObjectProvider<ShardedMemberSearch> shardedSearch) {
         this.queryFactory = new JPAQueryFactory(em);
+        this.searchFlight = new SingleFlight<>(meterRegistry, "memberRepository.search");
+        this.shardedSearch = shardedSearch.getIfAvailable();
     }
 
 
     @Override
     public List<MemberTeamDto> search(MemberSearchCondition condition) {
+        return search(condition, Sort.unsorted());
+    }
 
-        return queryFactory
-                .select(new QMemberTeamDto(
-                        member.id.as("memberId"),
-                        member.username,
-                        member.age,
-                        team.id.as("teamId"),
-                        team.name.as("teamName")
-                ))
-                .from(member)
-                .leftJoin(member.team, team)
-                .where(
-                        usernameEq(condition.getUsername()),
-                        teamNameEq(condition.getTeamName()),
-                        ageGoe(condition.getAgeGoe()),
-                        ageLoe(condition.getAgeLoe())
-                )
-                .fetch();
+    @Override
+    public List<MemberTeamDto> search(MemberSearchCondition condition, Sort sort) {
+        // 허용하지 않는 정렬 키는 쿼리 전에 거절
+        Sort resolvedSort = sort != null ? sort : Sort.unsorted();
+        OrderSpecifier<?>[] orders = MemberSortKeys.toOrderSpecifiers(resolvedSort, condition);
+        // 동시에 들어온 같은 검색은 쿼리 한번으로 합친다
+        return searchFlight.execute(List.of(condition.normalize(), resolvedSort),
+                () -> Collections.unmodifiableList(shardedSearch != null
+                        ? shardedSearch.search(condition, resolvedSort)
+                        : doSearch(condition, resolvedSort, orders)));
+    }
+
+    @Override
+    public Page<MemberTeamDto> searchPage(MemberSearchCondition condition, Pageable pageable) {
+        OrderSpecifier<?>[] orders = MemberSortKeys.toOrderSpecifiers(pageable.getSort(), condition);
+        if (shardedSearch != null) {
+            return shardedSearch.searchPage(condition, pageable);
+        }
 
+        List<MemberSearchCondition> parts = condition.split(IN_LIST_CHUNK_SIZE);
+        if (parts.size() == 1 && !condition.isIncludeArchived()) {
+            List<MemberTeamDto> content = SearchDeadline.apply(searchQuery(parts.get(0))
+                    .orderBy(orders)
+                    .offset(pageable.getOffset())
+                    .limit(pageable.getPageSize()))
+                    .fetch();
+            return new PageImpl<>(content, pageable, count(parts.get(0)));
+        }
+
+        // 목록 조건이 길어서 나눠 보내거나 보관된 회원도 볼 때는 샤드 결과처럼
+        // 조각(과 member_archive)마다 같은 순서로 앞에서부터 offset + size 건을 가져와서 합친다
+        Sort mergeSort = pageable.getSort().isSorted() ? pageable.getSort() : Sort.by("memberId");
+        OrderSpecifier<?>[] mergeOrders = MemberSortKeys.toOrderSpecifiers(mergeSort, condition);
+        OrderSpecifier<?>[] archiveOrders = MemberSortKeys.toArchiveOrderSpecifiers(mergeSort, condition);
+        long limit = pageable.getOffset() + pageable.getPageSize();
+        List<List<MemberTeamDto>> contents = new ArrayList<>(parts.size());
+        long total = 0;
+        for (MemberSearchCondition part : parts) {
+            contents.add(SearchDeadline.apply(searchQuery(part)
+                    .orderBy(mergeOrders)
+                    .limit(limit))
+                    .fetch());
+            total += count(part);
+            if (condition.isIncludeArchived()) {
+                contents.add(SearchDeadline.apply(archiveQuery(part)
+                        .orderBy(archiveOrders)
+                        .limit(limit))
+                        .fetch());
+                total += archiveCount(part);
+            }
+        }
+        List<MemberTeamDto> content = ShardedMemberSearch.merge(contents, MemberSortKeys.toComparator(mergeSort),
+                pageable.getOffset(), pageable.getPageSize());
+        return new PageImpl<>(content, pageable, total);
     }
 
-    private BooleanExpression usernameEq(String username) {
-        return hasText(username) ? member.username.eq(username) : null;
+    private long count(MemberSearchCondition condition) {
+        Long total = SearchDeadline.apply(MemberPredicates.joinTeam(queryFactory
+                .select(member.count())
+                .from(member), condition)
+                .where(MemberPredicates.of(condition)))
+                .fetchOne();
+        return total != null ? total : 0;
     }
 
-    private BooleanExpression teamNameEq(String teamName) {
-        return hasText(teamName) ? team.name.eq(teamName) : null;
+    private long archiveCount(MemberSearchCondition condition) {
+        Long total = SearchDeadline.apply(queryFactory
+                .select(memberArchive.count())
+                .from(memberArchive)
+                .leftJoin(team).on(team.id.eq(memberArchive.teamId))
+                .where(MemberPredicates.archiveOf(condition)))
+                .fetchOne();
+        return total != null ? total : 0;
     }
 
-    private BooleanExpression ageGoe(Integer ageGoe) {
-        return ageGoe != null ? member.age.goe(ageGoe) : null;
+    /**
+     * 목록 조건이 IN_LIST_CHUNK_SIZE 개를 넘으면 조각마다 한번씩 보내고 합친다 (조각끼리 결과가 겹치지 않는다)
+     * includeArchived=true 면 조각마다 보관된 회원(member_archive)도 읽어서 붙이고, 정렬이 있으면 합친 뒤 다시 정렬한다
+     */
+    private List<MemberTeamDto> doSearch(MemberSearchCondition condition, Sort sort, OrderSpecifier<?>[] orders) {
+        List<MemberSearchCondition> parts = condition.split(IN_LIST_CHUNK_SIZE);
+        List<MemberTeamDto> result = new ArrayList<>();
+        for (MemberSearchCondition part : parts) {
+            result.addAll(SearchDeadline.apply(searchQuery(part)
+                    .orderBy(orders))
+                    .fetch());
+            if (condition.isIncludeArchived()) {
+                result.addAll(SearchDeadline.apply(archiveQuery(part))
+                        .fetch());
+            }
+        }
+        if ((parts.size() > 1 || condition.isIncludeArchived()) && sort.isSorted()) {
+            result.sort(MemberSortKeys.toComparator(sort));
+        }
+        return result;
     }
 
-    private BooleanExpression ageLoe(Integer ageLoe) {
-        return ageLoe != null ? member.age.loe(ageLoe) : null;
+    private JPAQuery<MemberTeamDto> searchQuery(MemberSearchCondition condition) {
+        return MemberPredicates.joinTeam(queryFactory
+                .select(new QMemberTeamDto(
+                        member.id.as("memberId"),
+                        member.username,
+                        member.age,
+                        team.id.as("teamId"),
+                        team.name.as("teamName")
+                ))
+                .from(member), condition)
+                .where(MemberPredicates.of(condition));
+    }
+
+    private JPAQuery<MemberTeamDto> archiveQuery(MemberSearchCondition condition) {
+        return queryFactory
+                .select(new QMemberTeamDto(
+                        memberArchive.id,
+                        memberArchive.username,
+                        memberArchive.age,
+                        team.id,
+                        team.name
+                ))
+                .from(memberArchive)
+                .leftJoin(team).on(team.id.eq(memberArchive.teamId))
+                .where(MemberPredicates.archiveOf(condition));
     }
 }
@@ -0,0 +1,142 @@
+package study.querydsl.repository;
+
+import com.querydsl.core.types.Order;
+import com.querydsl.core.types.OrderSpecifier;
+import com.querydsl.core.types.dsl.ComparableExpressionBase;
+import org.springframework.data.domain.Sort;
+import study.querydsl.dto.MemberSearchCondition;
+import study.querydsl.dto.MemberTeamDto;
+import study.querydsl.support.BadRequestException;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static study.querydsl.entity.QMember.member;
+import static study.querydsl.entity.QMemberArchive.memberArchive;
+import static study.querydsl.entity.QTeam.team;
+
+/**
+ * 회원 검색에서 허용하는 정렬 키
+ *
+ * 정해둔 키로만 정렬할 수 있고, 그 외는 BadRequestException 으로 막는다 (order by 모양이 몇 가지로만 나오게)
+ *
+ * 키 하나로 정렬하면 조건이 없어도 DB 가 정렬하지 않고 인덱스 순서대로 읽는다 (실행계획에 index sorted)
+ * - 뒤에 붙는 PK 동점 처리까지 인덱스에 넣었다: (username, member_id), (age, member_id). 방향마다 인덱스 하나씩
+ * - nulls last 는 null 이 될 수 있는 username, teamName 에만 붙이고, username 인덱스도 nulls last 로 만든다 (import.sql)
+ * - teamName 은 join 건너편 컬럼이라 인덱스로 정렬할 수 없다. 팀 조건(teamName, teamNames)으로 걸러진 회원만 정렬하게 하고
+ *   팀 조건 없이 teamName 으로 정렬하면 BadRequestException
+ * 키를 두 개 이상 주면 (sort=age,desc&sort=username) 인덱스 순서와 맞지 않아 DB 가 정렬한다.
+ *
+ * sort=age,desc -> order by member.age desc, member.id asc
+ * sort=username -> order by member.username asc nulls last, member.id asc
+ */
+public final class MemberSortKeys {
+
+    private static final Map<String, SortKey> KEYS = new LinkedHashMap<>();
+
+    static {
+        KEYS.put("username", new SortKey(member.username, memberArchive.username, true, false));
+        KEYS.put("age", new SortKey(member.age, memberArchive.age, false, false));
+        KEYS.put("teamName", new SortKey(team.name, team.name, true, true));
+        KEYS.put("memberId", new SortKey(member.id, memberArchive.id, false, false));
+    }
+
+    private MemberSortKeys() {
+    }
+
+    public static OrderSpecifier<?>[] toOrderSpecifiers(Sort sort, MemberSearchCondition condition) {
+        return toOrderSpecifiers(sort, condition, false);
+    }
+
+    /**
+     * toOrderSpecifiers 와 같은 순서로 member_archive 를 정렬한다 (보관된 회원을 같이 페이징할 때)
+     */
+    public static OrderSpecifier<?>[] toArchiveOrderSpecifiers(Sort sort, MemberSearchCondition condition) {
+        return toOrderSpecifiers(sort, condition, true);
+    }
+
+    private static OrderSpecifier<?>[] toOrderSpecifiers(Sort sort, MemberSearchCondition condition, boolean archive) {
+        List<OrderSpecifier<?>> orders = new ArrayList<>();
+        if (sort == null || sort.isUnsorted()) {
+            return new OrderSpecifier<?>[0];
+        }
+        boolean hasId = false;
+        for (Sort.Order order : sort) {
+            SortKey key = KEYS.get(order.getProperty());
+            if (key == null) {
+                throw new BadRequestException("unsupported sort key: " + order.getProperty() + " (allowed: " + KEYS.keySet() + ")");
+            }
+            if (key.needsTeamFilter && !MemberPredicates.filtersByTeam(condition)) {
+                throw new BadRequestException("sort by " + order.getProperty() + " needs a teamName or teamNames filter");
+            }
+            ComparableExpressionBase<?> expression = archive ? key.archiveExpression : key.expression;
+            OrderSpecifier<?> specifier = order.isAscending() ? expression.asc() : expression.desc();
+            orders.add(key.nullable ? specifier.nullsLast() : specifier);
+            hasId |= key.expression == member.id;
+        }
+        // 같은 값이 여러 건이면 페이지마다 순서가 달라질 수 있어서 PK 로 한번 더 정렬
+        if (!hasId) {
+            orders.add(archive ? new OrderSpecifier<>(Order.ASC, memberArchive.id) : new OrderSpecifier<>(Order.ASC, member.id));
+        }
+        return orders.toArray(new OrderSpecifier<?>[0]);
+    }
+
+    /**
+     * toOrderSpecifiers 와 같은 순서의 메모리 정렬 (샤드별 결과를 합칠 때)
+     */
+    public static Comparator<MemberTeamDto> toComparator(Sort sort) {
+        Comparator<MemberTeamDto> comparator = null;
+        boolean hasId = false;
+        if (sort != null) {
+            for (Sort.Order order : sort) {
+                Comparator<MemberTeamDto> next = dtoComparator(order.getProperty(), order.isAscending());
+                comparator = comparator == null ? next : comparator.thenComparing(next);
+                hasId |= "memberId".equals(order.getProperty());
+            }
+        }
+        if (!hasId) {
+            Comparator<MemberTeamDto> byId = dtoComparator("memberId", true);
+            comparator = comparator == null ? byId : comparator.thenComparing(byId);
+        }
+        return comparator;
+    }
+
+    private static Comparator<MemberTeamDto> dtoComparator(String key, boolean ascending) {
+        switch (key) {
+            case "username":
+                return Comparator.comparing(MemberTeamDto::getUsername, Comparator.nullsLast(MemberSortKeys.<String>direction(ascending)));
+            case "age":
+                return Comparator.comparing(MemberTeamDto::getAge, MemberSortKeys.<Integer>direction(ascending));
+            case "teamName":
+                return Comparator.comparing(MemberTeamDto::getTeamName, Comparator.nullsLast(MemberSortKeys.<String>direction(ascending)));
+            case "memberId":
+                return Comparator.comparing(MemberTeamDto::getMemberId, Comparator.nullsLast(MemberSortKeys.<Long>direction(ascending)));
+            default:
+                throw new BadRequestException("unsupported sort key: " + key + " (allowed: " + KEYS.keySet() + ")");
+        }
+    }
+
+    private static <T extends Comparable<? super T>> Comparator<T> direction(boolean ascending) {
+        return ascending ? Comparator.naturalOrder() : Comparator.reverseOrder();
+    }
+
+    private static class SortKey {
+        private final ComparableExpressionBase<?> expression;
+        private final ComparableExpressionBase<?> archiveExpression;
+        // null 이 될 수 있는 컬럼만 nulls last (not null 컬럼에 붙이면 인덱스 순서와 달라 보일 수 있다)
+        private final boolean nullable;
+        // join 건너편 컬럼이라 팀 조건으로 걸러진 결과만 정렬한다
+        private final boolean needsTeamFilter;
+
+        SortKey(ComparableExpressionBase<?> expression, ComparableExpressionBase<?> archiveExpression,
+                boolean nullable, boolean needsTeamFilter) {
+            this.expression = expression;
+            this.archiveExpression = archiveExpression;
+            this.nullable = nullable;
+            this.needsTeamFilter = needsTeamFilter;
+        }
+    }
+}
@@ -0,0 +1,440 @@
+package study.querydsl.repository;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import study.querydsl.changefeed.ChangeLogWriter;
+import study.querydsl.entity.ChangeLog;
+import study.querydsl.support.BadRequestException;
+
+import javax.annotation.PreDestroy;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Function;
+
+/**
+ * 회원 나이/팀 변경 write-behind 버퍼
+ *
+ * 같은 회원을 초당 여러번 바꾸는 경우, 요청마다 트랜잭션 + 변경감지 flush 를 하는 대신
+ * window-ms 동안 회원 id 별로 마지막 값만 남기고 모아서 JDBC batch update 한번으로 내보낸다.
+ *
+ * querydsl.write-behind
+ *   enabled     : false 면 버퍼 없이 바로 update (기본)
+ *   window-ms   : 모으는 시간
+ *   max-pending : 버퍼에 담을 수 있는 회원 수. 꽉 차면 호출한 쪽이 max-wait-ms 까지 기다리고, 그래도 안 되면 거절 (backpressure)
+ *   durability  : SYNCHRONOUS       - 내 변경이 들어간 batch 가 커밋될 때까지 기다린다 (다른 요청과 합쳐질 뿐 유실 없음)
+ *                 FLUSH_ON_SHUTDOWN - 버퍼에 넣고 바로 리턴, 종료 시 남은 것을 flush (프로세스가 죽으면 window 만큼 유실 가능)
+ *
+ * 결과는 회원별로 알려준다. batch 가 실패하면 한 건씩 다시 써서 잘못된 한 건(없는 회원, 없는 팀)만 실패하고
+ * 같은 batch 에 합쳐진 다른 요청은 반영된다. FLUSH_ON_SHUTDOWN 의 실패는 재시도 후 error 로그 + member.writebehind.failed.rows
+ * 종료(shutdown)가 시작되면 submit 은 거절한다 (503)
+ *
+ * JDBC 로 바로 update 하므로 이미 영속성 컨텍스트에 올라와 있는 Member 에는 반영되지 않는다.
+ */
+@Slf4j
+@Component
+public class MemberWriteBehindBuffer {
+
+    public enum Durability {
+        SYNCHRONOUS, FLUSH_ON_SHUTDOWN
+    }
+
+    private static final long FLUSH_TIMEOUT_MILLIS = 30_000;
+    private static final int MAX_ATTEMPTS = 3;
+
+    private static final String UPDATE_BOTH = "update member set age = ?, team_id = ? where member_id = ?";
+    private static final String UPDATE_AGE = "update member set age = ? where member_id = ?";
+    private static final String UPDATE_TEAM = "update member set team_id = ? where member_id = ?";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final ChangeLogWriter changeLogWriter;
+    private final TransactionTemplate transactionTemplate;
+    private final boolean enabled;
+    private final long windowMillis;
+    private final int maxPending;
+    private final long maxWaitMillis;
+    private final Durability durability;
+    private final ScheduledExecutorService scheduler;
+
+    private final Object lock = new Object();
+    private Map<Long, PendingUpdate> pending = new HashMap<>();
+    private boolean closed;
+
+    private final Counter submitted;
+    private final Counter merged;
+    private final Counter flushedRows;
+    private final Counter rejected;
+    private final Counter failedRows;
+
+    public MemberWriteBehindBuffer(JdbcTemplate jdbcTemplate,
+                                   ChangeLogWriter changeLogWriter,
+                                   PlatformTransactionManager transactionManager,
+                                   MeterRegistry meterRegistry,
+                                   @Value("${querydsl.write-behind.enabled:false}") boolean enabled,
+                                   @Value("${querydsl.write-behind.window-ms:200}") long windowMillis,
+                                   @Value("${querydsl.write-behind.max-pending:10000}") int maxPending,
+                                   @Value("${querydsl.write-behind.max-wait-ms:1000}") long maxWaitMillis,
+                                   @Value("${querydsl.write-behind.durability:SYNCHRONOUS}") Durability durability) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.changeLogWriter = changeLogWriter;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.enabled = enabled;
+        this.windowMillis = windowMillis;
+        this.maxPending = maxPending;
+        this.maxWaitMillis = maxWaitMillis;
+        this.durability = durability;
+
+        this.submitted = meterRegistry.counter("member.writebehind.submitted");
+        this.merged = meterRegistry.counter("member.writebehind.merged");
+        this.flushedRows = meterRegistry.counter("member.writebehind.flushed.rows");
+        this.rejected = meterRegistry.counter("member.writebehind.rejected");
+        this.failedRows = meterRegistry.counter("member.writebehind.failed.rows");
+        Gauge.builder("member.writebehind.pending", this, MemberWriteBehindBuffer::pendingCount)
+                .register(meterRegistry);
+        // 요청 수 / 실제 update 행 수 (높을수록 많이 합쳐짐)
+        Gauge.builder("member.writebehind.merge.ratio", this, MemberWriteBehindBuffer::mergeRatio)
+                .register(meterRegistry);
+
+        if (enabled) {
+            this.scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread thread = new Thread(r, "member-write-behind");
+                thread.setDaemon(true);
+                return thread;
+            });
+            scheduler.scheduleWithFixedDelay(this::flushQuietly, windowMillis, windowMillis, TimeUnit.MILLISECONDS);
+        } else {
+            this.scheduler = null;
+        }
+    }
+
+    public boolean isAsync() {
+        return enabled && durability == Durability.FLUSH_ON_SHUTDOWN;
+    }
+
+    /**
+     * age, teamId 중 null 인 값은 바꾸지 않는다
+     *
+     * 없는 회원이거나 없는 팀이면 BadRequestException (FLUSH_ON_SHUTDOWN 은 기다리지 않으므로 로그로만 남는다)
+     */
+    public void submit(Long memberId, Integer age, Long teamId) {
+        if (age == null && teamId == null) {
+            return;
+        }
+        submitted.increment();
+        PendingUpdate update = new PendingUpdate(memberId, age, teamId, 1);
+        if (!enabled) {
+            write(List.of(update));
+            (update.failure == null ? flushedRows : failedRows).increment();
+            awaitResult(update.result);
+            return;
+        }
+
+        PendingUpdate target;
+        synchronized (lock) {
+            awaitCapacity(memberId);
+            PendingUpdate existing = pending.get(memberId);
+            if (existing != null) {
+                existing.merge(update);
+                merged.increment();
+                target = existing;
+            } else {
+                pending.put(memberId, update);
+                target = update;
+            }
+        }
+
+        if (durability == Durability.SYNCHRONOUS) {
+            awaitResult(target.result);
+        }
+    }
+
+    // lock 을 잡은 상태에서 호출
+    private void awaitCapacity(Long memberId) {
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(maxWaitMillis);
+        while (true) {
+            // 종료 후에 받으면 마지막 flush 에 못 들어가고 사라진다
+            if (closed) {
+                rejected.increment();
+                throw new RejectedExecutionException("member write-behind buffer is shut down");
+            }
+            if (pending.size() < maxPending || pending.containsKey(memberId)) {
+                return;
+            }
+            long remaining = TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime());
+            if (remaining <= 0) {
+                rejected.increment();
+                throw new RejectedExecutionException("member write-behind buffer is full (" + maxPending + ")");
+            }
+            try {
+                lock.wait(remaining);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new RejectedExecutionException("interrupted while waiting for write-behind capacity");
+            }
+        }
+    }
+
+    private void awaitResult(CompletableFuture<Void> result) {
+        try {
+            result.get(windowMillis + FLUSH_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            throw cause instanceof RuntimeException ? (RuntimeException) cause : new IllegalStateException(cause);
+        } catch (TimeoutException e) {
+            throw new IllegalStateException("write-behind flush did not complete in time", e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("interrupted while waiting for write-behind flush", e);
+        }
+    }
+
+    /**
+     * 지금까지 모인 변경을 내보낸다 (스케줄러, 종료 시 호출)
+     */
+    public void flush() {
+        Map<Long, PendingUpdate> batch;
+        synchronized (lock) {
+            batch = pending;
+            pending = new HashMap<>();
+            lock.notifyAll();
+        }
+        if (batch.isEmpty()) {
+            return;
+        }
+        List<PendingUpdate> updates = new ArrayList<>(batch.values());
+        write(updates);
+
+        List<PendingUpdate> failed = new ArrayList<>();
+        for (PendingUpdate update : updates) {
+            if (update.failure != null) {
+                failed.add(update);
+            }
+        }
+        flushedRows.increment(updates.size() - failed.size());
+        if (isAsync()) {
+            retryOrReport(failed);
+        } else {
+            // SYNCHRONOUS 는 기다리던 호출자가 예외를 받는다
+            failedRows.increment(failed.size());
+        }
+    }
+
+    private void flushQuietly() {
+        try {
+            flush();
+        } catch (RuntimeException e) {
+            log.error("member write-behind flush failed", e);
+        }
+    }
+
+    /**
+     * FLUSH_ON_SHUTDOWN 은 기다리는 호출자가 없으므로
+     * 일시적인 실패(커넥션, 락 타임아웃 등)는 다음 flush 에 다시 넣고, 고칠 수 없는 실패(없는 회원/팀)나 MAX_ATTEMPTS 번 실패하면 error 로그를 남긴다
+     */
+    private void retryOrReport(List<PendingUpdate> failed) {
+        for (PendingUpdate update : failed) {
+            boolean permanent = update.failure instanceof BadRequestException;
+            if (!permanent && update.attempts < MAX_ATTEMPTS) {
+                requeue(update);
+                continue;
+            }
+            failedRows.increment();
+            log.error("member write-behind dropped update: memberId={}, age={}, teamId={}, attempts={}",
+                    update.memberId, update.age, update.teamId, update.attempts, update.failure);
+        }
+    }
+
+    // 그 사이에 같은 회원의 새 변경이 들어왔으면 새 값이 이긴다
+    private void requeue(PendingUpdate failed) {
+        PendingUpdate retry = new PendingUpdate(failed.memberId, failed.age, failed.teamId, failed.attempts + 1);
+        synchronized (lock) {
+            PendingUpdate newer = pending.get(failed.memberId);
+            if (newer != null) {
+                retry.merge(newer);
+            }
+            pending.put(failed.memberId, retry);
+        }
+    }
+
+    /**
+     * 한 트랜잭션에 batch update 로 쓰고, 실패하면 한 건씩 따로 쓴다 (한 건 때문에 같이 합쳐진 다른 요청까지 실패하지 않게)
+     * 결과는 update 마다 result 로 알려준다. update 된 행이 0 이면 없는 회원이라 실패로 보고 change_log 에도 남기지 않는다
+     */
+    private void write(List<PendingUpdate> updates) {
+        try {
+            complete(updates, transactionTemplate.execute(status -> writeInTransaction(updates)));
+            return;
+        } catch (RuntimeException e) {
+            if (updates.size() == 1) {
+                updates.get(0).fail(rejection(updates.get(0), e));
+                return;
+            }
+            log.debug("member write-behind batch of {} failed, retrying one by one: {}", updates.size(), e.getMessage());
+        }
+        for (PendingUpdate update : updates) {
+            try {
+                complete(List.of(update), transactionTemplate.execute(status -> writeInTransaction(List.of(update))));
+            } catch (RuntimeException e) {
+                update.fail(rejection(update, e));
+            }
+        }
+    }
+
+    // @return 없는 회원
+    private Set<PendingUpdate> writeInTransaction(List<PendingUpdate> updates) {
+        List<PendingUpdate> both = new ArrayList<>();
+        List<PendingUpdate> ageOnly = new ArrayList<>();
+        List<PendingUpdate> teamOnly = new ArrayList<>();
+        for (PendingUpdate update : updates) {
+            if (update.age != null && update.teamId != null) {
+                both.add(update);
+            } else if (update.age != null) {
+                ageOnly.add(update);
+            } else {
+                teamOnly.add(update);
+            }
+        }
+        List<Long> teamChanged = new ArrayList<>(both.size() + teamOnly.size());
+        both.forEach(u -> teamChanged.add(u.memberId));
+        teamOnly.forEach(u -> teamChanged.add(u.memberId));
+        // 팀 회원 수: 원래 팀에서 빼고(update 전), 새 팀에 더한다(update 후). 없는 회원은 어느 쪽에도 잡히지 않는다
+        changeLogWriter.recordMemberTeams(teamChanged, -1);
+
+        Set<PendingUpdate> missing = new HashSet<>();
+        batchUpdate(UPDATE_BOTH, both, u -> new Object[]{u.age, u.teamId, u.memberId}, missing);
+        batchUpdate(UPDATE_AGE, ageOnly, u -> new Object[]{u.age, u.memberId}, missing);
+        batchUpdate(UPDATE_TEAM, teamOnly, u -> new Object[]{u.teamId, u.memberId}, missing);
+
+        List<Long> ids = new ArrayList<>(updates.size());
+        for (PendingUpdate update : updates) {
+            if (!missing.contains(update)) {
+                ids.add(update.memberId);
+            }
+        }
+        // JDBC update 는 하이버네이트 이벤트가 안 나가므로 직접 기록
+        changeLogWriter.recordAll(ChangeLog.EntityType.MEMBER, ChangeLog.Operation.UPDATE, ids);
+        changeLogWriter.recordMemberTeams(teamChanged, 1);
+        return missing;
+    }
+
+    private void batchUpdate(String sql, List<PendingUpdate> updates, Function<PendingUpdate, Object[]> args,
+                             Set<PendingUpdate> missing) {
+        if (updates.isEmpty()) {
+            return;
+        }
+        List<Object[]> batchArgs = new ArrayList<>(updates.size());
+        for (PendingUpdate update : updates) {
+            batchArgs.add(args.apply(update));
+        }
+        int[] counts = jdbcTemplate.batchUpdate(sql, batchArgs);
+        for (int i = 0; i < counts.length; i++) {
+            // 드라이버가 건수를 모르면 SUCCESS_NO_INFO(-2) 라서 0 만 없는 회원으로 본다
+            if (counts[i] == 0) {
+                missing.add(updates.get(i));
+            }
+        }
+    }
+
+    // 커밋된 뒤에 알려준다
+    private static void complete(List<PendingUpdate> updates, Set<PendingUpdate> missing) {
+        for (PendingUpdate update : updates) {
+            if (missing != null && missing.contains(update)) {
+                update.fail(new BadRequestException("member not found: " + update.memberId));
+            } else {
+                update.result.complete(null);
+            }
+        }
+    }
+
+    // 바꾸는 컬럼 중 제약이 걸린 것은 team_id(FK) 뿐이라 위반이면 없는 팀. 요청이 잘못된 것이므로 400 (DB 메시지는 내보내지 않는다)
+    private static RuntimeException rejection(PendingUpdate update, RuntimeException e) {
+        if (e instanceof DataIntegrityViolationException) {
+            return new BadRequestException("cannot update member " + update.memberId + ": team not found: " + update.teamId, e);
+        }
+        return e;
+    }
+
+    /**
+     * 이후 submit 은 거절하고, 진행 중인 flush 가 끝나기를 기다린 뒤 남은 것을 내보낸다
+     * 일시적인 실패로 다시 넣은 것도 MAX_ATTEMPTS 번 안에 쓰이거나 로그로 남는다
+     */
+    @PreDestroy
+    public void shutdown() {
+        if (scheduler == null) {
+            return;
+        }
+        synchronized (lock) {
+            closed = true;
+            lock.notifyAll();
+        }
+        scheduler.shutdown();
+        try {
+            scheduler.awaitTermination(FLUSH_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        for (int i = 0; i < MAX_ATTEMPTS && pendingCount() > 0; i++) {
+            flushQuietly();
+        }
+    }
+
+    private double pendingCount() {
+        synchronized (lock) {
+            return pending.size();
+        }
+    }
+
+    private double mergeRatio() {
+        double flushed = flushedRows.count();
+        return flushed == 0 ? 0 : submitted.count() / flushed;
+    }
+
+    private static class PendingUpdate {
+        private final Long memberId;
+        private Integer age;
+        private Long teamId;
+        private final int attempts;
+        // 이 회원 변경을 기다리는 호출자들 (합쳐진 요청은 같은 결과를 받는다)
+        private final CompletableFuture<Void> result = new CompletableFuture<>();
+        private volatile RuntimeException failure;
+
+        PendingUpdate(Long memberId, Integer age, Long teamId, int attempts) {
+            this.memberId = memberId;
+            this.age = age;
+            this.teamId = teamId;
+            this.attempts = attempts;
+        }
+
+        void merge(PendingUpdate newer) {
+            if (newer.age != null) {
+                age = newer.age;
+            }
+            if (newer.teamId != null) {
+                teamId = newer.teamId;
+            }
+        }
+
+        void fail(RuntimeException e) {
+            failure = e;
+            result.completeExceptionally(e);
+        }
+    }
+}
@@ -0,0 +1,249 @@
+package study.querydsl.repository;
+
+import com.querydsl.core.Tuple;
+import com.querydsl.jpa.JPAExpressions;
+import com.querydsl.jpa.JPQLQuery;
+import com.querydsl.jpa.impl.JPAQueryFactory;
+import org.hibernate.Hibernate;
+import org.hibernate.engine.spi.EntityKey;
+import org.hibernate.engine.spi.SessionImplementor;
+import org.hibernate.persister.entity.EntityPersister;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import study.querydsl.changefeed.ChangeLogWriter;
+import study.querydsl.dto.MemberSearchCondition;
+import study.querydsl.entity.ChangeLog;
+import study.querydsl.entity.Member;
+import study.querydsl.entity.QMember;
+import study.querydsl.entity.Team;
+import study.querydsl.support.BadRequestException;
+import study.querydsl.support.InLists;
+import study.querydsl.support.SearchDeadline;
+
+import javax.persistence.EntityManager;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+
+import static study.querydsl.entity.QMember.member;
+import static study.querydsl.entity.QTeam.team;
+import static study.querydsl.entity.QTeamMemberCount.teamMemberCount;
+
+/**
+ * 팀 소속 관련 연산. Team.members 컬렉션을 초기화하지 않고 member.team_id 로 직접 센다/찾는다/옮긴다
+ */
+@Repository
+public class TeamJpaRepository {
+
+    private static final int IN_LIST_CHUNK_SIZE = 256;
+
+    private final EntityManager em;
+    private final JPAQueryFactory queryFactory;
+    private final ChangeLogWriter changeLogWriter;
+
+    public TeamJpaRepository(EntityManager em, JPAQueryFactory queryFactory, ChangeLogWriter changeLogWriter) {
+        this.em = em;
+        this.queryFactory = queryFactory;
+        this.changeLogWriter = changeLogWriter;
+    }
+
+    public void save(Team team) {
+        em.persist(team);
+    }
+
+    public Optional<Team> findById(Long id) {
+        return Optional.ofNullable(em.find(Team.class, id));
+    }
+
+    /**
+     * 팀 회원 수. 회원을 세지 않고 team_member_count 행 하나를 읽는다 (팀 회원 수와 상관없이 PK 조회 한번)
+     *
+     * 행은 회원을 바꾸는 트랜잭션이 커밋할 때 갱신된다 (ChangeLogWriter). 트랜잭션 안에서 부르면
+     * 아직 안 나간 변경을 먼저 플러시하고, 커밋 전이라 행에 없는 이 트랜잭션의 증감을 더한다.
+     * @return 없는 팀이면 empty
+     */
+    public Optional<Long> countMembers(Long teamId) {
+        if (TransactionSynchronizationManager.isActualTransactionActive()) {
+            em.flush();
+        }
+        Long stored = SearchDeadline.apply(queryFactory
+                .select(teamMemberCount.memberCount)
+                .from(teamMemberCount)
+                .where(teamMemberCount.teamId.eq(teamId)))
+                .fetchOne();
+        ChangeLogWriter.PendingCount pending = changeLogWriter.pendingMemberCount(teamId);
+        if (pending.isDeleted() || (stored == null && !pending.isCreated())) {
+            return Optional.empty();
+        }
+        return Optional.of((stored == null ? 0 : stored) + pending.getDelta());
+    }
+
+    public boolean containsMember(Long teamId, Long memberId) {
+        return SearchDeadline.apply(queryFactory
+                .selectOne()
+                .from(member)
+                .where(member.id.eq(memberId), member.team.id.eq(teamId)))
+                .fetchFirst() != null;
+    }
+
+    /**
+     * fromTeam 의 회원을 모두 toTeam 으로 옮긴다 (회원마다 changeTeam 하는 대신 벌크 update)
+     *
+     * "team_id = fromTeam" 조건으로 IN_LIST_CHUNK_SIZE 명씩 읽고 옮기기를 fromTeam 이 빌 때까지 반복한다.
+     * update 에도 team_id = fromTeam 을 다시 걸고, 처음에 읽은 id 목록이 아니라 매번 남아 있는 회원을 읽으므로
+     * 도중에 fromTeam 으로 들어온(커밋된) 회원도 같이 옮겨지고 change_log 에도 남는다.
+     * 영속성 컨텍스트에 올라와 있는 회원과 두 팀은 refresh 해서 DB 와 맞춘다.
+     * @return 옮긴 회원 수
+     */
+    @Transactional
+    public long moveMembers(Long fromTeamId, Long toTeamId) {
+        Team toTeam = findById(toTeamId)
+                .orElseThrow(() -> new BadRequestException("team not found: " + toTeamId));
+        if (toTeamId.equals(fromTeamId)) {
+            return 0;
+        }
+        // 아직 안 나간 변경(changeTeam 등)이 벌크 update 뒤에 덮어쓰지 않게 먼저 내보낸다
+        em.flush();
+
+        long moved = 0;
+        while (true) {
+            SearchDeadline.check();
+            List<Long> ids = SearchDeadline.apply(queryFactory
+                    .select(member.id)
+                    .from(member)
+                    .where(member.team.id.eq(fromTeamId))
+                    .orderBy(member.id.asc())
+                    .limit(IN_LIST_CHUNK_SIZE))
+                    .fetch();
+            if (ids.isEmpty()) {
+                break;
+            }
+            long updated = queryFactory
+                    .update(member)
+                    .set(member.team, toTeam)
+                    .where(member.team.id.eq(fromTeamId), member.id.in(InLists.pad(ids)))
+                    .execute();
+            // 읽은 회원을 하나도 못 옮겼으면 (그 사이 다른 트랜잭션이 옮김) 같은 청크를 다시 읽고 도는 일이 없게 멈춘다
+            if (updated == 0) {
+                break;
+            }
+            changeLogWriter.recordAll(ChangeLog.EntityType.MEMBER, ChangeLog.Operation.UPDATE, ids);
+            changeLogWriter.recordMemberCount(fromTeamId, -updated);
+            changeLogWriter.recordMemberCount(toTeamId, updated);
+            refreshManaged(ids);
+            moved += updated;
+        }
+
+        refreshManaged(List.of(), fromTeamId, toTeamId);
+        return moved;
+    }
+
+    /**
+     * condition 에 맞는 회원을 모두 toTeam 으로 옮긴다 (회원을 읽지 않고 조건 그대로 update 한번)
+     *
+     * update member set team_id = ? where member_id in (select ... 조건 and 원래 팀 <> toTeam)
+     * 이미 toTeam 소속인 회원은 고르지 않으므로 change_log 에는 실제로 옮긴 회원만 남는다.
+     * 같은 트랜잭션에서 update 전에 같은 조건으로
+     * - 원래 팀별 회원 수를 group by 한번으로 세서 팀 회원 수에서 빼고 (toTeam 에는 옮긴 수만큼 더한다)
+     * - change_log 를 insert ... select 한번으로 쓴다 (ChangeLogWriter.recordMembers, 커밋 잠금을 이때 잡는다)
+     * 목록 조건이 IN_LIST_CHUNK_SIZE 개를 넘으면 split 한 조각마다 위를 한번씩 한다.
+     * 팀별 나이 집계와 검색 ETag 는 member 테이블 버전 기준이라 update 가 실행되면서 같이 무효화되고,
+     * 영속성 컨텍스트에 올라와 있는 회원과 컬렉션이 초기화된 원래 팀/대상 팀은 refresh 한다.
+     * @return 옮긴 회원 수
+     */
+    @Transactional
+    public long bulkChangeTeam(MemberSearchCondition condition, Long toTeamId) {
+        MemberSearchCondition normalized = condition.normalize();
+        // 조건이 없으면 전체 회원을 옮기게 되므로 막는다
+        if (!normalized.hasAnyFilter()) {
+            throw new BadRequestException("condition needs at least one field");
+        }
+        Team toTeam = findById(toTeamId)
+                .orElseThrow(() -> new BadRequestException("team not found: " + toTeamId));
+        em.flush();
+
+        long moved = 0;
+        Set<Long> teamIds = new LinkedHashSet<>();
+        for (MemberSearchCondition part : normalized.split(IN_LIST_CHUNK_SIZE)) {
+            SearchDeadline.check();
+            JPQLQuery<Long> targets = JPAExpressions
+                    .select(member.id)
+                    .from(member)
+                    .leftJoin(member.team, team)
+                    .where(MemberPredicates.of(part))
+                    .where(team.id.ne(toTeamId).or(team.id.isNull()));
+            if (changeLogWriter.recordMembers(ChangeLog.Operation.UPDATE, targets) == 0) {
+                continue;
+            }
+
+            // 바깥 쿼리는 targets 의 member 와 다른 별칭으로
+            QMember target = new QMember("target");
+            List<Tuple> fromTeams = SearchDeadline.apply(queryFactory
+                    .select(target.team.id, target.count())
+                    .from(target)
+                    .where(target.id.in(targets))
+                    .groupBy(target.team.id))
+                    .fetch();
+            for (Tuple fromTeam : fromTeams) {
+                Long fromTeamId = fromTeam.get(target.team.id);
+                if (fromTeamId != null) {
+                    changeLogWriter.recordMemberCount(fromTeamId, -fromTeam.get(target.count()));
+                    teamIds.add(fromTeamId);
+                }
+            }
+
+            long updated = queryFactory
+                    .update(target)
+                    .set(target.team, toTeam)
+                    .where(target.id.in(targets))
+                    .execute();
+            changeLogWriter.recordMemberCount(toTeamId, updated);
+            moved += updated;
+        }
+        if (moved == 0) {
+            return 0;
+        }
+        teamIds.add(toTeamId);
+        refreshManaged(managedMemberIds(), teamIds.toArray(new Long[0]));
+        return moved;
+    }
+
+    /**
+     * 벌크 update 는 영속성 컨텍스트를 거치지 않으므로, 이미 올라와 있는 회원과
+     * 컬렉션이 초기화된 팀만 DB 에서 다시 읽는다 (올라와 있지 않은 것은 다음에 읽을 때 DB 기준이라 그대로 둔다)
+     */
+    // 벌크 update 가 어느 회원을 바꿨는지 읽지 않으므로 올라와 있는 회원은 모두 refresh 대상
+    private List<Long> managedMemberIds() {
+        SessionImplementor session = em.unwrap(SessionImplementor.class);
+        List<Long> ids = new ArrayList<>();
+        for (EntityKey key : session.getPersistenceContext().getEntitiesByKey().keySet()) {
+            if (Member.class.getName().equals(key.getEntityName())) {
+                ids.add((Long) key.getIdentifier());
+            }
+        }
+        return ids;
+    }
+
+    void refreshManaged(Collection<Long> memberIds, Long... teamIds) {
+        SessionImplementor session = em.unwrap(SessionImplementor.class);
+        EntityPersister memberPersister = session.getFactory().getMetamodel().entityPersister(Member.class);
+        EntityPersister teamPersister = session.getFactory().getMetamodel().entityPersister(Team.class);
+
+        for (Long memberId : memberIds) {
+            Object managed = session.getPersistenceContext().getEntity(session.generateEntityKey(memberId, memberPersister));
+            if (managed != null) {
+                em.refresh(managed);
+            }
+        }
+        for (Long teamId : teamIds) {
+            Object managed = session.getPersistenceContext().getEntity(session.generateEntityKey(teamId, teamPersister));
+            if (managed instanceof Team && Hibernate.isInitialized(((Team) managed).getMembers())) {
+                em.refresh(managed);
+            }
+        }
+    }
+}
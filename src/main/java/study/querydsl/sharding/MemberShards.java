@@ -0,0 +1,249 @@
+package study.querydsl.sharding;
+
+import com.zaxxer.hikari.HikariDataSource;
+import lombok.extern.slf4j.Slf4j;
+import org.hibernate.boot.model.naming.CamelCaseToUnderscoresNamingStrategy;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.jdbc.DataSourceBuilder;
+import org.springframework.boot.orm.jpa.hibernate.SpringImplicitNamingStrategy;
+import org.springframework.orm.jpa.LocalContainerEntityManagerFactoryBean;
+import org.springframework.orm.jpa.vendor.HibernateJpaVendorAdapter;
+import org.springframework.stereotype.Component;
+import study.querydsl.entity.Member;
+import study.querydsl.entity.Team;
+import study.querydsl.support.SearchDeadline;
+import study.querydsl.support.SearchDeadlineCanceller;
+import study.querydsl.support.SearchTimeoutException;
+import study.querydsl.support.TableVersions;
+
+import javax.annotation.PreDestroy;
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+import javax.persistence.EntityTransaction;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+/**
+ * 회원 샤드 (querydsl.sharding.enabled=true 일 때만)
+ *
+ * - 샤드마다 DataSource + EntityManagerFactory 를 따로 만든다. 빈으로 등록하면 기본 EntityManagerFactory 자동설정이 꺼지므로 여기서 직접 관리
+ * - Member 는 팀 id 로 샤드를 고른다 (teamId mod N, 팀이 없으면 0번). 같은 팀 회원은 한 샤드에 모인다
+ * - Team 은 모든 샤드에 복제한다. id 는 0번 샤드의 team_seq 로만 만들고 나머지 샤드에는 같은 id 로 insert
+ * - 샤드마다 member_seq 시작값을 SHARD_ID_STRIDE 만큼 띄워서 회원 id 가 샤드 사이에서 겹치지 않게 한다
+ *
+ * 로컬에서는 기본 url 패턴대로 임베디드 H2(mem) 를 N 개 띄운다. 스키마는 기동할 때마다 새로 만든다.
+ * 샤드에 쓴 변경은 기본 DB 의 change_log 에는 기록되지 않는다 (TableVersions 버전만 올린다)
+ *
+ * 샤드로 보내는 쓰기는 saveTeam / saveMember 뿐이다. 수정(PATCH, write-behind), 팀 일괄 변경, 아카이브,
+ * 팀이 바뀐 회원을 다른 샤드로 옮기는 일은 아직 샤드를 모르므로 그 API 는 ShardedWriteInterceptor 가 503 으로 거절한다.
+ * 그래도 기본 DB 의 member / team 으로 가는 쓰기는 샤드와 어긋나므로 PrimaryMemberWriteGuard 가 실행 전에 막는다 (샤딩은 검색 부하 실험용).
+ * 검색(/v1/members, /v2/members)은 ShardedMemberSearch 로 간다.
+ *
+ * 샤드마다 쿼리 스레드 풀을 따로 두고 크기는 그 샤드 커넥션 풀 크기에 맞춘다.
+ * 풀 하나를 나눠 쓰면 한 샤드가 느릴 때 그 샤드 작업이 스레드를 다 잡아서 다른 샤드 쿼리까지 줄을 선다.
+ */
+@Slf4j
+@Component
+@ConditionalOnProperty(name = "querydsl.sharding.enabled", havingValue = "true")
+public class MemberShards {
+
+    static final long SHARD_ID_STRIDE = 1L << 40;
+    private static final int TEAM_SHARD = 0;
+
+    private final List<HikariDataSource> dataSources = new ArrayList<>();
+    private final List<EntityManagerFactory> entityManagerFactories = new ArrayList<>();
+    private final List<ExecutorService> executors = new ArrayList<>();
+    private final TableVersions tableVersions;
+
+    public MemberShards(TableVersions tableVersions,
+                        @Value("${querydsl.sharding.count:3}") int count,
+                        @Value("${querydsl.sharding.url-pattern:jdbc:h2:mem:member_shard_%d;DB_CLOSE_DELAY=-1}") String urlPattern,
+                        @Value("${spring.jpa.properties.querydsl.id.block_size:50}") int idBlockSize) {
+        if (count < 1) {
+            throw new IllegalArgumentException("querydsl.sharding.count must be positive: " + count);
+        }
+        this.tableVersions = tableVersions;
+        for (int i = 0; i < count; i++) {
+            HikariDataSource dataSource = DataSourceBuilder.create()
+                    .type(HikariDataSource.class)
+                    .url(String.format(urlPattern, i))
+                    .username("sa")
+                    .password("")
+                    .build();
+            dataSource.setPoolName("member-shard-" + i);
+            dataSources.add(dataSource);
+            entityManagerFactories.add(createEntityManagerFactory(dataSource, i, idBlockSize));
+
+            long firstId = i * SHARD_ID_STRIDE + 1;
+            inTransaction(i, em -> em.createNativeQuery("alter sequence member_seq restart with " + firstId).executeUpdate());
+            executors.add(createExecutor(i, dataSource.getMaximumPoolSize()));
+        }
+        log.info("member sharding enabled: {} shards", count);
+    }
+
+    // 커넥션보다 스레드가 많으면 남는 스레드는 커넥션을 기다리기만 한다
+    private static ExecutorService createExecutor(int shard, int threads) {
+        AtomicInteger threadIndex = new AtomicInteger();
+        return Executors.newFixedThreadPool(threads, r -> {
+            Thread thread = new Thread(r, "member-shard-" + shard + "-query-" + threadIndex.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    private static EntityManagerFactory createEntityManagerFactory(HikariDataSource dataSource, int index, int idBlockSize) {
+        Map<String, Object> properties = new HashMap<>();
+        properties.put("hibernate.hbm2ddl.auto", "create");
+        // 기본 DB 와 같은 테이블/컬럼 이름 (스프링 부트 기본 네이밍 전략)
+        properties.put("hibernate.physical_naming_strategy", CamelCaseToUnderscoresNamingStrategy.class.getName());
+        properties.put("hibernate.implicit_naming_strategy", SpringImplicitNamingStrategy.class.getName());
+        properties.put("hibernate.jdbc.batch_size", 100);
+        properties.put("hibernate.order_inserts", true);
+        properties.put("querydsl.id.block_size", idBlockSize);
+
+        LocalContainerEntityManagerFactoryBean factory = new LocalContainerEntityManagerFactoryBean();
+        factory.setPersistenceUnitName("member-shard-" + index);
+        factory.setDataSource(SearchDeadlineCanceller.wrap(dataSource));
+        factory.setPackagesToScan(Member.class.getPackage().getName());
+        factory.setJpaVendorAdapter(new HibernateJpaVendorAdapter());
+        factory.setJpaPropertyMap(properties);
+        factory.afterPropertiesSet();
+        return factory.getObject();
+    }
+
+    public int size() {
+        return entityManagerFactories.size();
+    }
+
+    public int shardFor(Long teamId) {
+        return teamId == null ? 0 : (int) Math.floorMod(teamId, (long) size());
+    }
+
+    public List<Integer> allShards() {
+        List<Integer> shards = new ArrayList<>(size());
+        for (int i = 0; i < size(); i++) {
+            shards.add(i);
+        }
+        return shards;
+    }
+
+    /**
+     * 0번 샤드에서 id 를 만들고 나머지 샤드에 같은 id 로 복제
+     */
+    public Team saveTeam(Team team) {
+        inTransaction(TEAM_SHARD, em -> {
+            em.persist(team);
+            return null;
+        });
+        for (int i = 0; i < size(); i++) {
+            if (i == TEAM_SHARD) {
+                continue;
+            }
+            inTransaction(i, em -> em.createNativeQuery("insert into team (id, name) values (?, ?)")
+                    .setParameter(1, team.getId())
+                    .setParameter(2, team.getName())
+                    .executeUpdate());
+        }
+        tableVersions.markChanged(TableVersions.TEAM);
+        return team;
+    }
+
+    /**
+     * 회원의 팀이 있는 샤드에 저장 (팀은 saveTeam 으로 먼저 저장되어 있어야 한다)
+     */
+    public Member saveMember(Member member) {
+        Long teamId = member.getTeam() != null ? member.getTeam().getId() : null;
+        inTransaction(shardFor(teamId), em -> {
+            em.persist(member);
+            return null;
+        });
+        tableVersions.markChanged(TableVersions.MEMBER);
+        return member;
+    }
+
+    /**
+     * 한 샤드에서 트랜잭션 하나로 실행 (샤드 간 트랜잭션은 없다)
+     */
+    public <T> T inTransaction(int shard, Function<EntityManager, T> work) {
+        EntityManager em = entityManagerFactories.get(shard).createEntityManager();
+        EntityTransaction transaction = em.getTransaction();
+        try {
+            transaction.begin();
+            T result = work.apply(em);
+            transaction.commit();
+            return result;
+        } catch (RuntimeException e) {
+            if (transaction.isActive()) {
+                transaction.rollback();
+            }
+            throw e;
+        } finally {
+            em.close();
+        }
+    }
+
+    /**
+     * 여러 샤드에서 동시에 읽는다 (결과는 shards 순서대로)
+     *
+     * 호출한 스레드의 SearchDeadline 을 샤드 쿼리 스레드에도 걸고, 전체 대기도 그 시간까지만 한다.
+     */
+    public <T> List<T> query(Collection<Integer> shards, Function<EntityManager, T> work) {
+        long remainingMillis = SearchDeadline.remainingMillis();
+        boolean deadline = SearchDeadline.isActive();
+
+        List<Future<T>> futures = new ArrayList<>(shards.size());
+        for (Integer shard : shards) {
+            futures.add(executors.get(shard).submit(() -> {
+                if (deadline) {
+                    SearchDeadline.start(remainingMillis);
+                }
+                try {
+                    return inTransaction(shard, work);
+                } finally {
+                    SearchDeadline.clear();
+                }
+            }));
+        }
+
+        List<T> results = new ArrayList<>(futures.size());
+        try {
+            for (Future<T> future : futures) {
+                results.add(deadline
+                        ? future.get(Math.max(0, SearchDeadline.remainingMillis()), TimeUnit.MILLISECONDS)
+                        : future.get());
+            }
+            return results;
+        } catch (TimeoutException e) {
+            throw new SearchTimeoutException("request deadline exceeded while waiting for shards");
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            throw cause instanceof RuntimeException ? (RuntimeException) cause : new IllegalStateException(cause);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("interrupted", e);
+        } finally {
+            for (Future<T> future : futures) {
+                future.cancel(true);
+            }
+        }
+    }
+
+    @PreDestroy
+    public void close() {
+        executors.forEach(ExecutorService::shutdownNow);
+        entityManagerFactories.forEach(EntityManagerFactory::close);
+        dataSources.forEach(HikariDataSource::close);
+    }
+}
@@ -0,0 +1,35 @@
+package study.querydsl.sharding;
+
+import com.p6spy.engine.common.StatementInformation;
+import com.p6spy.engine.event.SimpleJdbcEventListener;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+import study.querydsl.support.TableVersionListener;
+
+import java.util.Set;
+
+/**
+ * 샤딩이 켜져 있으면 기본 DB 의 member / team 쓰기를 실행 전에 막는다 (p6spy 리스너)
+ *
+ * 회원은 샤드에 있으므로 기본 DB 에 쓰면 검색 결과와 어긋난다. 샤드로 가는 쓰기는 MemberShards 를 거친다.
+ * 샤드 DataSource 는 빈이 아니라서 p6spy 가 감싸지 않으므로 여기에 걸리지 않는다.
+ */
+@Component
+@ConditionalOnProperty(name = "querydsl.sharding.enabled", havingValue = "true")
+public class PrimaryMemberWriteGuard extends SimpleJdbcEventListener {
+
+    private static final Set<String> SHARDED_TABLES = Set.of("member", "team");
+
+    @Override
+    public void onBeforeAnyExecute(StatementInformation statementInformation) {
+        check(statementInformation.getSql());
+    }
+
+    static void check(String sql) {
+        String table = TableVersionListener.writtenTable(sql);
+        if (table != null && SHARDED_TABLES.contains(table)) {
+            throw new IllegalStateException(
+                    "write to " + table + " on the primary database while sharding is enabled, use MemberShards");
+        }
+    }
+}
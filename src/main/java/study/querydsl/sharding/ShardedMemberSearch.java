@@ -0,0 +1,226 @@
+package study.querydsl.sharding;
+
+import com.querydsl.core.types.OrderSpecifier;
+import com.querydsl.jpa.impl.JPAQuery;
+import com.querydsl.jpa.impl.JPAQueryFactory;
+import lombok.RequiredArgsConstructor;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageImpl;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Sort;
+import org.springframework.stereotype.Component;
+import study.querydsl.dto.MemberSearchCondition;
+import study.querydsl.dto.MemberTeamDto;
+import study.querydsl.dto.QMemberTeamDto;
+import study.querydsl.repository.MemberPredicates;
+import study.querydsl.repository.MemberSortKeys;
+import study.querydsl.support.BadRequestException;
+import study.querydsl.support.SearchDeadline;
+
+import javax.persistence.EntityManager;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.TreeSet;
+
+import static study.querydsl.entity.QMember.member;
+import static study.querydsl.entity.QTeam.team;
+
+/**
+ * 샤드 scatter-gather 검색 (MemberRepositoryImpl 이 샤딩이 켜져 있으면 여기로 넘긴다)
+ *
+ * 1. teamName / teamNames 조건이 있으면 그 팀이 있는 샤드만, 없으면 전체 샤드
+ * 2. 샤드마다 같은 조건/정렬로 동시에 조회 (페이징이면 offset + size 건까지만)
+ * 3. 샤드별로 이미 정렬된 결과를 k-way merge 해서 필요한 구간만 잘라낸다
+ *
+ * 보관(member_archive)은 샤드에 없으므로 includeArchived=true 는 400
+ * 샤드마다 offset + size 건을 읽어서 합치므로 offset + size 가 MAX_MERGE_ROWS 를 넘는 깊은 페이지도 400
+ */
+@Component
+@ConditionalOnProperty(name = "querydsl.sharding.enabled", havingValue = "true")
+@RequiredArgsConstructor
+public class ShardedMemberSearch {
+
+    private static final int IN_LIST_CHUNK_SIZE = 256;
+    static final long MAX_MERGE_ROWS = 10_000;
+
+    private final MemberShards memberShards;
+
+    public List<MemberTeamDto> search(MemberSearchCondition condition, Sort sort) {
+        rejectArchived(condition);
+        Sort effectiveSort = mergeableSort(sort);
+        OrderSpecifier<?>[] orders = MemberSortKeys.toOrderSpecifiers(effectiveSort, condition);
+        Collection<Integer> shards = targetShards(condition);
+        if (shards.isEmpty()) {
+            return List.of();
+        }
+
+        // 목록 조건이 길면 샤드마다 조각 수만큼 보내고, (샤드, 조각)별 정렬된 결과를 한꺼번에 합친다
+        List<MemberSearchCondition> parts = condition.split(IN_LIST_CHUNK_SIZE);
+        List<List<List<MemberTeamDto>>> perShard = memberShards.query(shards, em -> {
+            List<List<MemberTeamDto>> perPart = new ArrayList<>(parts.size());
+            for (MemberSearchCondition part : parts) {
+                perPart.add(SearchDeadline.apply(searchQuery(em, part).orderBy(orders))
+                        .fetch());
+            }
+            return perPart;
+        });
+        List<List<MemberTeamDto>> sorted = new ArrayList<>();
+        perShard.forEach(sorted::addAll);
+        return merge(sorted, MemberSortKeys.toComparator(effectiveSort), 0, Long.MAX_VALUE);
+    }
+
+    public Page<MemberTeamDto> searchPage(MemberSearchCondition condition, Pageable pageable) {
+        rejectArchived(condition);
+        rejectDeepPage(pageable);
+        Sort effectiveSort = mergeableSort(pageable.getSort());
+        OrderSpecifier<?>[] orders = MemberSortKeys.toOrderSpecifiers(effectiveSort, condition);
+        Collection<Integer> shards = targetShards(condition);
+        if (shards.isEmpty()) {
+            return new PageImpl<>(List.of(), pageable, 0);
+        }
+
+        // 어느 샤드에서 몇 건이 올지 모르므로 샤드마다 앞에서부터 offset + size 건을 가져온다
+        long limit = pageable.getOffset() + pageable.getPageSize();
+        List<MemberSearchCondition> parts = condition.split(IN_LIST_CHUNK_SIZE);
+        List<List<ShardPage>> perShard = memberShards.query(shards, em -> {
+            List<ShardPage> perPart = new ArrayList<>(parts.size());
+            for (MemberSearchCondition part : parts) {
+                List<MemberTeamDto> content = SearchDeadline.apply(searchQuery(em, part)
+                        .orderBy(orders)
+                        .limit(limit))
+                        .fetch();
+                Long total = SearchDeadline.apply(MemberPredicates.joinTeam(new JPAQueryFactory(em)
+                        .select(member.count())
+                        .from(member), part)
+                        .where(MemberPredicates.of(part)))
+                        .fetchOne();
+                perPart.add(new ShardPage(content, total != null ? total : 0));
+            }
+            return perPart;
+        });
+
+        List<List<MemberTeamDto>> contents = new ArrayList<>();
+        long total = 0;
+        for (List<ShardPage> pages : perShard) {
+            for (ShardPage page : pages) {
+                contents.add(page.content);
+                total += page.total;
+            }
+        }
+        List<MemberTeamDto> content = merge(contents, MemberSortKeys.toComparator(effectiveSort),
+                pageable.getOffset(), pageable.getPageSize());
+        return new PageImpl<>(content, pageable, total);
+    }
+
+    private static void rejectArchived(MemberSearchCondition condition) {
+        if (condition.isIncludeArchived()) {
+            throw new BadRequestException("includeArchived is not supported when members are sharded");
+        }
+    }
+
+    private static void rejectDeepPage(Pageable pageable) {
+        if (pageable.getOffset() + pageable.getPageSize() > MAX_MERGE_ROWS) {
+            throw new BadRequestException("page too deep when members are sharded: offset + size must not exceed "
+                    + MAX_MERGE_ROWS);
+        }
+    }
+
+    // 정렬이 없으면 샤드 결과를 합칠 기준이 없으므로 memberId 순
+    private static Sort mergeableSort(Sort sort) {
+        return sort != null && sort.isSorted() ? sort : Sort.by("memberId");
+    }
+
+    /**
+     * 팀은 모든 샤드에 복제되어 있으므로 0번 샤드에서 팀 이름 -> 팀 id -> 샤드를 찾는다
+     */
+    private Collection<Integer> targetShards(MemberSearchCondition condition) {
+        MemberSearchCondition normalized = condition.normalize();
+        if (normalized.getTeamName() == null && normalized.getTeamNames() == null) {
+            return memberShards.allShards();
+        }
+        List<Long> teamIds = memberShards.query(List.of(0), em -> SearchDeadline.apply(new JPAQueryFactory(em)
+                .select(team.id)
+                .from(team)
+                .where(
+                        MemberPredicates.teamNameEq(normalized.getTeamName()),
+                        MemberPredicates.teamNameIn(normalized.getTeamNames())
+                ))
+                .fetch())
+                .get(0);
+        TreeSet<Integer> shards = new TreeSet<>();
+        for (Long teamId : teamIds) {
+            shards.add(memberShards.shardFor(teamId));
+        }
+        return shards;
+    }
+
+    private static JPAQuery<MemberTeamDto> searchQuery(EntityManager em, MemberSearchCondition condition) {
+        return MemberPredicates.joinTeam(new JPAQueryFactory(em)
+                .select(new QMemberTeamDto(
+                        member.id.as("memberId"),
+                        member.username,
+                        member.age,
+                        team.id.as("teamId"),
+                        team.name.as("teamName")
+                ))
+                .from(member), condition)
+                .where(MemberPredicates.of(condition));
+    }
+
+    /**
+     * 각각 정렬된 목록을 합쳐서 [offset, offset + size) 구간만 돌려준다
+     */
+    public static List<MemberTeamDto> merge(List<List<MemberTeamDto>> sortedLists, Comparator<MemberTeamDto> comparator,
+                                            long offset, long size) {
+        PriorityQueue<Cursor> heads = new PriorityQueue<>((a, b) -> comparator.compare(a.current(), b.current()));
+        for (List<MemberTeamDto> list : sortedLists) {
+            if (!list.isEmpty()) {
+                heads.add(new Cursor(list));
+            }
+        }
+
+        List<MemberTeamDto> result = new ArrayList<>();
+        long position = 0;
+        while (!heads.isEmpty() && result.size() < size) {
+            Cursor head = heads.poll();
+            if (position++ >= offset) {
+                result.add(head.current());
+            }
+            if (head.advance()) {
+                heads.add(head);
+            }
+        }
+        return result;
+    }
+
+    private static class Cursor {
+        private final List<MemberTeamDto> list;
+        private int index;
+
+        Cursor(List<MemberTeamDto> list) {
+            this.list = list;
+        }
+
+        MemberTeamDto current() {
+            return list.get(index);
+        }
+
+        boolean advance() {
+            return ++index < list.size();
+        }
+    }
+
+    private static class ShardPage {
+        private final List<MemberTeamDto> content;
+        private final long total;
+
+        ShardPage(List<MemberTeamDto> content, long total) {
+            this.content = content;
+            this.total = total;
+        }
+    }
+}
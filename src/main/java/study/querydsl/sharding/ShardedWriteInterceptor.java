@@ -0,0 +1,26 @@
+package study.querydsl.sharding;
+
+import org.springframework.web.servlet.HandlerInterceptor;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+/**
+ * 샤딩이 켜져 있으면 샤드를 모르는 쓰기 API 를 컨트롤러에 들어가기 전에 503 으로 거절한다 (WebConfig 에서 경로를 건다)
+ *
+ * 수정(PATCH, write-behind), 팀 일괄 변경, 아카이브/복원은 기본 DB 의 member 를 바꾸는데 회원은 샤드에 있다.
+ * 그대로 두면 PrimaryMemberWriteGuard 에 걸려 500 이 나거나, 비동기 작업이면 뒤늦게 실패한다.
+ * 읽기(GET)는 통과시킨다.
+ */
+public class ShardedWriteInterceptor implements HandlerInterceptor {
+
+    @Override
+    public boolean preHandle(HttpServletRequest request, HttpServletResponse response, Object handler) {
+        String method = request.getMethod();
+        if ("GET".equals(method) || "HEAD".equals(method)) {
+            return true;
+        }
+        throw new ShardedWriteUnsupportedException(
+                method + " " + request.getRequestURI() + " is not supported while members are sharded");
+    }
+}
@@ -0,0 +1,13 @@
+package study.querydsl.sharding;
+
+/**
+ * 샤딩이 켜져 있어서 받을 수 없는 회원/팀 쓰기 요청 (503)
+ *
+ * 샤드로 보내는 쓰기는 MemberShards.saveTeam / saveMember 뿐이다 (ShardedWriteInterceptor 가 나머지 쓰기 API 를 막는다)
+ */
+public class ShardedWriteUnsupportedException extends RuntimeException {
+
+    public ShardedWriteUnsupportedException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,57 @@
+package study.querydsl.sql;
+
+/**
+ * 요청 하나가 JDBC 커넥션을 잡고 있던 시간 (스레드 로컬)
+ *
+ * ConnectionHoldInterceptor 가 요청 시작에 만들고 끝날 때 기록한다. ConnectionHoldListener 가 커넥션을 얻고 닫을 때마다 더한다.
+ * 요청이 끝날 때까지 닫히지 않은 커넥션(open-in-view 를 켠 경우)은 끝난 시점까지 잡고 있던 것으로 센다.
+ */
+public final class ConnectionHold {
+
+    private static final ThreadLocal<ConnectionHold> CURRENT = new ThreadLocal<>();
+
+    private long heldNanos;
+    private int acquired;
+    private int open;
+    // 아직 안 닫힌 커넥션들의 획득 시각 합 (open * now - openSince 가 그 커넥션들이 잡고 있는 시간)
+    private long openSince;
+
+    private ConnectionHold() {
+    }
+
+    public static void start() {
+        CURRENT.set(new ConnectionHold());
+    }
+
+    public static void clear() {
+        CURRENT.remove();
+    }
+
+    /**
+     * @return 요청 중이 아니면 null
+     */
+    public static ConnectionHold current() {
+        return CURRENT.get();
+    }
+
+    // 커넥션을 닫는 스레드가 다를 수 있어서 synchronized
+    synchronized void acquired(long startNanos) {
+        acquired++;
+        open++;
+        openSince += startNanos;
+    }
+
+    synchronized void released(long startNanos, long endNanos) {
+        open--;
+        openSince -= startNanos;
+        heldNanos += endNanos - startNanos;
+    }
+
+    public synchronized long heldNanos(long nowNanos) {
+        return heldNanos + (open * nowNanos - openSince);
+    }
+
+    public synchronized int getAcquired() {
+        return acquired;
+    }
+}
@@ -0,0 +1,51 @@
+package study.querydsl.sql;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.web.servlet.HandlerInterceptor;
+import org.springframework.web.servlet.HandlerMapping;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 요청별 커넥션 점유 시간을 http.request.connection.hold (uri 태그) 로, 요청당 커넥션 획득 횟수를 http.request.connections 로 남긴다
+ *
+ * open-in-view 를 끄면 커넥션은 트랜잭션(또는 쿼리 한번) 동안만 잡히고, JSON 직렬화 중에는 잡혀 있지 않아야 한다.
+ * 응답 시간(http.server.requests)과 비교해서 이 값이 크면 요청 내내 커넥션을 들고 있는 것.
+ */
+public class ConnectionHoldInterceptor implements HandlerInterceptor {
+
+    private final MeterRegistry meterRegistry;
+
+    public ConnectionHoldInterceptor(MeterRegistry meterRegistry) {
+        this.meterRegistry = meterRegistry;
+    }
+
+    @Override
+    public boolean preHandle(HttpServletRequest request, HttpServletResponse response, Object handler) {
+        ConnectionHold.start();
+        return true;
+    }
+
+    @Override
+    public void afterCompletion(HttpServletRequest request, HttpServletResponse response, Object handler, Exception ex) {
+        ConnectionHold hold = ConnectionHold.current();
+        ConnectionHold.clear();
+        if (hold == null) {
+            return;
+        }
+        Object pattern = request.getAttribute(HandlerMapping.BEST_MATCHING_PATTERN_ATTRIBUTE);
+        String uri = pattern != null ? pattern.toString() : "UNKNOWN";
+        Timer.builder("http.request.connection.hold")
+                .tag("uri", uri)
+                .register(meterRegistry)
+                .record(hold.heldNanos(System.nanoTime()), TimeUnit.NANOSECONDS);
+        DistributionSummary.builder("http.request.connections")
+                .tag("uri", uri)
+                .register(meterRegistry)
+                .record(hold.getAcquired());
+    }
+}
@@ -0,0 +1,69 @@
+package study.querydsl.sql;
+
+import com.p6spy.engine.common.ConnectionInformation;
+import com.p6spy.engine.event.SimpleJdbcEventListener;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.stereotype.Component;
+
+import java.sql.SQLException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 커넥션을 풀에서 꺼낸 뒤 돌려줄 때까지 걸린 시간 (p6spy 리스너)
+ *
+ * - jdbc.connection.hold : 커넥션 한번 쓸 때마다 (요청이 아닌 스레드 포함)
+ * - jdbc.connection.held : 지금 잡혀 있는 커넥션 수
+ * 요청 중이면 그 요청의 ConnectionHold 에도 더한다 (http.request.connection.hold, ConnectionHoldInterceptor)
+ */
+@Component
+public class ConnectionHoldListener extends SimpleJdbcEventListener {
+
+    // ConnectionInformation 은 equals 를 재정의하지 않아서 커넥션마다 다른 키다
+    private final ConcurrentMap<ConnectionInformation, Holder> held = new ConcurrentHashMap<>();
+    private final Timer holdTimer;
+
+    public ConnectionHoldListener(MeterRegistry meterRegistry) {
+        this.holdTimer = meterRegistry.timer("jdbc.connection.hold");
+        Gauge.builder("jdbc.connection.held", held, ConcurrentMap::size).register(meterRegistry);
+    }
+
+    @Override
+    public void onAfterGetConnection(ConnectionInformation connectionInformation, SQLException e) {
+        if (e != null) {
+            return;
+        }
+        long now = System.nanoTime();
+        ConnectionHold request = ConnectionHold.current();
+        if (request != null) {
+            request.acquired(now);
+        }
+        held.put(connectionInformation, new Holder(now, request));
+    }
+
+    @Override
+    public void onAfterConnectionClose(ConnectionInformation connectionInformation, SQLException e) {
+        Holder holder = held.remove(connectionInformation);
+        if (holder == null) {
+            return;
+        }
+        long now = System.nanoTime();
+        holdTimer.record(now - holder.startNanos, TimeUnit.NANOSECONDS);
+        if (holder.request != null) {
+            holder.request.released(holder.startNanos, now);
+        }
+    }
+
+    private static class Holder {
+        final long startNanos;
+        final ConnectionHold request;
+
+        Holder(long startNanos, ConnectionHold request) {
+            this.startNanos = startNanos;
+            this.request = request;
+        }
+    }
+}
@@ -0,0 +1,15 @@
+package study.querydsl.sql;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+@Data
+@AllArgsConstructor
+public class FingerprintStats {
+
+    private String fingerprint;
+    private long count;
+    private long totalMillis;
+    private long maxMillis;
+    private long rows;
+}
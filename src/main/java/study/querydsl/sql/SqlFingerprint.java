@@ -0,0 +1,42 @@
+package study.querydsl.sql;
+
+import java.util.Locale;
+import java.util.regex.Pattern;
+
+/**
+ * SQL 을 같은 모양끼리 묶기 위한 지문(fingerprint)
+ *
+ * - 주석 제거 (use_sql_comments 로 붙는 JPQL 주석 포함)
+ * - 문자열/숫자 리터럴 -> ?
+ * - in (?, ?, ?) -> in (?+)   (파라미터 개수가 달라도 같은 쿼리)
+ * - 비교 연산자 앞뒤 공백 하나 (a=? 와 a = ? 는 같은 쿼리)
+ * - 공백 정리, 소문자
+ */
+public final class SqlFingerprint {
+
+    private static final Pattern BLOCK_COMMENT = Pattern.compile("/\\*.*?\\*/", Pattern.DOTALL);
+    private static final Pattern LINE_COMMENT = Pattern.compile("--[^\\n]*");
+    private static final Pattern STRING_LITERAL = Pattern.compile("'(?:[^']|'')*'");
+    private static final Pattern NUMBER_LITERAL = Pattern.compile("\\b\\d+(?:\\.\\d+)?\\b");
+    private static final Pattern IN_LIST = Pattern.compile("\\bin\\s*\\(\\s*\\?(?:\\s*,\\s*\\?)*\\s*\\)");
+    private static final Pattern COMPARISON = Pattern.compile("\\s*(<=|>=|<>|!=|=|<|>)\\s*");
+    private static final Pattern WHITESPACE = Pattern.compile("\\s+");
+
+    private SqlFingerprint() {
+    }
+
+    public static String of(String sql) {
+        if (sql == null) {
+            return "";
+        }
+        String s = BLOCK_COMMENT.matcher(sql).replaceAll(" ");
+        s = LINE_COMMENT.matcher(s).replaceAll(" ");
+        s = STRING_LITERAL.matcher(s).replaceAll("?");
+        s = s.toLowerCase(Locale.ROOT);
+        s = NUMBER_LITERAL.matcher(s).replaceAll("?");
+        s = COMPARISON.matcher(s).replaceAll(" $1 ");
+        s = WHITESPACE.matcher(s).replaceAll(" ").trim();
+        s = IN_LIST.matcher(s).replaceAll("in (?+)");
+        return s;
+    }
+}
@@ -0,0 +1,34 @@
+package study.querydsl.sql;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.boot.actuate.endpoint.annotation.DeleteOperation;
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.lang.Nullable;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+
+/**
+ * GET    /actuator/sqlstats?limit=20 : 총 실행 시간 기준 상위 지문
+ * DELETE /actuator/sqlstats          : 통계 초기화
+ */
+@Component
+@Endpoint(id = "sqlstats")
+@RequiredArgsConstructor
+public class SqlStatsEndpoint {
+
+    private static final int DEFAULT_LIMIT = 20;
+
+    private final SqlStatsListener sqlStatsListener;
+
+    @ReadOperation
+    public List<FingerprintStats> top(@Nullable Integer limit) {
+        return sqlStatsListener.top(limit != null ? limit : DEFAULT_LIMIT);
+    }
+
+    @DeleteOperation
+    public void reset() {
+        sqlStatsListener.reset();
+    }
+}
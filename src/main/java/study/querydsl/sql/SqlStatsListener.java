@@ -0,0 +1,137 @@
+package study.querydsl.sql;
+
+import com.p6spy.engine.common.PreparedStatementInformation;
+import com.p6spy.engine.common.ResultSetInformation;
+import com.p6spy.engine.common.StatementInformation;
+import com.p6spy.engine.event.SimpleJdbcEventListener;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * SQL 지문별 실행 통계 + 느린 쿼리 로그 (p6spy 리스너)
+ *
+ * 문장마다 로그를 남기는 대신 지문별로 횟수/총 시간/최대 시간/행 수만 모은다.
+ * 카운터는 LongAdder(스레드별로 나눠서 더하는 lock-free 카운터)라 여러 요청이 같은 지문을 동시에 갱신해도 경합이 적다.
+ * slow-threshold-ms 를 넘는 실행 한 건은 바인딩 값까지 포함해서 로그로 남긴다.
+ *
+ * 통계는 /actuator/sqlstats 로 본다 (SqlStatsEndpoint)
+ */
+@Slf4j
+@Component
+public class SqlStatsListener extends SimpleJdbcEventListener {
+
+    static final String OVERFLOW = "(other)";
+
+    private final long slowThresholdNanos;
+    private final int maxFingerprints;
+
+    // 원본 SQL -> 지문 (하이버네이트가 만드는 SQL 은 종류가 한정되어 있어서 캐시 적중률이 높다)
+    private final ConcurrentMap<String, Stats> statsBySql = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, Stats> statsByFingerprint = new ConcurrentHashMap<>();
+
+    public SqlStatsListener(@Value("${querydsl.sql.slow-threshold-ms:200}") long slowThresholdMillis,
+                            @Value("${querydsl.sql.max-fingerprints:2000}") int maxFingerprints) {
+        this.slowThresholdNanos = TimeUnit.MILLISECONDS.toNanos(slowThresholdMillis);
+        this.maxFingerprints = maxFingerprints;
+    }
+
+    @Override
+    public void onAfterAnyExecute(StatementInformation statementInformation, long timeElapsedNanos, SQLException e) {
+        String sql = statementInformation.getSql();
+        statsFor(sql).recordExecution(timeElapsedNanos);
+
+        if (timeElapsedNanos >= slowThresholdNanos) {
+            log.warn("slow query {} ms: {}", TimeUnit.NANOSECONDS.toMillis(timeElapsedNanos),
+                    statementInformation.getSqlWithValues());
+        }
+    }
+
+    @Override
+    public void onAfterExecuteUpdate(PreparedStatementInformation statementInformation,
+                                     long timeElapsedNanos, int rowCount, SQLException e) {
+        super.onAfterExecuteUpdate(statementInformation, timeElapsedNanos, rowCount, e);
+        if (rowCount > 0) {
+            statsFor(statementInformation.getSql()).rows.add(rowCount);
+        }
+    }
+
+    @Override
+    public void onAfterExecuteUpdate(StatementInformation statementInformation, long timeElapsedNanos,
+                                     String sql, int rowCount, SQLException e) {
+        super.onAfterExecuteUpdate(statementInformation, timeElapsedNanos, sql, rowCount, e);
+        if (rowCount > 0) {
+            statsFor(sql).rows.add(rowCount);
+        }
+    }
+
+    @Override
+    public void onAfterResultSetNext(ResultSetInformation resultSetInformation, long timeElapsedNanos,
+                                     boolean hasNext, SQLException e) {
+        if (hasNext) {
+            statsFor(resultSetInformation.getSql()).rows.increment();
+        }
+    }
+
+    public List<FingerprintStats> top(int limit) {
+        List<FingerprintStats> all = new ArrayList<>();
+        statsByFingerprint.forEach((fingerprint, stats) -> all.add(stats.snapshot(fingerprint)));
+        all.sort(Comparator.comparingLong(FingerprintStats::getTotalMillis).reversed());
+        return all.size() > limit ? all.subList(0, limit) : all;
+    }
+
+    public void reset() {
+        statsBySql.clear();
+        statsByFingerprint.clear();
+    }
+
+    private Stats statsFor(String sql) {
+        if (sql == null) {
+            sql = "";
+        }
+        Stats stats = statsBySql.get(sql);
+        if (stats != null) {
+            return stats;
+        }
+        String fingerprint = SqlFingerprint.of(sql);
+        if (statsByFingerprint.size() >= maxFingerprints && !statsByFingerprint.containsKey(fingerprint)) {
+            fingerprint = OVERFLOW;
+        }
+        stats = statsByFingerprint.computeIfAbsent(fingerprint, k -> new Stats());
+        // 리터럴이 박힌 SQL 이 많으면 원본 캐시가 끝없이 커지므로 지문 수만큼만 캐시
+        if (statsBySql.size() < maxFingerprints * 4) {
+            statsBySql.putIfAbsent(sql, stats);
+        }
+        return stats;
+    }
+
+    private static class Stats {
+        private final LongAdder count = new LongAdder();
+        private final LongAdder totalNanos = new LongAdder();
+        private final LongAccumulator maxNanos = new LongAccumulator(Math::max, 0);
+        private final LongAdder rows = new LongAdder();
+
+        void recordExecution(long nanos) {
+            count.increment();
+            totalNanos.add(nanos);
+            maxNanos.accumulate(nanos);
+        }
+
+        FingerprintStats snapshot(String fingerprint) {
+            return new FingerprintStats(fingerprint, count.sum(),
+                    TimeUnit.NANOSECONDS.toMillis(totalNanos.sum()),
+                    TimeUnit.NANOSECONDS.toMillis(maxNanos.get()),
+                    rows.sum());
+        }
+    }
+}
@@ -0,0 +1,33 @@
+package study.querydsl.sql;
+
+/**
+ * 현재 요청이 SQL 추적 대상인지 (스레드 로컬)
+ *
+ * SqlTraceInterceptor 가 샘플링 또는 X-Debug-Sql 헤더로 켜고, 요청이 끝나면 끈다.
+ * 추적 중이 아니면 SqlTraceListener 는 바인딩 값을 만들지도 않는다.
+ */
+public final class SqlTrace {
+
+    public static final String HEADER = "X-Debug-Sql";
+    public static final String TRACE_ID_HEADER = "X-Sql-Trace-Id";
+
+    private static final ThreadLocal<String> TRACE_ID = new ThreadLocal<>();
+
+    private SqlTrace() {
+    }
+
+    public static void start(String traceId) {
+        TRACE_ID.set(traceId);
+    }
+
+    public static void clear() {
+        TRACE_ID.remove();
+    }
+
+    /**
+     * @return 추적 중이 아니면 null
+     */
+    public static String currentTraceId() {
+        return TRACE_ID.get();
+    }
+}
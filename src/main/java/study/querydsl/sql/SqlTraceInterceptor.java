@@ -0,0 +1,37 @@
+package study.querydsl.sql;
+
+import org.springframework.web.servlet.HandlerInterceptor;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * sample-rate 비율의 요청, 또는 X-Debug-Sql: true 헤더가 붙은 요청만 SQL 을 추적한다
+ * 추적한 요청은 응답 헤더 X-Sql-Trace-Id 로 로그에서 찾을 id 를 돌려준다
+ */
+public class SqlTraceInterceptor implements HandlerInterceptor {
+
+    private final double sampleRate;
+
+    public SqlTraceInterceptor(double sampleRate) {
+        this.sampleRate = sampleRate;
+    }
+
+    @Override
+    public boolean preHandle(HttpServletRequest request, HttpServletResponse response, Object handler) {
+        if ("true".equalsIgnoreCase(request.getHeader(SqlTrace.HEADER))
+                || (sampleRate > 0 && ThreadLocalRandom.current().nextDouble() < sampleRate)) {
+            String traceId = UUID.randomUUID().toString();
+            SqlTrace.start(traceId);
+            response.setHeader(SqlTrace.TRACE_ID_HEADER, traceId);
+        }
+        return true;
+    }
+
+    @Override
+    public void afterCompletion(HttpServletRequest request, HttpServletResponse response, Object handler, Exception ex) {
+        SqlTrace.clear();
+    }
+}
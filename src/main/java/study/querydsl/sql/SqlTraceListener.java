@@ -0,0 +1,29 @@
+package study.querydsl.sql;
+
+import com.p6spy.engine.common.StatementInformation;
+import com.p6spy.engine.event.SimpleJdbcEventListener;
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Component;
+
+import java.sql.SQLException;
+
+/**
+ * 추적 중인 요청의 SQL(바인딩 값 포함)만 SqlTraceWriter 큐에 넣는다
+ * 요청 스레드에서는 문자열을 만들어 큐에 넣는 것까지만 하고, 로그 출력은 writer 스레드가 한다
+ */
+@Component
+@RequiredArgsConstructor
+public class SqlTraceListener extends SimpleJdbcEventListener {
+
+    private final SqlTraceWriter sqlTraceWriter;
+
+    @Override
+    public void onAfterAnyExecute(StatementInformation statementInformation, long timeElapsedNanos, SQLException e) {
+        String traceId = SqlTrace.currentTraceId();
+        if (traceId == null) {
+            return;
+        }
+        sqlTraceWriter.offer(new SqlTraceRecord(traceId, statementInformation.getSqlWithValues(),
+                timeElapsedNanos, e != null ? e.getMessage() : null));
+    }
+}
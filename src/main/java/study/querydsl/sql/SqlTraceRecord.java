@@ -0,0 +1,14 @@
+package study.querydsl.sql;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+@Getter
+@AllArgsConstructor
+public class SqlTraceRecord {
+
+    private final String traceId;
+    private final String sql;
+    private final long elapsedNanos;
+    private final String error;
+}
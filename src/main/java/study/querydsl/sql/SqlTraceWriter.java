@@ -0,0 +1,96 @@
+package study.querydsl.sql;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PreDestroy;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * SQL 추적 레코드를 별도 스레드에서 "sql.trace" 로거로 출력한다
+ *
+ * 큐는 queue-capacity 로 크기가 정해져 있고, 꽉 차면 요청 스레드를 막지 않고 버린다 (sql.trace.dropped 카운터)
+ * 로그가 밀려도 요청 지연시간에는 영향이 없고, 대신 일부 추적이 빠질 수 있다.
+ */
+@Slf4j(topic = "sql.trace")
+@Component
+public class SqlTraceWriter {
+
+    private static final int DRAIN_BATCH = 256;
+
+    private final BlockingQueue<SqlTraceRecord> queue;
+    private final Thread worker;
+    private volatile boolean running = true;
+
+    private final Counter written;
+    private final Counter dropped;
+
+    public SqlTraceWriter(MeterRegistry meterRegistry,
+                          @Value("${querydsl.sql.trace.queue-capacity:10000}") int queueCapacity) {
+        this.queue = new ArrayBlockingQueue<>(queueCapacity);
+        this.written = meterRegistry.counter("sql.trace.written");
+        this.dropped = meterRegistry.counter("sql.trace.dropped");
+        Gauge.builder("sql.trace.queued", queue, BlockingQueue::size).register(meterRegistry);
+
+        this.worker = new Thread(this::drainLoop, "sql-trace-writer");
+        worker.setDaemon(true);
+        worker.start();
+    }
+
+    /**
+     * @return 큐가 꽉 차서 버렸으면 false
+     */
+    public boolean offer(SqlTraceRecord record) {
+        if (queue.offer(record)) {
+            return true;
+        }
+        dropped.increment();
+        return false;
+    }
+
+    private void drainLoop() {
+        List<SqlTraceRecord> batch = new ArrayList<>(DRAIN_BATCH);
+        while (running || !queue.isEmpty()) {
+            try {
+                SqlTraceRecord first = queue.poll(1, TimeUnit.SECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+                queue.drainTo(batch, DRAIN_BATCH - 1);
+                batch.forEach(this::write);
+                written.increment(batch.size());
+            } catch (InterruptedException e) {
+                running = false;
+            } catch (RuntimeException e) {
+                log.warn("sql trace write failed", e);
+            } finally {
+                batch.clear();
+            }
+        }
+    }
+
+    private void write(SqlTraceRecord record) {
+        if (record.getError() != null) {
+            log.info("[{}] {} ms (error: {}) {}", record.getTraceId(),
+                    TimeUnit.NANOSECONDS.toMillis(record.getElapsedNanos()), record.getError(), record.getSql());
+        } else {
+            log.info("[{}] {} ms {}", record.getTraceId(),
+                    TimeUnit.NANOSECONDS.toMillis(record.getElapsedNanos()), record.getSql());
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() throws InterruptedException {
+        running = false;
+        worker.join(TimeUnit.SECONDS.toMillis(5));
+    }
+}
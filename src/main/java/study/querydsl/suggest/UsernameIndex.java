@@ -0,0 +1,104 @@
+package study.querydsl.suggest;
+
+import study.querydsl.dto.UsernameSuggestionDto;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+/**
+ * username 접두어 검색용 메모리 인덱스
+ *
+ * (username, memberId) 순서로 정렬된 skip list 라서 접두어 검색은 "접두어 이상인 첫 키부터 접두어가 맞는 동안" 읽으면 된다.
+ * 같은 username 이 여러 명이면 memberId 순서. 회원 하나의 추가/이름 변경/삭제는 O(log n) 이고 읽기와 동시에 해도 된다.
+ * 팀 이름은 팀 수만큼만 따로 들고 있다가 결과를 만들 때 붙인다.
+ */
+public class UsernameIndex {
+
+    // ConcurrentSkipListMap 은 null 값을 못 넣어서 팀 없는 회원은 -1
+    private static final long NO_TEAM = -1L;
+
+    private static final Comparator<Key> ORDER = Comparator.comparing((Key key) -> key.username)
+            .thenComparingLong(key -> key.memberId);
+
+    private final NavigableMap<Key, Long> teamIdByKey = new ConcurrentSkipListMap<>(ORDER);
+    private final Map<Long, Key> keyByMemberId = new ConcurrentHashMap<>();
+    private final Map<Long, String> teamNames = new ConcurrentHashMap<>();
+
+    /**
+     * 추가 또는 변경 (username 이 null 이면 인덱스에서 뺀다)
+     * 새 키를 먼저 넣고 이전 키를 지우므로 읽는 쪽에서 잠깐 안 보이는 구간이 없다
+     */
+    public synchronized void put(Long memberId, String username, Long teamId) {
+        if (username == null) {
+            remove(memberId);
+            return;
+        }
+        Key key = new Key(username, memberId);
+        teamIdByKey.put(key, teamId != null ? teamId : NO_TEAM);
+        Key previous = keyByMemberId.put(memberId, key);
+        if (previous != null && ORDER.compare(previous, key) != 0) {
+            teamIdByKey.remove(previous);
+        }
+    }
+
+    public synchronized void remove(Long memberId) {
+        Key previous = keyByMemberId.remove(memberId);
+        if (previous != null) {
+            teamIdByKey.remove(previous);
+        }
+    }
+
+    public void putTeam(Long teamId, String teamName) {
+        if (teamName != null) {
+            teamNames.put(teamId, teamName);
+        } else {
+            teamNames.remove(teamId);
+        }
+    }
+
+    public void removeTeam(Long teamId) {
+        teamNames.remove(teamId);
+    }
+
+    /**
+     * prefix 로 시작하는 username 을 사전 순서로 최대 limit 개
+     */
+    public List<UsernameSuggestionDto> suggest(String prefix, int limit) {
+        List<UsernameSuggestionDto> result = new ArrayList<>(Math.min(limit, 64));
+        for (Map.Entry<Key, Long> entry : teamIdByKey.tailMap(new Key(prefix, Long.MIN_VALUE), true).entrySet()) {
+            if (result.size() >= limit || !entry.getKey().username.startsWith(prefix)) {
+                break;
+            }
+            Long teamId = entry.getValue() != NO_TEAM ? entry.getValue() : null;
+            result.add(new UsernameSuggestionDto(entry.getKey().memberId, entry.getKey().username,
+                    teamId, teamId != null ? teamNames.get(teamId) : null));
+        }
+        return result;
+    }
+
+    // 다시 채우기 전에 비운다 (UsernameSuggester 의 build 재시도)
+    public synchronized void clear() {
+        teamIdByKey.clear();
+        keyByMemberId.clear();
+        teamNames.clear();
+    }
+
+    public int size() {
+        return keyByMemberId.size();
+    }
+
+    private static final class Key {
+        final String username;
+        final long memberId;
+
+        Key(String username, long memberId) {
+            this.username = username;
+            this.memberId = memberId;
+        }
+    }
+}
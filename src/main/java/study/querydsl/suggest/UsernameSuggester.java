@@ -0,0 +1,250 @@
+package study.querydsl.suggest;
+
+import com.querydsl.core.Tuple;
+import com.querydsl.jpa.impl.JPAQueryFactory;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+import study.querydsl.changefeed.ChangeFeedRepository;
+import study.querydsl.dto.ChangeDto;
+import study.querydsl.dto.UsernameSuggestionDto;
+import study.querydsl.entity.ChangeLog;
+import study.querydsl.support.InLists;
+
+import javax.annotation.PreDestroy;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static study.querydsl.entity.QMember.member;
+import static study.querydsl.entity.QTeam.team;
+
+/**
+ * username 자동완성 (/v1/members/suggest)
+ *
+ * 키 입력마다 like 'x%' 쿼리를 보내지 않고 메모리 인덱스(UsernameIndex)에서 찾는다.
+ * 1. 기동 후 change_log 의 현재 버전을 받아두고 member 를 id 범위별로 나눠 병렬 keyset 스캔해서 채운다 (엔티티 대신 id, username, team_id 만)
+ * 2. 그 뒤로는 change feed 를 refresh-ms 마다 읽어서 바뀐 회원/팀만 다시 읽는다 (추가, 이름 변경, 삭제, 보관, bulk 변경 모두 change_log 에 남는다)
+ *
+ * refresh-ms 만큼 늦게 반영된다. 다 채우기 전에는 일부만 보이므로 suggest 는 503 (RejectedExecutionException).
+ * 채우다 실패하면 비우고 처음부터 다시 한다 (1초부터 두 배씩, 최대 1분 간격).
+ */
+@Slf4j
+@Component
+public class UsernameSuggester {
+
+    private static final int REFRESH_BATCH = 500;
+    private static final int IN_LIST_CHUNK_SIZE = 256;
+    private static final long FIRST_RETRY_DELAY_MILLIS = 1_000;
+    private static final long MAX_RETRY_DELAY_MILLIS = 60_000;
+
+    private final UsernameIndex index = new UsernameIndex();
+
+    private final ChangeFeedRepository changeFeedRepository;
+    private final JPAQueryFactory queryFactory;
+    private final ScheduledExecutorService scheduler;
+
+    private final long refreshMillis;
+    private final int buildParallelism;
+    private final int buildChunkSize;
+
+    private volatile boolean ready;
+    private long cursor;
+
+    public UsernameSuggester(ChangeFeedRepository changeFeedRepository,
+                             JPAQueryFactory queryFactory, MeterRegistry meterRegistry,
+                             @Value("${querydsl.suggest.refresh-ms:1000}") long refreshMillis,
+                             @Value("${querydsl.suggest.build-parallelism:4}") int buildParallelism,
+                             @Value("${querydsl.suggest.build-chunk-size:1000}") int buildChunkSize) {
+        if (buildParallelism < 1 || buildChunkSize < 1) {
+            throw new IllegalArgumentException("querydsl.suggest.build-parallelism and build-chunk-size must be positive");
+        }
+        this.changeFeedRepository = changeFeedRepository;
+        this.queryFactory = queryFactory;
+        this.refreshMillis = refreshMillis;
+        this.buildParallelism = buildParallelism;
+        this.buildChunkSize = buildChunkSize;
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "username-suggest");
+            thread.setDaemon(true);
+            return thread;
+        });
+        Gauge.builder("member.suggest.size", index, UsernameIndex::size).register(meterRegistry);
+    }
+
+    // 기동 시간에 넣지 않고 별도 스레드에서 채운다. 다 채운 뒤에 change feed 를 따라가기 시작한다
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() {
+        scheduler.execute(() -> build(FIRST_RETRY_DELAY_MILLIS));
+    }
+
+    public List<UsernameSuggestionDto> suggest(String prefix, int limit) {
+        if (!ready) {
+            throw new RejectedExecutionException("username index is still being built");
+        }
+        return index.suggest(prefix, limit);
+    }
+
+    public boolean isReady() {
+        return ready;
+    }
+
+    private void build(long retryDelayMillis) {
+        try {
+            long startedAt = System.nanoTime();
+            index.clear();
+            cursor = changeFeedRepository.latestVersion();
+            for (Tuple row : queryFactory.select(team.id, team.name).from(team).fetch()) {
+                index.putTeam(row.get(team.id), row.get(team.name));
+            }
+            long members = scanMembers();
+            ready = true;
+            log.info("username index built: {} members in {} ms", members,
+                    TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startedAt));
+        } catch (RuntimeException e) {
+            log.warn("username index build failed, retrying in {} ms", retryDelayMillis, e);
+            long nextDelay = Math.min(retryDelayMillis * 2, MAX_RETRY_DELAY_MILLIS);
+            scheduler.schedule(() -> build(nextDelay), retryDelayMillis, TimeUnit.MILLISECONDS);
+            return;
+        }
+        scheduler.scheduleWithFixedDelay(this::refresh, refreshMillis, refreshMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * id 범위를 buildParallelism 개로 나눠서 범위마다 별도 스레드로 스캔한다
+     */
+    private long scanMembers() {
+        Tuple bounds = queryFactory
+                .select(member.id.min(), member.id.max())
+                .from(member)
+                .fetchOne();
+        Long minId = bounds != null ? bounds.get(member.id.min()) : null;
+        Long maxId = bounds != null ? bounds.get(member.id.max()) : null;
+        if (minId == null || maxId == null) {
+            return 0;
+        }
+
+        long step = (maxId - minId) / buildParallelism + 1;
+        AtomicInteger threadIndex = new AtomicInteger();
+        ExecutorService executor = Executors.newFixedThreadPool(buildParallelism, r -> {
+            Thread thread = new Thread(r, "username-suggest-build-" + threadIndex.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        try {
+            List<Future<Long>> ranges = new ArrayList<>();
+            for (long lower = minId; lower <= maxId; lower += step) {
+                long afterId = lower - 1;
+                long upToId = Math.min(lower + step - 1, maxId);
+                ranges.add(executor.submit(() -> scanRange(afterId, upToId)));
+            }
+            long scanned = 0;
+            for (Future<Long> range : ranges) {
+                scanned += range.get();
+            }
+            return scanned;
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            throw cause instanceof RuntimeException ? (RuntimeException) cause : new IllegalStateException(cause);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("interrupted", e);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    // (afterId, upToId] 범위를 buildChunkSize 씩. team 은 조인하지 않고 member.team_id 만 읽는다
+    private long scanRange(long afterId, long upToId) {
+        long scanned = 0;
+        long lastId = afterId;
+        while (true) {
+            List<Tuple> rows = queryFactory
+                    .select(member.id, member.username, member.team.id)
+                    .from(member)
+                    .where(member.id.gt(lastId), member.id.loe(upToId))
+                    .orderBy(member.id.asc())
+                    .limit(buildChunkSize)
+                    .fetch();
+            for (Tuple row : rows) {
+                index.put(row.get(member.id), row.get(member.username), row.get(member.team.id));
+            }
+            scanned += rows.size();
+            if (rows.size() < buildChunkSize) {
+                return scanned;
+            }
+            lastId = rows.get(rows.size() - 1).get(member.id);
+        }
+    }
+
+    private void refresh() {
+        try {
+            List<ChangeDto> changes;
+            do {
+                changes = changeFeedRepository.findSince(cursor, REFRESH_BATCH);
+                Set<Long> memberIds = new LinkedHashSet<>();
+                Set<Long> teamIds = new LinkedHashSet<>();
+                for (ChangeDto change : changes) {
+                    (change.getEntityType() == ChangeLog.EntityType.MEMBER ? memberIds : teamIds).add(change.getEntityId());
+                    cursor = change.getVersion();
+                }
+                reloadTeams(teamIds);
+                reloadMembers(memberIds);
+            } while (changes.size() == REFRESH_BATCH);
+        } catch (RuntimeException e) {
+            log.warn("username index refresh failed: {}", e.getMessage());
+        }
+    }
+
+    private void reloadMembers(Set<Long> memberIds) {
+        Set<Long> missing = new HashSet<>(memberIds);
+        for (List<Long> chunk : InLists.chunkAndPad(memberIds, IN_LIST_CHUNK_SIZE)) {
+            List<Tuple> rows = queryFactory
+                    .select(member.id, member.username, team.id, team.name)
+                    .from(member)
+                    .leftJoin(member.team, team)
+                    .where(member.id.in(chunk))
+                    .fetch();
+            for (Tuple row : rows) {
+                Long teamId = row.get(team.id);
+                if (teamId != null) {
+                    index.putTeam(teamId, row.get(team.name));
+                }
+                index.put(row.get(member.id), row.get(member.username), teamId);
+                missing.remove(row.get(member.id));
+            }
+        }
+        // 지워졌거나 보관된 회원
+        missing.forEach(index::remove);
+    }
+
+    private void reloadTeams(Set<Long> teamIds) {
+        Set<Long> missing = new HashSet<>(teamIds);
+        for (List<Long> chunk : InLists.chunkAndPad(teamIds, IN_LIST_CHUNK_SIZE)) {
+            for (Tuple row : queryFactory.select(team.id, team.name).from(team).where(team.id.in(chunk)).fetch()) {
+                index.putTeam(row.get(team.id), row.get(team.name));
+                missing.remove(row.get(team.id));
+            }
+        }
+        missing.forEach(index::removeTeam);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        scheduler.shutdownNow();
+    }
+}
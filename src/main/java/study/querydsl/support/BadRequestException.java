@@ -0,0 +1,18 @@
+package study.querydsl.support;
+
+/**
+ * 요청 값이 잘못됐을 때 (400)
+ *
+ * ApiExceptionHandler 는 이 예외만 400 으로 바꾸고 메시지를 그대로 돌려준다.
+ * 그 밖의 IllegalArgumentException (Spring Assert, Hibernate, JDK) 은 내부 오류라서 500 으로 둔다.
+ */
+public class BadRequestException extends IllegalArgumentException {
+
+    public BadRequestException(String message) {
+        super(message);
+    }
+
+    public BadRequestException(String message, Throwable cause) {
+        super(message, cause);
+    }
+}
@@ -0,0 +1,49 @@
+package study.querydsl.support;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * IN 절 파라미터를 나누고 채우는 유틸
+ *
+ * in (?, ?, ?) 의 파라미터 개수가 바뀔 때마다 하이버네이트 쿼리 플랜 캐시와 DB 의 statement 캐시에 다른 쿼리로 잡힌다.
+ * 그래서 maxChunkSize 단위로 자르고, 각 조각은 2의 거듭제곱 개수가 되도록 마지막 값을 반복해서 채운다.
+ * (예: 5개 -> 8개) 같은 값이 IN 절에 여러번 들어가도 결과는 같다.
+ */
+public final class InLists {
+
+    private InLists() {
+    }
+
+    public static <T> List<List<T>> chunkAndPad(Collection<T> values, int maxChunkSize) {
+        if (maxChunkSize < 1 || Integer.bitCount(maxChunkSize) != 1) {
+            throw new IllegalArgumentException("maxChunkSize must be a power of two: " + maxChunkSize);
+        }
+        List<T> source = new ArrayList<>(values);
+        List<List<T>> chunks = new ArrayList<>();
+        for (int from = 0; from < source.size(); from += maxChunkSize) {
+            int to = Math.min(from + maxChunkSize, source.size());
+            chunks.add(pad(source.subList(from, to)));
+        }
+        return chunks;
+    }
+
+    public static <T> List<T> pad(List<T> values) {
+        if (values.isEmpty()) {
+            return values;
+        }
+        int padded = paddedSize(values.size());
+        List<T> result = new ArrayList<>(padded);
+        result.addAll(values);
+        T last = values.get(values.size() - 1);
+        while (result.size() < padded) {
+            result.add(last);
+        }
+        return result;
+    }
+
+    static int paddedSize(int size) {
+        return size <= 1 ? size : Integer.highestOneBit(size - 1) << 1;
+    }
+}
@@ -0,0 +1,87 @@
+package study.querydsl.support;
+
+import com.querydsl.jpa.impl.JPAQuery;
+import org.hibernate.annotations.QueryHints;
+
+import javax.persistence.TypedQuery;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 요청 단위 데드라인
+ *
+ * SearchDeadlineInterceptor 가 요청 시작 시점에 데드라인을 잡아두면,
+ * 이 스레드가 실행하는 statement 는 SearchDeadlineCanceller 가 데드라인 시각에 정확히 취소하고 QueryTimeoutException 이 올라온다.
+ * 리포지토리가 쿼리에 거는 apply() 는 남은 시간을 초 단위로 올림한 JDBC statement timeout 이라 예비용이다 (취소 예약이 안 걸린 경우).
+ * 여러 statement 를 보내는 벌크 작업은 statement 사이에 check() 로 먼저 멈춘다.
+ * 데드라인이 없는 스레드(테스트, 배치)에서는 아무것도 하지 않는다.
+ */
+public final class SearchDeadline {
+
+    public static final String HEADER = "X-Request-Timeout-Ms";
+
+    private static final ThreadLocal<Long> DEADLINE_NANOS = new ThreadLocal<>();
+
+    private SearchDeadline() {
+    }
+
+    public static void start(long timeoutMillis) {
+        DEADLINE_NANOS.set(System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis));
+    }
+
+    public static void clear() {
+        DEADLINE_NANOS.remove();
+    }
+
+    public static boolean isActive() {
+        return DEADLINE_NANOS.get() != null;
+    }
+
+    /**
+     * 남은 시간(ms), 데드라인이 없으면 Long.MAX_VALUE
+     */
+    public static long remainingMillis() {
+        Long deadline = DEADLINE_NANOS.get();
+        if (deadline == null) {
+            return Long.MAX_VALUE;
+        }
+        return TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime());
+    }
+
+    /**
+     * 남은 시간(ns), 데드라인이 없으면 Long.MAX_VALUE
+     */
+    public static long remainingNanos() {
+        Long deadline = DEADLINE_NANOS.get();
+        return deadline == null ? Long.MAX_VALUE : deadline - System.nanoTime();
+    }
+
+    /**
+     * 데드라인이 지났으면 SearchTimeoutException (다음 statement 를 보내기 전에 부른다)
+     */
+    public static void check() {
+        if (remainingNanos() <= 0) {
+            throw new SearchTimeoutException("request deadline exceeded before query execution");
+        }
+    }
+
+    public static <T> JPAQuery<T> apply(JPAQuery<T> query) {
+        Integer seconds = timeoutSeconds();
+        return seconds == null ? query : query.setHint(QueryHints.TIMEOUT_HIBERNATE, seconds);
+    }
+
+    public static <T> TypedQuery<T> apply(TypedQuery<T> query) {
+        Integer seconds = timeoutSeconds();
+        return seconds == null ? query : query.setHint(QueryHints.TIMEOUT_HIBERNATE, seconds);
+    }
+
+    // JDBC statement timeout 은 초 단위라서 올림한다 (1초 미만이 남았어도 최소 1초).
+    // 데드라인보다 늦게 걸리므로 정확한 취소는 SearchDeadlineCanceller 가 하고 이 값은 예비용
+    private static Integer timeoutSeconds() {
+        if (!isActive()) {
+            return null;
+        }
+        check();
+        long remaining = remainingMillis();
+        return (int) Math.min(Integer.MAX_VALUE, Math.max(1, (remaining + 999) / 1000));
+    }
+}
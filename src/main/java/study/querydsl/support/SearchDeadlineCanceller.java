@@ -0,0 +1,124 @@
+package study.querydsl.support;
+
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.jdbc.datasource.DelegatingDataSource;
+import org.springframework.stereotype.Component;
+
+import javax.sql.DataSource;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.SQLTimeoutException;
+import java.sql.Statement;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 요청 데드라인 시각에 실행 중인 statement 를 Statement.cancel() 로 취소한다 (DataSource 빈을 감싼다)
+ *
+ * JDBC statement timeout 은 초 단위라서 SearchDeadline.apply() 의 힌트는 남은 시간을 올림한 값이고 최대 1초 가까이 늦다.
+ * 여기서는 데드라인이 있는 스레드가 execute 를 부르면 남은 시간 뒤에 cancel 을 예약하고, 실행이 끝나면 예약을 지운다.
+ * 힌트를 걸 수 없는 벌크 update/delete, JdbcTemplate 쿼리도 같이 걸린다.
+ * 취소된 statement 는 SQLState 57014 로 실패하고 QueryTimeoutException(504)으로 올라온다.
+ * 실행 전에 이미 데드라인이 지났으면 보내지 않고 같은 SQLState 로 실패한다.
+ *
+ * p6spy 리스너의 StatementInformation 은 Statement 를 넘겨주지 않아서 리스너가 아니라 커넥션/statement 프록시로 한다.
+ * 샤드 DataSource 는 빈이 아니므로 MemberShards 가 wrap() 으로 직접 감싼다.
+ */
+@Component
+public class SearchDeadlineCanceller implements BeanPostProcessor {
+
+    private static final String QUERY_CANCELED = "57014";
+
+    private static final ScheduledThreadPoolExecutor SCHEDULER = createScheduler();
+
+    private static ScheduledThreadPoolExecutor createScheduler() {
+        ScheduledThreadPoolExecutor scheduler = new ScheduledThreadPoolExecutor(1, r -> {
+            Thread thread = new Thread(r, "search-deadline-canceller");
+            thread.setDaemon(true);
+            return thread;
+        });
+        // 대부분 데드라인 전에 끝나서 지워지므로 지운 예약이 큐에 쌓이지 않게 한다
+        scheduler.setRemoveOnCancelPolicy(true);
+        return scheduler;
+    }
+
+    @Override
+    public Object postProcessAfterInitialization(Object bean, String beanName) {
+        if (bean instanceof DataSource && !(bean instanceof DeadlineDataSource)) {
+            return wrap((DataSource) bean);
+        }
+        return bean;
+    }
+
+    public static DataSource wrap(DataSource dataSource) {
+        return new DeadlineDataSource(dataSource);
+    }
+
+    private static class DeadlineDataSource extends DelegatingDataSource {
+
+        DeadlineDataSource(DataSource target) {
+            super(target);
+        }
+
+        @Override
+        public Connection getConnection() throws SQLException {
+            return wrapConnection(super.getConnection());
+        }
+
+        @Override
+        public Connection getConnection(String username, String password) throws SQLException {
+            return wrapConnection(super.getConnection(username, password));
+        }
+    }
+
+    private static Connection wrapConnection(Connection connection) {
+        return (Connection) Proxy.newProxyInstance(SearchDeadlineCanceller.class.getClassLoader(), new Class<?>[]{Connection.class},
+                (proxy, method, args) -> {
+                    Object result = invoke(connection, method, args);
+                    // createStatement / prepareStatement / prepareCall
+                    if (result instanceof Statement && Statement.class.isAssignableFrom(method.getReturnType())) {
+                        return wrapStatement((Statement) result, method.getReturnType());
+                    }
+                    return result;
+                });
+    }
+
+    private static Statement wrapStatement(Statement statement, Class<?> type) {
+        return (Statement) Proxy.newProxyInstance(SearchDeadlineCanceller.class.getClassLoader(), new Class<?>[]{type},
+                (proxy, method, args) -> {
+                    if (!method.getName().startsWith("execute") || !SearchDeadline.isActive()) {
+                        return invoke(statement, method, args);
+                    }
+                    long remainingNanos = SearchDeadline.remainingNanos();
+                    if (remainingNanos <= 0) {
+                        throw new SQLTimeoutException("request deadline exceeded before statement execution", QUERY_CANCELED);
+                    }
+                    ScheduledFuture<?> cancel = SCHEDULER.schedule(() -> cancel(statement), remainingNanos, TimeUnit.NANOSECONDS);
+                    try {
+                        return invoke(statement, method, args);
+                    } finally {
+                        cancel.cancel(false);
+                    }
+                });
+    }
+
+    private static void cancel(Statement statement) {
+        try {
+            statement.cancel();
+        } catch (SQLException ignored) {
+            // 이미 끝났거나 닫힌 statement
+        }
+    }
+
+    private static Object invoke(Object target, Method method, Object[] args) throws Throwable {
+        try {
+            return method.invoke(target, args);
+        } catch (InvocationTargetException e) {
+            throw e.getCause();
+        }
+    }
+}
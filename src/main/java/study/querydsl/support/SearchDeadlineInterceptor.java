@@ -0,0 +1,46 @@
+package study.querydsl.support;
+
+import org.springframework.util.StringUtils;
+import org.springframework.web.servlet.HandlerInterceptor;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+/**
+ * X-Request-Timeout-Ms 헤더(없으면 기본값)로 요청 데드라인을 시작하고, 요청이 끝나면 지운다
+ * 클라이언트가 너무 큰 값을 보내도 maxTimeoutMillis 를 넘지 못한다
+ */
+public class SearchDeadlineInterceptor implements HandlerInterceptor {
+
+    private final long defaultTimeoutMillis;
+    private final long maxTimeoutMillis;
+
+    public SearchDeadlineInterceptor(long defaultTimeoutMillis, long maxTimeoutMillis) {
+        this.defaultTimeoutMillis = defaultTimeoutMillis;
+        this.maxTimeoutMillis = maxTimeoutMillis;
+    }
+
+    @Override
+    public boolean preHandle(HttpServletRequest request, HttpServletResponse response, Object handler) {
+        SearchDeadline.start(timeoutOf(request));
+        return true;
+    }
+
+    @Override
+    public void afterCompletion(HttpServletRequest request, HttpServletResponse response, Object handler, Exception ex) {
+        SearchDeadline.clear();
+    }
+
+    private long timeoutOf(HttpServletRequest request) {
+        String header = request.getHeader(SearchDeadline.HEADER);
+        if (!StringUtils.hasText(header)) {
+            return defaultTimeoutMillis;
+        }
+        try {
+            long requested = Long.parseLong(header.trim());
+            return requested > 0 ? Math.min(requested, maxTimeoutMillis) : defaultTimeoutMillis;
+        } catch (NumberFormatException e) {
+            return defaultTimeoutMillis;
+        }
+    }
+}
@@ -0,0 +1,11 @@
+package study.querydsl.support;
+
+/**
+ * 요청 데드라인이 이미 지나서 쿼리를 실행하지 않았을 때
+ */
+public class SearchTimeoutException extends RuntimeException {
+
+    public SearchTimeoutException(String message) {
+        super(message);
+    }
+}
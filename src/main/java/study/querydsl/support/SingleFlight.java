@@ -0,0 +1,113 @@
+package study.querydsl.support;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Supplier;
+
+/**
+ * 같은 키로 동시에 들어온 호출을 하나로 합친다 (single-flight)
+ *
+ * 먼저 들어온 호출(리더)만 loader 를 실행하고, 그 사이에 같은 키로 들어온 호출(팔로워)은 리더의 결과를 같이 받는다.
+ * 결과는 캐시하지 않는다. 리더가 끝나는 순간 키가 지워지므로 그 다음 호출은 다시 쿼리를 실행한다.
+ *
+ * - 리더가 실패하면 팔로워도 같은 예외를 받는다
+ * - 단, 리더 자신의 데드라인 때문에 끝난 경우(타임아웃)는 팔로워의 데드라인과 상관이 없으므로 팔로워가 다시 시도한다
+ * - 팔로워는 자기 데드라인까지만 기다리고, 인터럽트되면 기다리기를 그만둔다 (리더의 쿼리는 취소하지 않는다)
+ * - 쓰기 트랜잭션 안에서는 아직 커밋 안 된 데이터가 결과에 섞일 수 있으므로 합치지 않는다
+ */
+public class SingleFlight<K, V> {
+
+    private final ConcurrentMap<K, CompletableFuture<V>> inFlight = new ConcurrentHashMap<>();
+    private final Counter coalesced;
+
+    public SingleFlight(MeterRegistry meterRegistry, String name) {
+        this.coalesced = Counter.builder("singleflight.coalesced")
+                .tag("name", name)
+                .description("calls that shared an in-flight result instead of running their own query")
+                .register(meterRegistry);
+    }
+
+    public V execute(K key, Supplier<V> loader) {
+        if (inWriteTransaction()) {
+            return loader.get();
+        }
+        while (true) {
+            CompletableFuture<V> call = new CompletableFuture<>();
+            CompletableFuture<V> leader = inFlight.putIfAbsent(key, call);
+            if (leader == null) {
+                return lead(key, call, loader);
+            }
+            coalesced.increment();
+            try {
+                return await(leader);
+            } catch (LeaderTimedOut e) {
+                // 리더의 데드라인이 지나서 실패 -> 내 데드라인으로 다시 시도
+            }
+        }
+    }
+
+    private V lead(K key, CompletableFuture<V> call, Supplier<V> loader) {
+        try {
+            V value = loader.get();
+            call.complete(value);
+            return value;
+        } catch (RuntimeException | Error e) {
+            call.completeExceptionally(e);
+            throw e;
+        } finally {
+            inFlight.remove(key, call);
+        }
+    }
+
+    private V await(CompletableFuture<V> leader) {
+        try {
+            if (SearchDeadline.isActive()) {
+                return leader.get(Math.max(0, SearchDeadline.remainingMillis()), TimeUnit.MILLISECONDS);
+            }
+            return leader.get();
+        } catch (TimeoutException e) {
+            throw new SearchTimeoutException("request deadline exceeded while waiting for in-flight search");
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new CancellationException("interrupted while waiting for in-flight search");
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (isTimeout(cause)) {
+                throw new LeaderTimedOut();
+            }
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new IllegalStateException(cause);
+        }
+    }
+
+    private static boolean isTimeout(Throwable cause) {
+        return cause instanceof SearchTimeoutException
+                || cause instanceof org.springframework.dao.QueryTimeoutException
+                || cause instanceof javax.persistence.QueryTimeoutException;
+    }
+
+    private static boolean inWriteTransaction() {
+        return TransactionSynchronizationManager.isActualTransactionActive()
+                && !TransactionSynchronizationManager.isCurrentTransactionReadOnly();
+    }
+
+    private static class LeaderTimedOut extends RuntimeException {
+        LeaderTimedOut() {
+            super(null, null, false, false);
+        }
+    }
+}
@@ -0,0 +1,63 @@
+package study.querydsl.support;
+
+import com.p6spy.engine.common.StatementInformation;
+import com.p6spy.engine.event.SimpleJdbcEventListener;
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Component;
+
+import java.sql.SQLException;
+import java.util.Locale;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * 실행된 SQL 을 보고 변경된 테이블의 버전을 올린다 (p6spy 리스너)
+ */
+@Component
+@RequiredArgsConstructor
+public class TableVersionListener extends SimpleJdbcEventListener {
+
+    private static final Pattern WRITE = Pattern.compile(
+            "^(?:insert\\s+into|update|delete\\s+from|delete|merge\\s+into)\\s+(?:\\w+\\.)?(\\w+)");
+
+    private final TableVersions tableVersions;
+
+    @Override
+    public void onAfterAnyExecute(StatementInformation statementInformation, long timeElapsedNanos, SQLException e) {
+        if (e != null) {
+            return;
+        }
+        String table = writtenTable(statementInformation.getSql());
+        if (table != null && tableVersions.isTracked(table)) {
+            tableVersions.markChanged(table);
+        }
+    }
+
+    /**
+     * insert / update / delete / merge 대상 테이블 (소문자, 스키마 제외). 쓰기가 아니면 null
+     */
+    public static String writtenTable(String sql) {
+        if (sql == null) {
+            return null;
+        }
+        String statement = stripLeadingComments(sql);
+        if (statement.isEmpty() || Character.toLowerCase(statement.charAt(0)) == 's') {
+            return null;
+        }
+        Matcher matcher = WRITE.matcher(statement.toLowerCase(Locale.ROOT));
+        return matcher.find() ? matcher.group(1) : null;
+    }
+
+    // use_sql_comments 때문에 "/* insert study.querydsl.entity.Member */ insert into member ..." 처럼 주석이 앞에 붙는다
+    private static String stripLeadingComments(String sql) {
+        String s = sql.trim();
+        while (s.startsWith("/*")) {
+            int end = s.indexOf("*/");
+            if (end < 0) {
+                return "";
+            }
+            s = s.substring(end + 2).trim();
+        }
+        return s;
+    }
+}
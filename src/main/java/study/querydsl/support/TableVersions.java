@@ -0,0 +1,102 @@
+package study.querydsl.support;
+
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 테이블별 변경 버전
+ *
+ * member, team 테이블에 insert/update/delete 가 실행될 때마다 버전이 올라간다. (TableVersionListener 가 JDBC 레벨에서 감지)
+ * 엔티티 저장, 변경감지(changeTeam), 벌크 update/delete 모두 결국 SQL 이 나가므로 빠짐없이 잡힌다.
+ *
+ * 트랜잭션 안에서 변경되면 SQL 실행 시점과 트랜잭션 종료 시점에 한번씩 더 올린다.
+ * 커밋 전에 다른 요청이 올라간 버전으로 옛날 데이터를 읽어가도, 커밋 후에는 버전이 다시 바뀌어서 그 ETag 가 무효가 된다.
+ * 롤백된 경우에도 올라가지만 304 가 안 나가는 것뿐이라 문제는 없다.
+ *
+ * 버전은 이 JVM 메모리에만 있어서 재시작하면 0 부터 다시 세고, 인스턴스마다 따로 센다.
+ * 그래서 ETag 에는 기동할 때 정한 epoch 를 같이 넣는다 -> 재시작 전이나 다른 인스턴스에서 받은 ETag 는 맞지 않아서 304 가 안 나간다.
+ */
+@Component
+public class TableVersions {
+
+    public static final String MEMBER = "member";
+    public static final String TEAM = "team";
+
+    private final Map<String, Version> versions = new ConcurrentHashMap<>();
+    private final String epoch = Long.toString(System.currentTimeMillis(), 36)
+            + Long.toString(ThreadLocalRandom.current().nextLong() & Long.MAX_VALUE, 36);
+
+    public TableVersions() {
+        versions.put(MEMBER, new Version());
+        versions.put(TEAM, new Version());
+    }
+
+    /**
+     * 이 인스턴스가 기동할 때 정한 값 (버전과 같이 ETag 에 넣는다)
+     */
+    public String epoch() {
+        return epoch;
+    }
+
+    public boolean isTracked(String table) {
+        return versions.containsKey(table);
+    }
+
+    public long version(String table) {
+        return versions.get(table).value.get();
+    }
+
+    public long lastModified(String table) {
+        return versions.get(table).lastModified;
+    }
+
+    /**
+     * Last-Modified 헤더로 보낼 값. 헤더는 초 단위라서 마지막 변경과 같은 초 안에 응답하면
+     * 그 초 안의 다음 변경이 If-Modified-Since 와 같은 값이 되어 304 가 나간다 -> 그 초가 지나기 전에는 보내지 않는다(-1)
+     */
+    public static long httpLastModified(long lastModified, long now) {
+        long nextSecond = (lastModified / 1000 + 1) * 1000;
+        return now >= nextSecond ? lastModified : -1;
+    }
+
+    public void markChanged(String table) {
+        Version version = versions.get(table);
+        if (version == null) {
+            return;
+        }
+        version.bump();
+
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            return;
+        }
+        // 트랜잭션당 테이블별로 한번만 등록
+        String key = TableVersions.class.getName() + "." + table;
+        if (TransactionSynchronizationManager.hasResource(key)) {
+            return;
+        }
+        TransactionSynchronizationManager.bindResource(key, Boolean.TRUE);
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCompletion(int status) {
+                TransactionSynchronizationManager.unbindResourceIfPossible(key);
+                version.bump();
+            }
+        });
+    }
+
+    private static class Version {
+        private final AtomicLong value = new AtomicLong();
+        private volatile long lastModified = System.currentTimeMillis();
+
+        void bump() {
+            value.incrementAndGet();
+            lastModified = System.currentTimeMillis();
+        }
+    }
+}
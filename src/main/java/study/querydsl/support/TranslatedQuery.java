@@ -0,0 +1,107 @@
+package study.querydsl.support;
+
+import com.querydsl.core.types.SubQueryExpression;
+import com.querydsl.jpa.JPAProvider;
+import com.querydsl.jpa.JPQLSerializer;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.hibernate.hql.internal.ast.ASTQueryTranslatorFactory;
+import org.hibernate.hql.spi.QueryTranslator;
+
+import javax.persistence.EntityManager;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.StringJoiner;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * QueryDSL(JPQL) 쿼리를 하이버네이트가 실제로 보낼 SQL 과 바인딩 값 목록으로 바꾼다 (실행하지 않는다)
+ *
+ * 같은 조건을 네이티브 SQL 에 그대로 끼워 넣을 때 쓴다 (EXPLAIN, insert ... select)
+ */
+public final class TranslatedQuery {
+
+    private static final Pattern LABEL = Pattern.compile("\\?(\\d+)");
+
+    private final String jpql;
+    private final String sql;
+    private final List<Object> parameters;
+
+    private TranslatedQuery(String jpql, String sql, List<Object> parameters) {
+        this.jpql = jpql;
+        this.sql = sql;
+        this.parameters = parameters;
+    }
+
+    public static TranslatedQuery of(EntityManager em, SubQueryExpression<?> query) {
+        JPQLSerializer serializer = new JPQLSerializer(JPAProvider.getTemplates(em), em);
+        serializer.serialize(query.getMetadata(), false, null);
+        List<Object> parameters = new ArrayList<>();
+        String jpql = expandParameters(serializer.toString(), serializer.getConstants(), parameters);
+        return new TranslatedQuery(jpql, toSql(em, jpql), Collections.unmodifiableList(parameters));
+    }
+
+    public String getJpql() {
+        return jpql;
+    }
+
+    public String getSql() {
+        return sql;
+    }
+
+    public List<Object> getParameters() {
+        return parameters;
+    }
+
+    /**
+     * JPQL 에 나온 순서대로 바인딩 값을 parameters 에 나열하고, 라벨을 그 순서대로 ?1, ?2 ... 로 다시 붙인 JPQL 을 돌려준다
+     * 파라미터가 where 절에만 있는 쿼리라서 하이버네이트가 만든 SQL 의 ? 순서와 같다
+     *
+     * 목록 조건(in)은 컬렉션 하나가 ?n 하나로 들어가 있다. 하이버네이트는 실행할 때 값 개수만큼 ? 를 펼치므로
+     * 여기서도 (?a, ?b, ...) 로 펼쳐야 실제로 나가는 SQL 과 같아진다 (그대로 두면 ? 하나에 List 를 바인딩하게 된다)
+     */
+    static String expandParameters(String jpql, List<Object> constants, List<Object> parameters) {
+        StringBuilder expanded = new StringBuilder(jpql.length());
+        Matcher matcher = LABEL.matcher(jpql);
+        int last = 0;
+        while (matcher.find()) {
+            expanded.append(jpql, last, matcher.start());
+            Object value = constants.get(Integer.parseInt(matcher.group(1)) - 1);
+            if (value instanceof Collection) {
+                // "in ?1" 이면 괄호를 붙이고 "in (?1)" 이면 이미 있는 괄호 안에 펼친다
+                boolean parenthesized = previousNonBlank(jpql, matcher.start()) == '(';
+                StringJoiner labels = new StringJoiner(", ", parenthesized ? "" : "(", parenthesized ? "" : ")");
+                for (Object element : (Collection<?>) value) {
+                    parameters.add(element);
+                    labels.add("?" + parameters.size());
+                }
+                expanded.append(labels);
+            } else {
+                parameters.add(value);
+                expanded.append('?').append(parameters.size());
+            }
+            last = matcher.end();
+        }
+        expanded.append(jpql, last, jpql.length());
+        return expanded.toString();
+    }
+
+    private static char previousNonBlank(String s, int index) {
+        for (int i = index - 1; i >= 0; i--) {
+            if (!Character.isWhitespace(s.charAt(i))) {
+                return s.charAt(i);
+            }
+        }
+        return 0;
+    }
+
+    private static String toSql(EntityManager em, String jpql) {
+        SessionFactoryImplementor sessionFactory = em.getEntityManagerFactory().unwrap(SessionFactoryImplementor.class);
+        QueryTranslator translator = new ASTQueryTranslatorFactory()
+                .createQueryTranslator(jpql, jpql, Collections.emptyMap(), sessionFactory, null);
+        translator.compile(Collections.emptyMap(), false);
+        return translator.getSQLString();
+    }
+}
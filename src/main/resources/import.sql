@@ -0,0 +1,4 @@
+-- ddl-auto=create 로 스키마를 만든 뒤 하이버네이트가 실행한다 (샤드 DB 도 같다)
+-- @Index 로는 nulls 순서를 줄 수 없어서 username 정렬/검색 인덱스만 여기서 만든다 (MemberSortKeys: username asc|desc nulls last, member_id asc)
+create index idx_member_username on member (username nulls last, member_id);
+create index idx_member_username_desc on member (username desc nulls last, member_id);
@@ -0,0 +1,244 @@
+package study.querydsl.archive;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.dao.DataAccessException;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Sort;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import study.querydsl.dto.MemberSearchCondition;
+import study.querydsl.dto.MemberTeamDto;
+import study.querydsl.entity.Member;
+import study.querydsl.entity.Team;
+import study.querydsl.repository.MemberJpaRepository;
+import study.querydsl.repository.MemberRepository;
+import study.querydsl.repository.TeamJpaRepository;
+import study.querydsl.support.BadRequestException;
+
+import javax.persistence.EntityManager;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * 보관/복원은 batch 마다 별도 트랜잭션으로 커밋하므로 테스트 데이터도 커밋해서 넣고, 끝나면 지운다
+ */
+@SpringBootTest
+class MemberArchiverTest {
+
+    private static final String TEAM_A = "archiveTeamA";
+    private static final String TEAM_B = "archiveTeamB";
+
+    @Autowired
+    EntityManager em;
+
+    @Autowired
+    MemberArchiver memberArchiver;
+
+    @Autowired
+    MemberJpaRepository memberJpaRepository;
+
+    @Autowired
+    TeamJpaRepository teamJpaRepository;
+
+    @Autowired
+    MemberRepository memberRepository;
+
+    @Autowired
+    JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    MeterRegistry meterRegistry;
+
+    @Autowired
+    PlatformTransactionManager transactionManager;
+
+    TransactionTemplate tx;
+    List<Long> teamIds = new ArrayList<>();
+    List<Long> memberIds = new ArrayList<>();
+
+    @BeforeEach
+    public void before() {
+        tx = new TransactionTemplate(transactionManager);
+        tx.executeWithoutResult(status -> {
+            Team teamA = new Team(TEAM_A);
+            Team teamB = new Team(TEAM_B);
+            em.persist(teamA);
+            em.persist(teamB);
+            teamIds.add(teamA.getId());
+            teamIds.add(teamB.getId());
+
+            persistMember("archive1", 10, teamA);
+            persistMember("archive2", 20, teamA);
+            persistMember("archive3", 30, teamB);
+            persistMember("archive4", 40, teamB);
+        });
+    }
+
+    @AfterEach
+    public void after() {
+        tx.executeWithoutResult(status -> {
+            em.createQuery("delete from Member m where m.id in :ids").setParameter("ids", memberIds).executeUpdate();
+            em.createQuery("delete from MemberArchive a where a.id in :ids").setParameter("ids", memberIds).executeUpdate();
+            em.createQuery("delete from Team t where t.id in :ids").setParameter("ids", teamIds).executeUpdate();
+        });
+    }
+
+    @Test
+    public void archiveAndRestore() {
+        MemberSearchCondition rule = teamRule(TEAM_A);
+
+        // batch 1건씩 -> 2번 옮긴다
+        assertThat(memberArchiver.archive(rule, 1)).isEqualTo(2);
+
+        assertThat(search(false)).extracting("username").containsExactly("archive3", "archive4");
+        List<MemberTeamDto> all = search(true);
+        assertThat(all).extracting("username").containsExactly("archive1", "archive2", "archive3", "archive4");
+        assertThat(all).extracting("teamName").containsExactly(TEAM_A, TEAM_A, TEAM_B, TEAM_B);
+        // 보관한 회원은 팀 회원 수에서 빠진다
+        assertThat(teamJpaRepository.countMembers(teamIds.get(0))).contains(0L);
+
+        assertThat(memberArchiver.restore(rule, 10)).isEqualTo(2);
+        assertThat(search(false)).extracting("username").containsExactly("archive1", "archive2", "archive3", "archive4");
+        assertThat(teamJpaRepository.countMembers(teamIds.get(0))).contains(2L);
+    }
+
+    @Test
+    public void repositorySearchAndPageIncludeArchived() {
+        assertThat(memberArchiver.archive(teamRule(TEAM_A), 10)).isEqualTo(2);
+        MemberSearchCondition condition = new MemberSearchCondition();
+        condition.setTeamNames(List.of(TEAM_A, TEAM_B));
+
+        assertThat(memberRepository.search(condition, Sort.by("age"))).extracting("username")
+                .containsExactly("archive3", "archive4");
+
+        condition.setIncludeArchived(true);
+        assertThat(memberRepository.search(condition, Sort.by("age"))).extracting("username")
+                .containsExactly("archive1", "archive2", "archive3", "archive4");
+
+        // member 와 member_archive 를 같은 순서로 읽어서 합친 뒤 페이지를 자른다
+        Page<MemberTeamDto> page = memberRepository.searchPage(condition, PageRequest.of(1, 2, Sort.by(Sort.Direction.DESC, "age")));
+        assertThat(page.getTotalElements()).isEqualTo(4);
+        assertThat(page.getContent()).extracting("username").containsExactly("archive2", "archive1");
+    }
+
+    @Test
+    public void failedBatchRollsBackAloneAndRerunMovesTheRest() {
+        // archive2 와 같은 id 가 이미 보관 테이블에 있으면 두 번째 batch 의 insert 가 실패한다
+        jdbcTemplate.update("insert into member_archive (member_id, username, age, archived_at) values (?, ?, ?, ?)",
+                memberIds.get(1), "stale", 0, Timestamp.valueOf(LocalDateTime.now()));
+
+        assertThatThrownBy(() -> memberArchiver.archive(teamRule(TEAM_A), 1))
+                .isInstanceOf(DataAccessException.class);
+
+        // 첫 번째 batch 는 이미 커밋됐고, 실패한 batch 는 통째로 롤백됐다
+        assertThat(inMember(memberIds.get(0))).isFalse();
+        assertThat(inMember(memberIds.get(1))).isTrue();
+
+        jdbcTemplate.update("delete from member_archive where member_id = ? and username = 'stale'", memberIds.get(1));
+
+        // 같은 규칙으로 다시 돌리면 남은 것만 옮긴다
+        assertThat(memberArchiver.archive(teamRule(TEAM_A), 1)).isEqualTo(1);
+        assertThat(inMember(memberIds.get(1))).isFalse();
+    }
+
+    @Test
+    public void restoreWithoutTeamWhenTeamWasDeleted() {
+        assertThat(memberArchiver.archive(teamRule(TEAM_B), 10)).isEqualTo(2);
+        tx.executeWithoutResult(status -> em.createQuery("delete from Team t where t.id = :id")
+                .setParameter("id", teamIds.get(1))
+                .executeUpdate());
+
+        MemberSearchCondition byIds = new MemberSearchCondition();
+        byIds.setMemberIds(memberIds.subList(2, 4));
+        assertThat(memberArchiver.restore(byIds, 10)).isEqualTo(2);
+
+        List<MemberTeamDto> restored = memberJpaRepository.search(byIds, Sort.by("age"));
+        assertThat(restored).extracting("username").containsExactly("archive3", "archive4");
+        assertThat(restored).extracting("teamId").containsExactly(null, null);
+    }
+
+    @Test
+    public void submitRunsInBackgroundAndRecordsMetrics() throws Exception {
+        double rowsBefore = meterRegistry.counter("member.archive.rows", "direction", "archive").count();
+        long batchesBefore = meterRegistry.timer("member.archive.batch", "direction", "archive").count();
+
+        ArchiveJob job = memberArchiver.submit(ArchiveJob.Direction.ARCHIVE, teamRule(TEAM_A), 1);
+        awaitFinished(job);
+
+        assertThat(job.getState()).isEqualTo(ArchiveJob.State.COMPLETED);
+        assertThat(job.getProcessed()).isEqualTo(2);
+        assertThat(memberArchiver.job(job.getId())).containsSame(job);
+        assertThat(meterRegistry.counter("member.archive.rows", "direction", "archive").count() - rowsBefore)
+                .isEqualTo(2);
+        assertThat(meterRegistry.timer("member.archive.batch", "direction", "archive").count() - batchesBefore)
+                .isEqualTo(2);
+        assertThat(search(false)).extracting("username").containsExactly("archive3", "archive4");
+    }
+
+    @Test
+    public void submitReportsFailure() throws Exception {
+        jdbcTemplate.update("insert into member_archive (member_id, username, age, archived_at) values (?, ?, ?, ?)",
+                memberIds.get(0), "stale", 0, Timestamp.valueOf(LocalDateTime.now()));
+
+        ArchiveJob job = memberArchiver.submit(ArchiveJob.Direction.ARCHIVE, teamRule(TEAM_A), 10);
+        awaitFinished(job);
+
+        assertThat(job.getState()).isEqualTo(ArchiveJob.State.FAILED);
+        assertThat(job.getError()).isNotNull();
+        assertThat(job.getProcessed()).isZero();
+        assertThat(inMember(memberIds.get(0))).isTrue();
+    }
+
+    @Test
+    public void ruleWithoutConditionIsRejected() {
+        assertThatThrownBy(() -> memberArchiver.archive(new MemberSearchCondition(), 100))
+                .isInstanceOf(BadRequestException.class);
+    }
+
+    private void persistMember(String username, int age, Team team) {
+        Member member = new Member(username, age, team);
+        em.persist(member);
+        memberIds.add(member.getId());
+    }
+
+    private static MemberSearchCondition teamRule(String teamName) {
+        MemberSearchCondition rule = new MemberSearchCondition();
+        rule.setTeamName(teamName);
+        return rule;
+    }
+
+    private List<MemberTeamDto> search(boolean includeArchived) {
+        MemberSearchCondition condition = new MemberSearchCondition();
+        condition.setTeamNames(List.of(TEAM_A, TEAM_B));
+        condition.setIncludeArchived(includeArchived);
+        return memberJpaRepository.search(condition, Sort.by("age"));
+    }
+
+    private boolean inMember(Long memberId) {
+        Integer count = jdbcTemplate.queryForObject("select count(*) from member where member_id = ?", Integer.class, memberId);
+        return count != null && count > 0;
+    }
+
+    private static void awaitFinished(ArchiveJob job) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (job.getState() == ArchiveJob.State.QUEUED || job.getState() == ArchiveJob.State.RUNNING) {
+            if (System.nanoTime() > deadline) {
+                throw new AssertionError("archive job " + job.getId() + " did not finish");
+            }
+            Thread.sleep(10);
+        }
+    }
+}
@@ -0,0 +1,187 @@
+package study.querydsl.changefeed;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import study.querydsl.dto.ChangeDto;
+import study.querydsl.dto.MemberSearchCondition;
+import study.querydsl.entity.ChangeLog;
+import study.querydsl.entity.Member;
+import study.querydsl.entity.Team;
+import study.querydsl.repository.MemberJpaRepository;
+import study.querydsl.repository.TeamJpaRepository;
+
+import javax.persistence.EntityManager;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.assertj.core.api.Assertions.tuple;
+
+/**
+ * change_log 는 커밋 직전에 쓰이므로 테스트 데이터도 커밋해서 넣고, 끝나면 지운다
+ */
+@SpringBootTest
+class ChangeFeedRepositoryTest {
+
+    @Autowired
+    EntityManager em;
+
+    @Autowired
+    ChangeFeedRepository changeFeedRepository;
+
+    @Autowired
+    ChangeLogWriter changeLogWriter;
+
+    @Autowired
+    MemberJpaRepository memberJpaRepository;
+
+    @Autowired
+    TeamJpaRepository teamJpaRepository;
+
+    @Autowired
+    PlatformTransactionManager transactionManager;
+
+    TransactionTemplate tx;
+    long since;
+    List<Long> teamIds = new ArrayList<>();
+    List<Long> memberIds = new ArrayList<>();
+
+    @BeforeEach
+    public void before() {
+        tx = new TransactionTemplate(transactionManager);
+        since = changeFeedRepository.latestVersion();
+    }
+
+    @AfterEach
+    public void after() {
+        tx.executeWithoutResult(status -> {
+            em.createQuery("delete from Member m where m.id in :ids").setParameter("ids", ids(memberIds)).executeUpdate();
+            em.createQuery("delete from Team t where t.id in :ids").setParameter("ids", ids(teamIds)).executeUpdate();
+            em.createQuery("delete from ChangeLog c where c.id > :since").setParameter("since", since).executeUpdate();
+        });
+    }
+
+    @Test
+    public void entityAndBulkChangesAreRecorded() throws Exception {
+        tx.executeWithoutResult(status -> {
+            Team teamA = persistTeam("feedTeamA");
+            persistMember("member1", 10, teamA);
+            persistMember("member2", 20, teamA);
+            em.flush();
+
+            MemberSearchCondition condition = new MemberSearchCondition();
+            condition.setTeamName("feedTeamA");
+            memberJpaRepository.bulkAddAge(condition, 1);
+
+            // 커밋 전에는 아직 쓰지 않는다
+            assertThat(changeFeedRepository.findSince(since, 100)).isEmpty();
+        });
+
+        List<ChangeDto> changes = changeFeedRepository.findSince(since, 100);
+
+        assertThat(changes)
+                .extracting("entityType", "entityId", "operation")
+                .containsExactly(
+                        tuple(ChangeLog.EntityType.TEAM, teamIds.get(0), ChangeLog.Operation.INSERT),
+                        tuple(ChangeLog.EntityType.MEMBER, memberIds.get(0), ChangeLog.Operation.INSERT),
+                        tuple(ChangeLog.EntityType.MEMBER, memberIds.get(1), ChangeLog.Operation.INSERT),
+                        tuple(ChangeLog.EntityType.MEMBER, memberIds.get(0), ChangeLog.Operation.UPDATE),
+                        tuple(ChangeLog.EntityType.MEMBER, memberIds.get(1), ChangeLog.Operation.UPDATE));
+        assertThat(changeFeedRepository.latestVersion()).isEqualTo(changes.get(4).getVersion());
+
+        // 배치로 나눠 받기
+        List<ChangeDto> first = changeFeedRepository.findSince(since, 2);
+        List<ChangeDto> rest = changeFeedRepository.findSince(first.get(1).getVersion(), 100);
+        assertThat(first.size() + rest.size()).isEqualTo(changes.size());
+    }
+
+    @Test
+    public void rolledBackChangesAreNotRecorded() {
+        tx.executeWithoutResult(status -> {
+            persistTeam("feedRollback");
+            em.flush();
+            status.setRollbackOnly();
+        });
+
+        assertThat(changeFeedRepository.findSince(since, 100)).isEmpty();
+    }
+
+    @Test
+    public void versionsFollowCommitOrder() throws Exception {
+        // 먼저 시작해서 늦게 커밋한 트랜잭션의 변경이 먼저 커밋된 변경보다 뒤 버전이어야
+        // since 를 넘겨받은 쪽이 늦은 커밋을 놓치지 않는다
+        tx.executeWithoutResult(status -> {
+            persistTeam("feedSlow");
+            em.flush();
+
+            Thread other = new Thread(() -> tx.executeWithoutResult(s -> persistTeam("feedFast")));
+            other.start();
+            try {
+                other.join();
+            } catch (InterruptedException e) {
+                throw new IllegalStateException(e);
+            }
+            assertThat(changeFeedRepository.findSince(since, 100)).hasSize(1);
+        });
+
+        List<ChangeDto> changes = changeFeedRepository.findSince(since, 100);
+        assertThat(changes).extracting("entityId").containsExactly(teamIds.get(1), teamIds.get(0));
+    }
+
+    @Test
+    public void setBasedTeamChangeRecordsMovedMembersOnly() {
+        Long[] toTeamId = new Long[1];
+        tx.executeWithoutResult(status -> {
+            Team teamA = persistTeam("feedMoveA");
+            Team teamB = persistTeam("feedMoveB");
+            persistMember("member1", 10, teamA);
+            persistMember("member2", 20, teamB);
+            toTeamId[0] = teamB.getId();
+        });
+        long moveSince = changeFeedRepository.latestVersion();
+
+        MemberSearchCondition condition = new MemberSearchCondition();
+        condition.setTeamNames(List.of("feedMoveA", "feedMoveB"));
+        assertThat(teamJpaRepository.bulkChangeTeam(condition, toTeamId[0])).isEqualTo(1);
+
+        // insert ... select 도 update 와 같은 조건이라 이미 feedMoveB 에 있던 member2 는 남지 않는다
+        assertThat(changeFeedRepository.findSince(moveSince, 100))
+                .extracting("entityId", "operation")
+                .containsExactly(tuple(memberIds.get(0), ChangeLog.Operation.UPDATE));
+        assertThat(teamJpaRepository.countMembers(teamIds.get(0))).contains(0L);
+        assertThat(teamJpaRepository.countMembers(toTeamId[0])).contains(2L);
+    }
+
+    @Test
+    public void recordAllRequiresTransaction() {
+        assertThatThrownBy(() -> changeLogWriter.recordAll(ChangeLog.EntityType.MEMBER, ChangeLog.Operation.UPDATE,
+                List.of(1L)))
+                .isInstanceOf(IllegalStateException.class);
+    }
+
+    private Team persistTeam(String name) {
+        Team team = new Team(name);
+        em.persist(team);
+        synchronized (teamIds) {
+            teamIds.add(team.getId());
+        }
+        return team;
+    }
+
+    private void persistMember(String username, int age, Team team) {
+        Member member = new Member(username, age, team);
+        em.persist(member);
+        memberIds.add(member.getId());
+    }
+
+    // 빈 목록이면 in () 가 되므로 없는 id 하나
+    private static List<Long> ids(List<Long> ids) {
+        return ids.isEmpty() ? List.of(-1L) : ids;
+    }
+}
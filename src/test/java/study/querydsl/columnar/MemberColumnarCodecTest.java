@@ -0,0 +1,82 @@
+package study.querydsl.columnar;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import study.querydsl.dto.MemberTeamDto;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class MemberColumnarCodecTest {
+
+    @Test
+    public void roundTrip() throws Exception {
+        List<MemberTeamDto> rows = List.of(
+                new MemberTeamDto(3L, "member1", 10, 1L, "teamA"),
+                new MemberTeamDto(1L, "회원2", 20, 2L, "teamB"),
+                new MemberTeamDto(900L, null, 0, null, null),
+                new MemberTeamDto(901L, "member4", 40, 1L, "teamA"));
+
+        byte[] bytes = new MemberColumnarEncoder().encode(rows);
+
+        assertThat(new MemberColumnarDecoder().decode(bytes)).isEqualTo(rows);
+        assertThat(new MemberColumnarDecoder().decode(new MemberColumnarEncoder().encode(List.of()))).isEmpty();
+    }
+
+    @Test
+    public void roundTripAcrossBlocks() throws Exception {
+        List<MemberTeamDto> rows = rows(MemberColumnarFormat.BLOCK_ROWS * 3 + 7);
+
+        assertThat(new MemberColumnarDecoder().decode(new MemberColumnarEncoder().encode(rows))).isEqualTo(rows);
+    }
+
+    /**
+     * JSON 과 인코딩 시간, 크기 비교 (결과는 출력만 한다)
+     */
+    @Tag("benchmark")
+    @Test
+    public void encodeBenchmarkAgainstJson() throws Exception {
+        List<MemberTeamDto> rows = rows(100_000);
+        ObjectMapper objectMapper = new ObjectMapper();
+        MemberColumnarEncoder encoder = new MemberColumnarEncoder();
+
+        // 워밍업
+        for (int i = 0; i < 5; i++) {
+            objectMapper.writeValueAsBytes(rows);
+            encoder.encode(rows);
+        }
+
+        int iterations = 10;
+        long jsonNanos = 0;
+        long columnarNanos = 0;
+        int jsonSize = 0;
+        int columnarSize = 0;
+        for (int i = 0; i < iterations; i++) {
+            long start = System.nanoTime();
+            jsonSize = objectMapper.writeValueAsBytes(rows).length;
+            jsonNanos += System.nanoTime() - start;
+
+            start = System.nanoTime();
+            columnarSize = encoder.encode(rows).length;
+            columnarNanos += System.nanoTime() - start;
+        }
+
+        System.out.printf("rows = %d%n", rows.size());
+        System.out.printf("json     : %,d bytes, %.2f ms%n", jsonSize, jsonNanos / iterations / 1_000_000.0);
+        System.out.printf("columnar : %,d bytes, %.2f ms%n", columnarSize, columnarNanos / iterations / 1_000_000.0);
+
+        assertThat(columnarSize).isLessThan(jsonSize);
+    }
+
+    private static List<MemberTeamDto> rows(int count) {
+        List<MemberTeamDto> rows = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            long teamId = i % 10 + 1;
+            rows.add(new MemberTeamDto((long) i + 1, "member" + i, i % 100, teamId, "team" + teamId));
+        }
+        return rows;
+    }
+}
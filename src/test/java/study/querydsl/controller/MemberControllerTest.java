@@ -0,0 +1,151 @@
+package study.querydsl.controller;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RestController;
+import study.querydsl.entity.Team;
+import study.querydsl.support.TableVersions;
+
+import javax.persistence.EntityManager;
+import javax.transaction.Transactional;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+@SpringBootTest
+@AutoConfigureMockMvc
+@Transactional
+@Import(MemberControllerTest.FailingController.class)
+class MemberControllerTest {
+
+    @Autowired
+    MockMvc mockMvc;
+
+    @Autowired
+    TableVersions tableVersions;
+
+    @Autowired
+    MeterRegistry meterRegistry;
+
+    @Test
+    public void searchIsNotModifiedUntilMemberTableChanges() throws Exception {
+        String eTag = mockMvc.perform(get("/v1/members").param("teamName", "teamA"))
+                .andExpect(status().isOk())
+                .andReturn().getResponse().getHeader(HttpHeaders.ETAG);
+        // 재시작 전이나 다른 인스턴스의 ETag 와 겹치지 않게 epoch 가 붙는다
+        assertThat(eTag).startsWith("\"" + tableVersions.epoch() + "-");
+
+        mockMvc.perform(get("/v1/members").param("teamName", "teamA").header(HttpHeaders.IF_NONE_MATCH, eTag))
+                .andExpect(status().isNotModified());
+
+        // 조건이 다르면 다른 ETag
+        mockMvc.perform(get("/v1/members").param("teamName", "teamB").header(HttpHeaders.IF_NONE_MATCH, eTag))
+                .andExpect(status().isOk());
+
+        tableVersions.markChanged(TableVersions.MEMBER);
+
+        mockMvc.perform(get("/v1/members").param("teamName", "teamA").header(HttpHeaders.IF_NONE_MATCH, eTag))
+                .andExpect(status().isOk());
+    }
+
+    @Test
+    public void batchWithoutIdsIsBadRequest() throws Exception {
+        for (String body : new String[]{"{\"ids\": null}", "{\"ids\": [1, null]}"}) {
+            mockMvc.perform(post("/v1/members/batch").contentType(MediaType.APPLICATION_JSON).content(body))
+                    .andExpect(status().isBadRequest())
+                    .andExpect(jsonPath("$.code").value("BAD_REQUEST"));
+        }
+    }
+
+    // 요청이 직접 커넥션을 얻도록 테스트 트랜잭션 없이 실행한다
+    @Test
+    @Transactional(Transactional.TxType.NOT_SUPPORTED)
+    public void connectionHoldIsRecordedPerRequest() throws Exception {
+        long holdsBefore = holdTimer().count();
+        long requestsBefore = connectionsSummary().count();
+
+        mockMvc.perform(get("/v1/members").param("teamName", "teamA"))
+                .andExpect(status().isOk());
+
+        assertThat(holdTimer().count()).isEqualTo(holdsBefore + 1);
+        assertThat(connectionsSummary().count()).isEqualTo(requestsBefore + 1);
+        assertThat(connectionsSummary().max()).isGreaterThanOrEqualTo(1);
+    }
+
+    @Test
+    @Transactional(Transactional.TxType.NOT_SUPPORTED)
+    public void lazyLoadingOutsideTransactionIsReported() throws Exception {
+        double failuresBefore = meterRegistry.counter("http.lazy.loading.failures").count();
+
+        mockMvc.perform(get("/test/lazy-team"))
+                .andExpect(status().isInternalServerError())
+                .andExpect(jsonPath("$.code").value("LAZY_LOADING"));
+
+        assertThat(meterRegistry.counter("http.lazy.loading.failures").count()).isEqualTo(failuresBefore + 1);
+    }
+
+    @Test
+    public void countOfUnknownTeamIsNotFound() throws Exception {
+        mockMvc.perform(get("/v1/teams/{id}/count", -1L))
+                .andExpect(status().isNotFound());
+    }
+
+    @Test
+    public void onlyBadRequestExceptionIsBadRequest() throws Exception {
+        mockMvc.perform(get("/v1/members").param("sort", "teamId"))
+                .andExpect(status().isBadRequest())
+                .andExpect(jsonPath("$.code").value("BAD_REQUEST"));
+
+        // 내부에서 난 IllegalArgumentException 은 400 으로 바꾸지 않는다
+        assertThatThrownBy(() -> mockMvc.perform(get("/test/internal-argument-error")))
+                .hasRootCauseInstanceOf(IllegalArgumentException.class);
+    }
+
+    private Timer holdTimer() {
+        return meterRegistry.timer("http.request.connection.hold", "uri", "/v1/members");
+    }
+
+    private DistributionSummary connectionsSummary() {
+        return meterRegistry.summary("http.request.connections", "uri", "/v1/members");
+    }
+
+    /**
+     * 예외 처리 확인용 컨트롤러
+     */
+    @RestController
+    static class FailingController {
+
+        private final EntityManager em;
+
+        FailingController(EntityManager em) {
+            this.em = em;
+        }
+
+        @GetMapping("/test/internal-argument-error")
+        public Map<String, String> internalArgumentError() {
+            throw new IllegalArgumentException("internal detail");
+        }
+
+        // 트랜잭션 밖에서 프록시를 초기화한다 (open-in-view 가 꺼져 있으면 실패해야 한다)
+        @GetMapping("/test/lazy-team")
+        public Map<String, String> lazyTeam() {
+            Team team = em.getReference(Team.class, 1L);
+            return Map.of("teamName", team.getName());
+        }
+    }
+}
@@ -0,0 +1,91 @@
+package study.querydsl.entity;
+
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.Nested;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+
+import javax.persistence.EntityManager;
+import javax.transaction.Transactional;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * InitMember 처럼 팀 2개 + 회원 N명을 넣을 때 insert 처리량 비교 (결과는 출력만 한다)
+ *
+ * - before : 엔티티별 블록 크기 1 + JDBC batch 끔. persist 마다 nextval 한번, insert 도 한 건씩 (pooled 시퀀스 이전과 같은 상태)
+ * - after  : 설정대로 pooled-lo(block_size 마다 nextval 한번) + hibernate.jdbc.batch_size 로 insert 를 묶어서 보냄
+ *
+ * 블록 크기를 바꾸면 시퀀스 increment 가 달라지므로 두 경우 모두 따로 만든 메모리 DB 에서 각자의 컨텍스트로 돌린다
+ * (공용 테스트 DB 의 스키마를 다시 만들지 않는다)
+ */
+@Tag("benchmark")
+class SeedInsertBenchmarkTest {
+
+    private static final int MEMBER_COUNT = 5_000;
+    private static final Map<String, Long> RESULTS = new LinkedHashMap<>();
+
+    @AfterAll
+    public static void print() {
+        RESULTS.forEach((name, millis) -> System.out.printf("%-6s : %,d members in %d ms (%.0f rows/s)%n",
+                name, MEMBER_COUNT, millis, MEMBER_COUNT * 1000.0 / millis));
+    }
+
+    @Nested
+    @SpringBootTest(properties = {
+            "spring.datasource.url=jdbc:h2:mem:seed_before;DB_CLOSE_DELAY=-1",
+            "spring.jpa.properties.querydsl.id.block_size=1",
+            "spring.jpa.properties.hibernate.jdbc.batch_size=0",
+            "spring.jpa.properties.hibernate.order_inserts=false"
+    })
+    @Transactional
+    class Before {
+
+        @Autowired
+        EntityManager em;
+
+        @Test
+        public void seedInsertThroughput() {
+            seed(em, 1_000); // 워밍업
+            RESULTS.put("before", seed(em, MEMBER_COUNT));
+        }
+    }
+
+    @Nested
+    @SpringBootTest(properties = "spring.datasource.url=jdbc:h2:mem:seed_after;DB_CLOSE_DELAY=-1")
+    @Transactional
+    class After {
+
+        @Autowired
+        EntityManager em;
+
+        @Test
+        public void seedInsertThroughput() {
+            seed(em, 1_000); // 워밍업
+            RESULTS.put("after", seed(em, MEMBER_COUNT));
+        }
+    }
+
+    private static long seed(EntityManager em, int count) {
+        long start = System.currentTimeMillis();
+        Team teamA = new Team("teamA");
+        Team teamB = new Team("teamB");
+        em.persist(teamA);
+        em.persist(teamB);
+        for (int i = 0; i < count; i++) {
+            Team selectedTeam = i % 2 == 0 ? teamA : teamB;
+            em.persist(new Member("member" + i, i % 100, selectedTeam));
+            if (i % 1000 == 999) {
+                em.flush();
+                em.clear();
+                teamA = em.getReference(Team.class, teamA.getId());
+                teamB = em.getReference(Team.class, teamB.getId());
+            }
+        }
+        em.flush();
+        em.clear();
+        return Math.max(1, System.currentTimeMillis() - start);
+    }
+}
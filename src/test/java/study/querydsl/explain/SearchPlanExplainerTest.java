@@ -0,0 +1,124 @@
+package study.querydsl.explain;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.data.domain.Sort;
+import study.querydsl.dto.MemberSearchCondition;
+import study.querydsl.support.BadRequestException;
+
+import javax.transaction.Transactional;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+@SpringBootTest
+@Transactional
+class SearchPlanExplainerTest {
+
+    @Autowired
+    SearchPlanExplainer searchPlanExplainer;
+
+    @Test
+    public void usernameUsesIndex() {
+        MemberSearchCondition condition = new MemberSearchCondition();
+        condition.setUsername("member1");
+
+        SearchPlan plan = searchPlanExplainer.explain(condition, Sort.unsorted(), false);
+
+        assertThat(plan.getShape()).isEqualTo("username");
+        assertThat(plan.getJpql()).contains("member1.username = ?1");
+        assertThat(plan.getParameters()).containsExactly("member1");
+        assertThat(plan.getPlan()).containsIgnoringCase("IDX_MEMBER_USERNAME");
+        assertThat(plan.getTableScans()).doesNotContain("PUBLIC.MEMBER");
+        assertThat(plan.getEstimatedRows()).containsKey("PUBLIC.MEMBER");
+    }
+
+    @Test
+    public void ignoreCaseUsesLowerIndex() {
+        MemberSearchCondition condition = new MemberSearchCondition();
+        condition.setUsername("Member1");
+        condition.setIgnoreCase(true);
+
+        SearchPlan plan = searchPlanExplainer.explain(condition, Sort.unsorted(), false);
+
+        assertThat(plan.getShape()).isEqualTo("usernameIgnoreCase");
+        assertThat(plan.getParameters()).containsExactly("member1");
+        assertThat(plan.getPlan()).containsIgnoringCase("IDX_MEMBER_USERNAME_LOWER");
+        assertThat(plan.isFullScan()).isFalse();
+    }
+
+    @Test
+    public void teamNameStartsFromTeamIndex() {
+        MemberSearchCondition condition = new MemberSearchCondition();
+        condition.setTeamName("teamA");
+
+        SearchPlan plan = searchPlanExplainer.explain(condition, Sort.by("age"), false);
+
+        // 팀 조건이 있으면 inner join -> team.name 인덱스로 팀을 찾고 member.team_id 인덱스로 회원을 찾는다
+        assertThat(plan.getShape()).isEqualTo("teamName sort=age");
+        assertThat(plan.getSql()).doesNotContainIgnoringCase("left outer join");
+        assertThat(plan.getPlan()).containsIgnoringCase("IDX_TEAM_NAME");
+        assertThat(plan.getTableScans()).doesNotContain("PUBLIC.MEMBER", "PUBLIC.TEAM");
+    }
+
+    @Test
+    public void sortWithoutFilterReadsInIndexOrder() {
+        SearchPlan byUsername = searchPlanExplainer.explain(new MemberSearchCondition(), Sort.by("username"), false);
+        SearchPlan byAgeDesc = searchPlanExplainer.explain(new MemberSearchCondition(), Sort.by(Sort.Direction.DESC, "age"), false);
+        SearchPlan byIdDesc = searchPlanExplainer.explain(new MemberSearchCondition(), Sort.by(Sort.Direction.DESC, "memberId"), false);
+
+        // 조건이 없어도 (정렬 컬럼, member_id) 인덱스 순서대로 읽어서 정렬하지 않는다
+        assertThat(byUsername.getPlan()).containsIgnoringCase("IDX_MEMBER_USERNAME").containsIgnoringCase("index sorted");
+        assertThat(byAgeDesc.getPlan()).containsIgnoringCase("IDX_MEMBER_AGE_DESC").containsIgnoringCase("index sorted");
+        assertThat(byIdDesc.getPlan()).containsIgnoringCase("IDX_MEMBER_ID_DESC").containsIgnoringCase("index sorted");
+    }
+
+    @Test
+    public void sortByTeamNameNeedsTeamFilter() {
+        // team.name 순서로 member 를 읽을 인덱스가 없으므로 팀 조건 없이는 받지 않는다
+        assertThatThrownBy(() -> searchPlanExplainer.explain(new MemberSearchCondition(), Sort.by("teamName"), false))
+                .isInstanceOf(BadRequestException.class);
+
+        MemberSearchCondition condition = new MemberSearchCondition();
+        condition.setTeamName("teamA");
+        SearchPlan plan = searchPlanExplainer.explain(condition, Sort.by("teamName"), false);
+        assertThat(plan.getTableScans()).doesNotContain("PUBLIC.MEMBER", "PUBLIC.TEAM");
+    }
+
+    @Test
+    public void listConditionIsExpandedLikeHibernate() {
+        MemberSearchCondition condition = new MemberSearchCondition();
+        condition.setUsernames(List.of("member1", "member2", "member3"));
+
+        SearchPlan plan = searchPlanExplainer.explain(condition, Sort.unsorted(), false);
+
+        // 3 개 -> 4 개로 채워서 (?1, ?2, ?3, ?4) 로 펼친다. 목록 하나를 ? 하나에 바인딩하지 않는다
+        assertThat(plan.getQueries()).isEqualTo(1);
+        assertThat(plan.getJpql()).contains("in (?1, ?2, ?3, ?4)");
+        assertThat(plan.getParameters()).containsExactly("member1", "member2", "member3", "member3");
+        assertThat(plan.getPlan()).containsIgnoringCase("IDX_MEMBER_USERNAME");
+    }
+
+    @Test
+    public void longListExplainsFirstSplitQuery() {
+        List<Long> ids = new ArrayList<>();
+        for (long i = 1; i <= 300; i++) {
+            ids.add(i);
+        }
+        MemberSearchCondition condition = new MemberSearchCondition();
+        condition.setMemberIds(ids);
+        condition.setAgeGoe(10);
+
+        SearchPlan plan = searchPlanExplainer.explain(condition, Sort.unsorted(), false);
+
+        // search 는 256 + 44(-> 64) 두 번 보낸다. 계획은 첫 번째(256 개) 쿼리
+        assertThat(plan.getQueries()).isEqualTo(2);
+        assertThat(plan.getParameters()).hasSize(256 + 1);
+        assertThat(plan.getParameters().get(0)).isEqualTo(10);
+        assertThat(plan.getParameters().subList(1, 257)).isEqualTo(new ArrayList<Object>(ids.subList(0, 256)));
+    }
+}
@@ -0,0 +1,277 @@
+package study.querydsl.loadtest;
+
+import org.HdrHistogram.ConcurrentHistogram;
+import org.HdrHistogram.Histogram;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * /v1/members 검색 API 부하 생성기
+ *
+ * 로컬에서 local 프로파일로 띄운 애플리케이션(InitMember 샘플 데이터: member0~99, teamA/teamB)을 대상으로
+ * 여러 MemberSearchCondition 모양을 섞어서 요청을 보내고 p50/p95/p99/max 지연시간과 처리량을 출력한다.
+ *
+ * 실행: gradle loadTest -Ploadtest.concurrency=16 -Ploadtest.durationSeconds=60
+ *
+ * 옵션 (-Ploadtest.xxx 또는 -Dloadtest.xxx)
+ * - baseUrl          : 대상 서버 (기본 http://localhost:8080)
+ * - concurrency      : 동시 요청 스레드 수 (기본 8)
+ * - warmupSeconds    : 측정 전 워밍업 시간 (기본 5)
+ * - durationSeconds  : 측정 시간 (기본 30)
+ * - mix              : 조건 모양별 가중치 (기본 ALL=1,TEAM=3,AGE_RANGE=2,USERNAME=1,TEAM_AGE=3)
+ * - baseline         : 베이스라인 파일 경로 (기본 build/loadtest/baseline.properties)
+ * - saveBaseline     : true 이면 이번 결과를 베이스라인으로 저장
+ *
+ * 결과는 항상 build/loadtest/last-run.properties 에 저장되고, 베이스라인 파일이 있으면 항목별 변화율을 같이 출력한다.
+ * 응답을 받은 뒤 다음 요청을 보내는 closed-loop 방식이라 서버가 느려지면 요청 수 자체가 줄어든다 (coordinated omission)
+ * 그래서 지연시간만 보지 말고 처리량도 같이 비교해야 한다.
+ */
+public class MemberSearchLoadGenerator {
+
+    private static final long HIGHEST_TRACKABLE_NANOS = TimeUnit.MINUTES.toNanos(1);
+
+    enum ConditionShape {
+        ALL {
+            @Override
+            String query(ThreadLocalRandom random) {
+                return "";
+            }
+        },
+        TEAM {
+            @Override
+            String query(ThreadLocalRandom random) {
+                return "teamName=" + team(random);
+            }
+        },
+        AGE_RANGE {
+            @Override
+            String query(ThreadLocalRandom random) {
+                int goe = random.nextInt(0, 90);
+                return "ageGoe=" + goe + "&ageLoe=" + (goe + 10);
+            }
+        },
+        USERNAME {
+            @Override
+            String query(ThreadLocalRandom random) {
+                return "username=member" + random.nextInt(0, 100);
+            }
+        },
+        TEAM_AGE {
+            @Override
+            String query(ThreadLocalRandom random) {
+                int goe = random.nextInt(0, 90);
+                return "teamName=" + team(random) + "&ageGoe=" + goe + "&ageLoe=" + (goe + 10);
+            }
+        };
+
+        abstract String query(ThreadLocalRandom random);
+
+        private static String team(ThreadLocalRandom random) {
+            return random.nextBoolean() ? "teamA" : "teamB";
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        String baseUrl = option("baseUrl", "http://localhost:8080");
+        int concurrency = Integer.parseInt(option("concurrency", "8"));
+        int warmupSeconds = Integer.parseInt(option("warmupSeconds", "5"));
+        int durationSeconds = Integer.parseInt(option("durationSeconds", "30"));
+        List<ConditionShape> mix = parseMix(option("mix", "ALL=1,TEAM=3,AGE_RANGE=2,USERNAME=1,TEAM_AGE=3"));
+        Path baselinePath = Paths.get(option("baseline", "build/loadtest/baseline.properties"));
+        boolean saveBaseline = Boolean.parseBoolean(option("saveBaseline", "false"));
+
+        HttpClient client = HttpClient.newBuilder()
+                .connectTimeout(Duration.ofSeconds(5))
+                .executor(Executors.newFixedThreadPool(concurrency))
+                .build();
+
+        System.out.printf("target=%s concurrency=%d warmup=%ds duration=%ds%n",
+                baseUrl, concurrency, warmupSeconds, durationSeconds);
+
+        // 워밍업 구간 결과는 버린다 (JIT, 커넥션 풀, 하이버네이트 쿼리 플랜 캐시)
+        run(client, baseUrl, concurrency, warmupSeconds, mix);
+        Result result = run(client, baseUrl, concurrency, durationSeconds, mix);
+
+        Properties current = result.toProperties();
+        result.print();
+
+        if (Files.exists(baselinePath)) {
+            printDiff(load(baselinePath), current);
+        }
+
+        store(Paths.get("build/loadtest/last-run.properties"), current);
+        if (saveBaseline) {
+            store(baselinePath, current);
+            System.out.println("baseline saved: " + baselinePath.toAbsolutePath());
+        }
+        System.exit(0);
+    }
+
+    private static Result run(HttpClient client, String baseUrl, int concurrency, int seconds,
+                              List<ConditionShape> mix) throws InterruptedException {
+        Result result = new Result();
+        long endAt = System.nanoTime() + TimeUnit.SECONDS.toNanos(seconds);
+
+        ExecutorService workers = Executors.newFixedThreadPool(concurrency);
+        long startedAt = System.nanoTime();
+        for (int i = 0; i < concurrency; i++) {
+            workers.execute(() -> {
+                ThreadLocalRandom random = ThreadLocalRandom.current();
+                while (System.nanoTime() < endAt) {
+                    ConditionShape shape = mix.get(random.nextInt(mix.size()));
+                    HttpRequest request = HttpRequest.newBuilder(URI.create(baseUrl + "/v1/members?" + shape.query(random)))
+                            .timeout(Duration.ofSeconds(30))
+                            .GET()
+                            .build();
+                    long start = System.nanoTime();
+                    try {
+                        HttpResponse<Void> response = client.send(request, HttpResponse.BodyHandlers.discarding());
+                        long elapsed = System.nanoTime() - start;
+                        if (response.statusCode() / 100 == 2) {
+                            result.record(shape, elapsed);
+                        } else {
+                            result.errors.increment();
+                        }
+                    } catch (IOException e) {
+                        result.errors.increment();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        return;
+                    }
+                }
+            });
+        }
+        workers.shutdown();
+        workers.awaitTermination(seconds + 60L, TimeUnit.SECONDS);
+        result.elapsedNanos = System.nanoTime() - startedAt;
+        return result;
+    }
+
+    static class Result {
+        final Histogram overall = new ConcurrentHistogram(HIGHEST_TRACKABLE_NANOS, 3);
+        final Map<ConditionShape, Histogram> byShape = new EnumMap<>(ConditionShape.class);
+        final LongAdder errors = new LongAdder();
+        long elapsedNanos;
+
+        Result() {
+            for (ConditionShape shape : ConditionShape.values()) {
+                byShape.put(shape, new ConcurrentHistogram(HIGHEST_TRACKABLE_NANOS, 3));
+            }
+        }
+
+        void record(ConditionShape shape, long nanos) {
+            long value = Math.min(nanos, HIGHEST_TRACKABLE_NANOS);
+            overall.recordValue(value);
+            byShape.get(shape).recordValue(value);
+        }
+
+        double throughput() {
+            return overall.getTotalCount() / (elapsedNanos / 1_000_000_000.0);
+        }
+
+        void print() {
+            System.out.printf("%-10s %10s %10s %10s %10s %10s%n", "shape", "count", "p50(ms)", "p95(ms)", "p99(ms)", "max(ms)");
+            printRow("overall", overall);
+            byShape.forEach((shape, histogram) -> printRow(shape.name(), histogram));
+            System.out.printf("throughput = %.1f req/s, errors = %d%n", throughput(), errors.sum());
+        }
+
+        private void printRow(String name, Histogram histogram) {
+            System.out.printf("%-10s %10d %10.2f %10.2f %10.2f %10.2f%n", name, histogram.getTotalCount(),
+                    millis(histogram.getValueAtPercentile(50)), millis(histogram.getValueAtPercentile(95)),
+                    millis(histogram.getValueAtPercentile(99)), millis(histogram.getMaxValue()));
+        }
+
+        Properties toProperties() {
+            Properties properties = new Properties();
+            properties.setProperty("throughput", String.format("%.1f", throughput()));
+            properties.setProperty("errors", String.valueOf(errors.sum()));
+            put(properties, "overall", overall);
+            byShape.forEach((shape, histogram) -> put(properties, shape.name(), histogram));
+            return properties;
+        }
+
+        private void put(Properties properties, String name, Histogram histogram) {
+            properties.setProperty(name + ".count", String.valueOf(histogram.getTotalCount()));
+            properties.setProperty(name + ".p50", String.format("%.3f", millis(histogram.getValueAtPercentile(50))));
+            properties.setProperty(name + ".p95", String.format("%.3f", millis(histogram.getValueAtPercentile(95))));
+            properties.setProperty(name + ".p99", String.format("%.3f", millis(histogram.getValueAtPercentile(99))));
+            properties.setProperty(name + ".max", String.format("%.3f", millis(histogram.getMaxValue())));
+        }
+    }
+
+    private static void printDiff(Properties baseline, Properties current) {
+        System.out.println("--- diff against baseline ---");
+        current.stringPropertyNames().stream().sorted().forEach(key -> {
+            String before = baseline.getProperty(key);
+            if (before == null || key.endsWith(".count")) {
+                return;
+            }
+            double b = Double.parseDouble(before);
+            double c = Double.parseDouble(current.getProperty(key));
+            double change = b == 0 ? 0 : (c - b) / b * 100;
+            System.out.printf("%-20s %10s -> %10s (%+.1f%%)%n", key, before, current.getProperty(key), change);
+        });
+    }
+
+    private static List<ConditionShape> parseMix(String mix) {
+        List<ConditionShape> weighted = new ArrayList<>();
+        for (String entry : mix.split(",")) {
+            String[] pair = entry.trim().split("=");
+            ConditionShape shape = ConditionShape.valueOf(pair[0].trim());
+            int weight = pair.length > 1 ? Integer.parseInt(pair[1].trim()) : 1;
+            for (int i = 0; i < weight; i++) {
+                weighted.add(shape);
+            }
+        }
+        if (weighted.isEmpty()) {
+            throw new IllegalArgumentException("loadtest.mix is empty");
+        }
+        return weighted;
+    }
+
+    private static String option(String name, String defaultValue) {
+        return System.getProperty("loadtest." + name, defaultValue);
+    }
+
+    private static double millis(long nanos) {
+        return nanos / 1_000_000.0;
+    }
+
+    private static Properties load(Path path) throws IOException {
+        Properties properties = new Properties();
+        try (Reader reader = Files.newBufferedReader(path)) {
+            properties.load(reader);
+        }
+        return properties;
+    }
+
+    private static void store(Path path, Properties properties) throws IOException {
+        if (path.getParent() != null) {
+            Files.createDirectories(path.getParent());
+        }
+        try (Writer writer = Files.newBufferedWriter(path)) {
+            properties.store(writer, "member search load test");
+        }
+    }
+}
@@ -0,0 +1,108 @@
+package study.querydsl.repository;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import study.querydsl.dto.MemberSearchCondition;
+import study.querydsl.entity.Member;
+import study.querydsl.entity.Team;
+
+import javax.persistence.EntityManager;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * forEachChunk 는 청크마다 별도 트랜잭션으로 커밋하므로 테스트 데이터도 커밋해서 넣고, 끝나면 지운다
+ */
+@SpringBootTest
+class MemberChunkProcessingTest {
+
+    private static final String TEAM_NAME = "chunkTeam";
+
+    @Autowired
+    EntityManager em;
+
+    @Autowired
+    MemberJpaRepository memberJpaRepository;
+
+    @Autowired
+    PlatformTransactionManager transactionManager;
+
+    TransactionTemplate tx;
+    List<Long> memberIds = new ArrayList<>();
+    MemberSearchCondition condition = new MemberSearchCondition();
+
+    @BeforeEach
+    public void before() {
+        tx = new TransactionTemplate(transactionManager);
+        tx.executeWithoutResult(status -> {
+            Team team = new Team(TEAM_NAME);
+            em.persist(team);
+            for (int i = 0; i < 10; i++) {
+                Member member = new Member("chunk" + i, i, team);
+                em.persist(member);
+                memberIds.add(member.getId());
+            }
+        });
+        condition.setTeamName(TEAM_NAME);
+    }
+
+    @AfterEach
+    public void after() {
+        tx.executeWithoutResult(status -> {
+            em.createQuery("delete from Member m where m.id in :ids").setParameter("ids", memberIds).executeUpdate();
+            em.createQuery("delete from Team t where t.name = :name").setParameter("name", TEAM_NAME).executeUpdate();
+        });
+    }
+
+    @Test
+    public void forEachChunkCommitsEveryChunk() {
+        List<Integer> chunkSizes = new ArrayList<>();
+        List<Long> checkpoints = new ArrayList<>();
+
+        long processed = memberJpaRepository.forEachChunk(condition, 3, null, chunk -> {
+            chunkSizes.add(chunk.size());
+            chunk.forEach(m -> m.setAge(m.getAge() + 100));
+        }, checkpoints::add);
+
+        assertThat(processed).isEqualTo(10);
+        assertThat(chunkSizes).containsExactly(3, 3, 3, 1);
+        assertThat(checkpoints).last().isEqualTo(memberIds.get(9));
+
+        List<Integer> ages = tx.execute(status -> em
+                .createQuery("select m.age from Member m where m.id in :ids order by m.id", Integer.class)
+                .setParameter("ids", memberIds)
+                .getResultList());
+        assertThat(ages).containsExactly(100, 101, 102, 103, 104, 105, 106, 107, 108, 109);
+    }
+
+    @Test
+    public void forEachChunkResumesFromCheckpoint() {
+        List<Long> visited = new ArrayList<>();
+
+        long processed = memberJpaRepository.forEachChunk(condition, 4, memberIds.get(5),
+                chunk -> chunk.forEach(m -> visited.add(m.getId())), lastId -> {
+                });
+
+        assertThat(processed).isEqualTo(4);
+        assertThat(visited).containsExactlyElementsOf(memberIds.subList(6, 10));
+    }
+
+    @Test
+    public void forEachChunkParallel() {
+        List<Long> visited = Collections.synchronizedList(new ArrayList<>());
+
+        long processed = memberJpaRepository.forEachChunkParallel(condition, 2, 3,
+                chunk -> chunk.forEach(m -> visited.add(m.getId())));
+
+        assertThat(processed).isEqualTo(10);
+        assertThat(visited).containsExactlyInAnyOrderElementsOf(memberIds);
+    }
+}
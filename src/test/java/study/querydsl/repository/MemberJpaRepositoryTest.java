@@ -1,19 +1,29 @@
 package study.querydsl.repository;
 
+import com.querydsl.jpa.JPAExpressions;
+import com.querydsl.jpa.impl.JPAQueryFactory;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.data.domain.Sort;
 import study.querydsl.dto.MemberSearchCondition;
+import study.querydsl.dto.MemberTeamAgeDto;
 import study.querydsl.dto.MemberTeamDto;
 import study.querydsl.entity.Member;
+import study.querydsl.entity.QMember;
 import study.querydsl.entity.Team;
+import study.querydsl.support.BadRequestException;
+import study.querydsl.support.QueryBudget;
 
 import javax.persistence.EntityManager;
 import javax.transaction.Transactional;
 
+import java.util.ArrayList;
 import java.util.List;
 
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static study.querydsl.entity.QMember.member;
 
 @SpringBootTest
 @Transactional
@@ -26,6 +36,7 @@ class MemberJpaRepositoryTest {
     MemberJpaRepository memberJpaRepository;
 
     @Test
+    @QueryBudget(selects = 2)
     public void basicTest() {
         Member member = new Member("member1", 10);
         memberJpaRepository.save(member);
@@ -41,6 +52,7 @@ class MemberJpaRepositoryTest {
     }
 
     @Test
+    @QueryBudget(selects = 2)
     public void basicQuerydslTest() throws Exception {
         Member member = new Member("member1", 10);
         memberJpaRepository.save(member);
@@ -56,6 +68,7 @@ class MemberJpaRepositoryTest {
     }
 
     @Test
+    @QueryBudget(selects = 1)
     public void searchTest1() throws Exception {
         Team teamA = new Team("teamA");
         Team teamB = new Team("teamB");
@@ -85,6 +98,7 @@ class MemberJpaRepositoryTest {
 
 
     @Test
+    @QueryBudget(selects = 1)
     public void searchTest2() throws Exception {
         Team teamA = new Team("teamA");
         Team teamB = new Team("teamB");
@@ -112,4 +126,178 @@ class MemberJpaRepositoryTest {
         assertThat(result).extracting("username").containsExactly("member4");
     }
 
-}
\ No newline at end of file
+    @Test
+    @QueryBudget(selects = 2)
+    public void findAllByIdsTest() throws Exception {
+        Team teamA = new Team("teamA");
+        em.persist(teamA);
+
+        Member member1 = new Member("member1", 10, teamA);
+        Member member2 = new Member("member2", 20, teamA);
+        Member member3 = new Member("member3", 30, null);
+        em.persist(member1);
+        em.persist(member2);
+        em.persist(member3);
+        em.flush();
+        em.clear();
+
+        // member2 는 영속성 컨텍스트에 올려두고, 나머지는 IN 절로 조회된다
+        memberJpaRepository.findById(member2.getId());
+
+        List<Member> result = memberJpaRepository.findAllByIds(
+                List.of(member3.getId(), -1L, member2.getId(), member1.getId(), member3.getId()));
+
+        assertThat(result).extracting("username").containsExactly("member3", "member2", "member1");
+    }
+
+    @Test
+    @QueryBudget(selects = 1)
+    public void findDtosByIdsTest() throws Exception {
+        Team teamA = new Team("teamA");
+        em.persist(teamA);
+        Member member1 = new Member("member1", 10, teamA);
+        Member member2 = new Member("member2", 20, null);
+        em.persist(member1);
+        em.persist(member2);
+        em.flush();
+        em.clear();
+
+        List<MemberTeamDto> result = memberJpaRepository.findDtosByIds(List.of(member2.getId(), -1L, member1.getId()));
+
+        assertThat(result).extracting("username").containsExactly("member2", "member1");
+        assertThat(result).extracting("teamName").containsExactly(null, "teamA");
+    }
+
+    @Test
+    @QueryBudget(selects = 2)
+    public void searchIgnoreCaseTest() throws Exception {
+        Team teamA = new Team("teamA");
+        em.persist(teamA);
+        em.persist(new Member("Member1", 10, teamA));
+        em.persist(new Member("member1", 20, teamA));
+        em.persist(new Member("member2", 30, teamA));
+
+        MemberSearchCondition condition = new MemberSearchCondition();
+        condition.setUsername("MEMBER1");
+
+        assertThat(memberJpaRepository.search(condition)).isEmpty();
+
+        condition.setIgnoreCase(true);
+        assertThat(memberJpaRepository.search(condition, Sort.by("age")))
+                .extracting("username").containsExactly("Member1", "member1");
+    }
+
+    @Test
+    @QueryBudget(selects = 3)
+    public void searchInListTest() throws Exception {
+        Team teamA = new Team("teamA");
+        Team teamB = new Team("teamB");
+        Team teamC = new Team("teamC");
+        em.persist(teamA);
+        em.persist(teamB);
+        em.persist(teamC);
+        Member member1 = new Member("member1", 10, teamA);
+        Member member2 = new Member("member2", 20, teamB);
+        Member member3 = new Member("member3", 30, teamC);
+        em.persist(member1);
+        em.persist(member2);
+        em.persist(member3);
+
+        MemberSearchCondition condition = new MemberSearchCondition();
+        condition.setTeamNames(List.of("teamB", "teamA", "teamA", " "));
+
+        assertThat(memberJpaRepository.search(condition, Sort.by("age")))
+                .extracting("username").containsExactly("member1", "member2");
+
+        // 256 개가 넘으면 두 번으로 나눠 보낸다
+        List<Long> ids = new ArrayList<>();
+        for (long i = 1; i <= 300; i++) {
+            ids.add(-i);
+        }
+        ids.add(member1.getId());
+        ids.add(member3.getId());
+        MemberSearchCondition byIds = new MemberSearchCondition();
+        byIds.setMemberIds(ids);
+
+        assertThat(memberJpaRepository.search(byIds, Sort.by("age")))
+                .extracting("username").containsExactly("member1", "member3");
+    }
+
+    @Test
+    @QueryBudget(max = 0)
+    public void searchRejectsBlankOnlyList() throws Exception {
+        // usernames= 처럼 빈 값만 오면 조건 없음(전체 회원)이 되지 않고 거절한다
+        MemberSearchCondition condition = new MemberSearchCondition();
+        condition.setUsernames(List.of(" ", ""));
+
+        assertThatThrownBy(() -> memberJpaRepository.search(condition))
+                .isInstanceOf(BadRequestException.class)
+                .hasMessageContaining("usernames");
+    }
+
+    @Test
+    @QueryBudget(selects = 1)
+    public void searchSortTest() throws Exception {
+        Team teamA = new Team("teamA");
+        em.persist(teamA);
+        em.persist(new Member(null, 100, teamA));
+        em.persist(new Member("member5", 100, teamA));
+        em.persist(new Member("member6", 100, teamA));
+        em.persist(new Member("member7", 50, teamA));
+
+        MemberSearchCondition condition = new MemberSearchCondition();
+        condition.setAgeGoe(50);
+
+        List<MemberTeamDto> result = memberJpaRepository.search(condition,
+                Sort.by(Sort.Order.desc("age"), Sort.Order.asc("username")));
+
+        assertThat(result).extracting("username").containsExactly("member5", "member6", null, "member7");
+    }
+
+    @Test
+    @QueryBudget(max = 0)
+    public void searchSortRejectsUnknownKey() throws Exception {
+        assertThatThrownBy(() -> memberJpaRepository.search(new MemberSearchCondition(), Sort.by("teamId")))
+                .isInstanceOf(BadRequestException.class);
+    }
+
+    /**
+     * 팀별 집계를 붙인 결과가 상관 서브쿼리로 구한 결과와 같아야 한다
+     */
+    @Test
+    @QueryBudget(selects = 3)
+    public void searchAboveTeamAverageTest() throws Exception {
+        Team teamA = new Team("teamA");
+        Team teamB = new Team("teamB");
+        em.persist(teamA);
+        em.persist(teamB);
+        em.persist(new Member("member1", 10, teamA));
+        em.persist(new Member("member2", 20, teamA));
+        em.persist(new Member("member3", 30, teamB));
+        em.persist(new Member("member4", 40, teamB));
+        em.persist(new Member("member5", 60, teamB));
+        em.persist(new Member("member6", 99, null));
+        em.flush();
+        em.clear();
+
+        QMember memberSub = new QMember("memberSub");
+        List<String> expected = new JPAQueryFactory(em)
+                .select(member.username)
+                .from(member)
+                .where(member.age.goe(
+                        JPAExpressions.select(memberSub.age.avg())
+                                .from(memberSub)
+                                .where(memberSub.team.eq(member.team))))
+                .orderBy(member.id.asc())
+                .fetch();
+
+        List<MemberTeamAgeDto> result = memberJpaRepository.searchAboveTeamAverage(
+                new MemberSearchCondition(), Sort.by("memberId"));
+
+        assertThat(result).extracting("username").containsExactlyElementsOf(expected);
+        // teamA 평균 15, teamB 평균 43.3, 팀 없는 member6 은 제외
+        assertThat(result).extracting("username").containsExactly("member2", "member5");
+        assertThat(result).extracting("teamMaxAge").containsExactly(20, 60);
+    }
+
+}
@@ -7,6 +7,7 @@ import study.querydsl.dto.MemberSearchCondition;
 import study.querydsl.dto.MemberTeamDto;
 import study.querydsl.entity.Member;
 import study.querydsl.entity.Team;
+import study.querydsl.support.QueryBudget;
 
 import javax.persistence.EntityManager;
 import javax.transaction.Transactional;
@@ -27,6 +28,7 @@ class MemberRepositoryTest {
     MemberRepository memberRepository;
 
     @Test
+    @QueryBudget(selects = 2)
     public void basicTest() {
         Member member = new Member("member1", 10);
         memberRepository.save(member);
@@ -42,6 +44,7 @@ class MemberRepositoryTest {
     }
 
     @Test
+    @QueryBudget(selects = 1)
     public void searchTest1() throws Exception {
         Team teamA = new Team("teamA");
         Team teamB = new Team("teamB");
@@ -0,0 +1,191 @@
+package study.querydsl.repository;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import study.querydsl.changefeed.ChangeFeedRepository;
+import study.querydsl.changefeed.ChangeLogWriter;
+import study.querydsl.entity.Member;
+import study.querydsl.entity.Team;
+import study.querydsl.support.BadRequestException;
+
+import javax.persistence.EntityManager;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * 버퍼는 별도 트랜잭션으로 커밋하므로 테스트 데이터도 커밋해서 넣고, 끝나면 지운다
+ * 스케줄러가 끼어들지 않게 window 를 길게 잡고 flush() 를 직접 부른다
+ */
+@SpringBootTest
+class MemberWriteBehindBufferTest {
+
+    private static final long NO_SCHEDULED_FLUSH = 60_000;
+
+    @Autowired
+    EntityManager em;
+
+    @Autowired
+    JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    ChangeLogWriter changeLogWriter;
+
+    @Autowired
+    ChangeFeedRepository changeFeedRepository;
+
+    @Autowired
+    PlatformTransactionManager transactionManager;
+
+    @Autowired
+    TeamJpaRepository teamJpaRepository;
+
+    TransactionTemplate tx;
+    MeterRegistry meterRegistry = new SimpleMeterRegistry();
+    ExecutorService callers = Executors.newFixedThreadPool(2);
+    List<MemberWriteBehindBuffer> buffers = new ArrayList<>();
+    Long teamId;
+    Long otherTeamId;
+    Long member1;
+    Long member2;
+    long since;
+
+    @BeforeEach
+    public void before() {
+        tx = new TransactionTemplate(transactionManager);
+        tx.executeWithoutResult(status -> {
+            Team team = new Team("writeBehindTeam");
+            Team otherTeam = new Team("writeBehindOtherTeam");
+            em.persist(team);
+            em.persist(otherTeam);
+            Member m1 = new Member("writeBehind1", 10, team);
+            Member m2 = new Member("writeBehind2", 20, team);
+            em.persist(m1);
+            em.persist(m2);
+            teamId = team.getId();
+            otherTeamId = otherTeam.getId();
+            member1 = m1.getId();
+            member2 = m2.getId();
+        });
+        since = changeFeedRepository.latestVersion();
+    }
+
+    @AfterEach
+    public void after() {
+        buffers.forEach(MemberWriteBehindBuffer::shutdown);
+        callers.shutdownNow();
+        tx.executeWithoutResult(status -> {
+            em.createQuery("delete from Member m where m.id in :ids").setParameter("ids", List.of(member1, member2)).executeUpdate();
+            em.createQuery("delete from Team t where t.id in :ids").setParameter("ids", List.of(teamId, otherTeamId)).executeUpdate();
+        });
+    }
+
+    @Test
+    public void unknownMemberIsNotSuccessAndNotRecorded() {
+        MemberWriteBehindBuffer buffer = buffer(false, MemberWriteBehindBuffer.Durability.SYNCHRONOUS);
+
+        assertThatThrownBy(() -> buffer.submit(-1L, 30, null))
+                .isInstanceOf(BadRequestException.class)
+                .hasMessageContaining("member not found");
+
+        buffer.submit(member1, 30, null);
+        assertThat(age(member1)).isEqualTo(30);
+        assertThat(changeFeedRepository.findSince(since, 100)).extracting("entityId").containsExactly(member1);
+    }
+
+    @Test
+    public void badRowFailsAloneInMergedBatch() throws Exception {
+        MemberWriteBehindBuffer buffer = buffer(true, MemberWriteBehindBuffer.Durability.SYNCHRONOUS);
+
+        Future<?> valid = callers.submit(() -> buffer.submit(member1, 99, null));
+        // 없는 팀 -> member.team_id FK 위반
+        Future<?> invalid = callers.submit(() -> buffer.submit(member2, 50, -5L));
+        awaitPending(2);
+        buffer.flush();
+
+        valid.get(5, TimeUnit.SECONDS);
+        assertThatThrownBy(() -> invalid.get(5, TimeUnit.SECONDS))
+                .isInstanceOf(ExecutionException.class)
+                .hasCauseInstanceOf(BadRequestException.class);
+
+        assertThat(age(member1)).isEqualTo(99);
+        assertThat(age(member2)).isEqualTo(20);
+        assertThat(changeFeedRepository.findSince(since, 100)).extracting("entityId").containsExactly(member1);
+        assertThat(meterRegistry.counter("member.writebehind.failed.rows").count()).isEqualTo(1);
+    }
+
+    @Test
+    public void teamChangeMovesMemberCount() {
+        MemberWriteBehindBuffer buffer = buffer(false, MemberWriteBehindBuffer.Durability.SYNCHRONOUS);
+
+        buffer.submit(member1, null, otherTeamId);
+
+        // JDBC update 라 이벤트가 없어도 커밋할 때 원래 팀에서 빼고 새 팀에 더한다
+        assertThat(teamJpaRepository.countMembers(teamId)).contains(1L);
+        assertThat(teamJpaRepository.countMembers(otherTeamId)).contains(1L);
+    }
+
+    @Test
+    public void asyncFailureIsCountedNotSwallowed() {
+        MemberWriteBehindBuffer buffer = buffer(true, MemberWriteBehindBuffer.Durability.FLUSH_ON_SHUTDOWN);
+
+        buffer.submit(member1, 77, null);
+        buffer.submit(-1L, 77, null);
+        buffer.flush();
+
+        assertThat(age(member1)).isEqualTo(77);
+        // 없는 회원은 다시 넣지 않고 실패로 남긴다
+        assertThat(meterRegistry.counter("member.writebehind.failed.rows").count()).isEqualTo(1);
+        assertThat(meterRegistry.get("member.writebehind.pending").gauge().value()).isZero();
+    }
+
+    @Test
+    public void shutdownFlushesAndRejectsLaterSubmits() {
+        MemberWriteBehindBuffer buffer = buffer(true, MemberWriteBehindBuffer.Durability.FLUSH_ON_SHUTDOWN);
+
+        buffer.submit(member2, 55, null);
+        buffer.shutdown();
+
+        assertThat(age(member2)).isEqualTo(55);
+        assertThatThrownBy(() -> buffer.submit(member2, 56, null))
+                .isInstanceOf(RejectedExecutionException.class);
+        assertThat(meterRegistry.counter("member.writebehind.rejected").count()).isEqualTo(1);
+    }
+
+    private MemberWriteBehindBuffer buffer(boolean enabled, MemberWriteBehindBuffer.Durability durability) {
+        MemberWriteBehindBuffer buffer = new MemberWriteBehindBuffer(jdbcTemplate, changeLogWriter, transactionManager,
+                meterRegistry, enabled, NO_SCHEDULED_FLUSH, 100, 1000, durability);
+        buffers.add(buffer);
+        return buffer;
+    }
+
+    private void awaitPending(int count) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (meterRegistry.get("member.writebehind.pending").gauge().value() < count) {
+            if (System.nanoTime() > deadline) {
+                throw new AssertionError("updates were not buffered");
+            }
+            Thread.sleep(10);
+        }
+    }
+
+    private Integer age(Long memberId) {
+        return jdbcTemplate.queryForObject("select age from member where member_id = ?", Integer.class, memberId);
+    }
+}
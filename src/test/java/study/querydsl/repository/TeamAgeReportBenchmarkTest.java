@@ -0,0 +1,78 @@
+package study.querydsl.repository;
+
+import com.querydsl.jpa.JPAExpressions;
+import com.querydsl.jpa.impl.JPAQueryFactory;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.data.domain.Sort;
+import study.querydsl.dto.MemberSearchCondition;
+import study.querydsl.dto.MemberTeamAgeDto;
+import study.querydsl.entity.Member;
+import study.querydsl.entity.QMember;
+import study.querydsl.entity.Team;
+
+import javax.persistence.EntityManager;
+import javax.transaction.Transactional;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static study.querydsl.entity.QMember.member;
+
+/**
+ * 팀 평균 이상 회원 조회: 상관 서브쿼리 vs 팀별 집계 join (결과는 출력만 한다)
+ */
+@Tag("benchmark")
+@SpringBootTest
+@Transactional
+class TeamAgeReportBenchmarkTest {
+
+    private static final int TEAM_COUNT = 20;
+    private static final int MEMBER_COUNT = 20_000;
+
+    @Autowired
+    EntityManager em;
+
+    @Autowired
+    MemberJpaRepository memberJpaRepository;
+
+    @Test
+    public void aboveTeamAverage() throws Exception {
+        Team[] teams = new Team[TEAM_COUNT];
+        for (int i = 0; i < TEAM_COUNT; i++) {
+            teams[i] = new Team("team" + i);
+            em.persist(teams[i]);
+        }
+        for (int i = 0; i < MEMBER_COUNT; i++) {
+            em.persist(new Member("member" + i, (i * 31) % 100, teams[i % TEAM_COUNT]));
+        }
+        em.flush();
+        em.clear();
+
+        QMember memberSub = new QMember("memberSub");
+        JPAQueryFactory queryFactory = new JPAQueryFactory(em);
+
+        long start = System.nanoTime();
+        List<Long> subQuery = queryFactory
+                .select(member.id)
+                .from(member)
+                .where(member.age.goe(
+                        JPAExpressions.select(memberSub.age.avg())
+                                .from(memberSub)
+                                .where(memberSub.team.eq(member.team))))
+                .orderBy(member.id.asc())
+                .fetch();
+        long subQueryMillis = (System.nanoTime() - start) / 1_000_000;
+
+        start = System.nanoTime();
+        List<MemberTeamAgeDto> report = memberJpaRepository.searchAboveTeamAverage(
+                new MemberSearchCondition(), Sort.by("memberId"));
+        long reportMillis = (System.nanoTime() - start) / 1_000_000;
+
+        System.out.printf("correlated subquery : %d rows, %d ms%n", subQuery.size(), subQueryMillis);
+        System.out.printf("team aggregate join : %d rows, %d ms%n", report.size(), reportMillis);
+
+        assertThat(report).extracting("memberId").containsExactlyElementsOf(subQuery);
+    }
+}
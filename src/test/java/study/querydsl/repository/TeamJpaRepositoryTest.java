@@ -0,0 +1,171 @@
+package study.querydsl.repository;
+
+import org.hibernate.Hibernate;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import study.querydsl.dto.MemberSearchCondition;
+import study.querydsl.entity.Member;
+import study.querydsl.entity.Team;
+import study.querydsl.support.BadRequestException;
+import study.querydsl.support.QueryBudget;
+
+import javax.persistence.EntityManager;
+import javax.transaction.Transactional;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+@SpringBootTest
+@Transactional
+class TeamJpaRepositoryTest {
+
+    @Autowired
+    EntityManager em;
+
+    @Autowired
+    TeamJpaRepository teamJpaRepository;
+
+    Team teamA;
+    Team teamB;
+    Member member1;
+
+    @BeforeEach
+    public void before() {
+        teamA = new Team("teamA");
+        teamB = new Team("teamB");
+        em.persist(teamA);
+        em.persist(teamB);
+
+        member1 = new Member("member1", 10, teamA);
+        em.persist(member1);
+        em.persist(new Member("member2", 20, teamA));
+        em.persist(new Member("member3", 30, teamA));
+        em.persist(new Member("member4", 40, teamB));
+
+        em.flush();
+        em.clear();
+    }
+
+    @Test
+    public void countAndContainsWithoutLoadingMembers() {
+        Team findTeamA = em.find(Team.class, teamA.getId());
+
+        assertThat(teamJpaRepository.countMembers(teamA.getId())).contains(3L);
+        assertThat(teamJpaRepository.containsMember(teamA.getId(), member1.getId())).isTrue();
+        assertThat(teamJpaRepository.containsMember(teamB.getId(), member1.getId())).isFalse();
+
+        // extra lazy -> count 쿼리
+        assertThat(findTeamA.getMembers().size()).isEqualTo(3);
+        assertThat(Hibernate.isInitialized(findTeamA.getMembers())).isFalse();
+    }
+
+    @Test
+    @QueryBudget(selects = 1)
+    public void countReadsOneCounterRow() {
+        // 회원 수와 상관없이 team_member_count 행 하나
+        assertThat(teamJpaRepository.countMembers(teamA.getId())).contains(3L);
+    }
+
+    @Test
+    public void countSeesOwnUnflushedChanges() {
+        Member findMember = em.find(Member.class, member1.getId());
+        findMember.changeTeam(em.find(Team.class, teamB.getId()));
+        Team teamC = new Team("teamC");
+        em.persist(teamC);
+        em.persist(new Member("member5", 50, teamC));
+
+        // 아직 커밋 전이라 행에는 없는 이 트랜잭션의 증감까지 더한다
+        assertThat(teamJpaRepository.countMembers(teamA.getId())).contains(2L);
+        assertThat(teamJpaRepository.countMembers(teamB.getId())).contains(2L);
+        assertThat(teamJpaRepository.countMembers(teamC.getId())).contains(1L);
+    }
+
+    @Test
+    public void countOfUnknownTeamIsEmpty() {
+        assertThat(teamJpaRepository.countMembers(-1L)).isEmpty();
+    }
+
+    @Test
+    public void changeTeamDoesNotLoadMembers() {
+        Member findMember = em.find(Member.class, member1.getId());
+        Team findTeamB = em.find(Team.class, teamB.getId());
+
+        findMember.changeTeam(findTeamB);
+        em.flush();
+
+        assertThat(Hibernate.isInitialized(findTeamB.getMembers())).isFalse();
+        assertThat(teamJpaRepository.countMembers(teamB.getId())).contains(2L);
+    }
+
+    @Test
+    public void moveMembers() {
+        Member findMember = em.find(Member.class, member1.getId());
+        assertThat(teamJpaRepository.countMembers(teamB.getId())).contains(1L);
+
+        long moved = teamJpaRepository.moveMembers(teamA.getId(), teamB.getId());
+
+        assertThat(moved).isEqualTo(3);
+        assertThat(teamJpaRepository.countMembers(teamA.getId())).contains(0L);
+        assertThat(teamJpaRepository.countMembers(teamB.getId())).contains(4L);
+        // 영속성 컨텍스트에 있던 회원도 DB 와 맞춰진다
+        assertThat(findMember.getTeam().getId()).isEqualTo(teamB.getId());
+    }
+
+    @Test
+    public void bulkChangeTeam() {
+        Member findMember = em.find(Member.class, member1.getId());
+        Team findTeamA = em.find(Team.class, teamA.getId());
+        // 컬렉션이 초기화된 원래 팀도 DB 와 맞춰진다
+        Hibernate.initialize(findTeamA.getMembers());
+
+        MemberSearchCondition condition = new MemberSearchCondition();
+        condition.setAgeLoe(20);
+
+        long moved = teamJpaRepository.bulkChangeTeam(condition, teamB.getId());
+
+        assertThat(moved).isEqualTo(2);
+        assertThat(teamJpaRepository.countMembers(teamA.getId())).contains(1L);
+        assertThat(teamJpaRepository.countMembers(teamB.getId())).contains(3L);
+        assertThat(findMember.getTeam().getId()).isEqualTo(teamB.getId());
+        assertThat(findTeamA.getMembers()).extracting("username").containsExactly("member3");
+
+        // 이미 대상 팀에 있는 회원은 다시 옮기지 않는다
+        assertThat(teamJpaRepository.bulkChangeTeam(condition, teamB.getId())).isEqualTo(0);
+    }
+
+    @Test
+    @QueryBudget(max = 5, selects = 2)
+    public void bulkChangeTeamIsSetBased() {
+        MemberSearchCondition condition = new MemberSearchCondition();
+        condition.setTeamName("teamA");
+
+        // 대상 팀 조회, 커밋 잠금, change_log insert ... select, 원래 팀별 group by, update. 옮기는 회원 수와 상관없다
+        assertThat(teamJpaRepository.bulkChangeTeam(condition, teamB.getId())).isEqualTo(3);
+    }
+
+    @Test
+    public void bulkChangeTeamManyMembers() {
+        // 회원을 읽어서 청크로 나누지 않고 update 한번
+        Team findTeamA = em.find(Team.class, teamA.getId());
+        for (int i = 0; i < 300; i++) {
+            em.persist(new Member("bulk" + i, 50, findTeamA));
+        }
+        em.flush();
+        em.clear();
+
+        MemberSearchCondition condition = new MemberSearchCondition();
+        condition.setAgeGoe(50);
+
+        assertThat(teamJpaRepository.bulkChangeTeam(condition, teamB.getId())).isEqualTo(300);
+        assertThat(teamJpaRepository.countMembers(teamA.getId())).contains(3L);
+        assertThat(teamJpaRepository.countMembers(teamB.getId())).contains(301L);
+    }
+
+    @Test
+    public void bulkChangeTeamRejectsEmptyCondition() {
+        assertThatThrownBy(() -> teamJpaRepository.bulkChangeTeam(new MemberSearchCondition(), teamB.getId()))
+                .isInstanceOf(BadRequestException.class);
+    }
+}
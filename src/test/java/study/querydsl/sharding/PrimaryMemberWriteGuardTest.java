@@ -0,0 +1,30 @@
+package study.querydsl.sharding;
+
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThatCode;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class PrimaryMemberWriteGuardTest {
+
+    @Test
+    public void rejectsMemberAndTeamWrites() {
+        assertThatThrownBy(() -> PrimaryMemberWriteGuard.check(
+                "/* update study.querydsl.entity.Member */ update member set age=? where member_id=?"))
+                .isInstanceOf(IllegalStateException.class)
+                .hasMessageContaining("member");
+        assertThatThrownBy(() -> PrimaryMemberWriteGuard.check("insert into team (name, team_id) values (?, ?)"))
+                .isInstanceOf(IllegalStateException.class);
+        assertThatThrownBy(() -> PrimaryMemberWriteGuard.check("delete from member where member_id in (?, ?)"))
+                .isInstanceOf(IllegalStateException.class);
+    }
+
+    @Test
+    public void allowsReadsAndOtherTables() {
+        assertThatCode(() -> {
+            PrimaryMemberWriteGuard.check("select member0_.member_id from member member0_");
+            PrimaryMemberWriteGuard.check("insert into change_log (entity, entity_id, op) values (?, ?, ?)");
+            PrimaryMemberWriteGuard.check("insert into member_archive (member_id, username) values (?, ?)");
+        }).doesNotThrowAnyException();
+    }
+}
@@ -0,0 +1,117 @@
+package study.querydsl.sharding;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Sort;
+import study.querydsl.dto.MemberSearchCondition;
+import study.querydsl.dto.MemberTeamDto;
+import study.querydsl.entity.Member;
+import study.querydsl.entity.Team;
+import study.querydsl.support.BadRequestException;
+import study.querydsl.support.TableVersions;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * 임베디드 H2 3개로 샤딩 (스프링 컨텍스트 없이)
+ */
+class ShardedMemberSearchTest {
+
+    MemberShards shards;
+    ShardedMemberSearch search;
+    Team teamA;
+    Team teamB;
+    Team teamC;
+
+    @BeforeEach
+    public void before() {
+        shards = new MemberShards(new TableVersions(), 3, "jdbc:h2:mem:sharded_search_test_%d;DB_CLOSE_DELAY=-1", 50);
+        search = new ShardedMemberSearch(shards);
+
+        teamA = shards.saveTeam(new Team("teamA"));
+        teamB = shards.saveTeam(new Team("teamB"));
+        teamC = shards.saveTeam(new Team("teamC"));
+        Team[] teams = {teamA, teamB, teamC};
+        for (int i = 0; i < 30; i++) {
+            shards.saveMember(new Member("member" + i, i, teams[i % 3]));
+        }
+    }
+
+    @AfterEach
+    public void after() {
+        shards.close();
+    }
+
+    @Test
+    public void teamsAreSpreadAndMemberIdsAreUnique() {
+        Set<Integer> teamShards = new HashSet<>(List.of(
+                shards.shardFor(teamA.getId()), shards.shardFor(teamB.getId()), shards.shardFor(teamC.getId())));
+        assertThat(teamShards).hasSize(3);
+
+        List<MemberTeamDto> all = search.search(new MemberSearchCondition(), Sort.unsorted());
+        assertThat(all).hasSize(30);
+        assertThat(all).extracting("memberId").doesNotHaveDuplicates();
+    }
+
+    @Test
+    public void mergeSortsAcrossShards() {
+        MemberSearchCondition condition = new MemberSearchCondition();
+        condition.setAgeGoe(10);
+        condition.setAgeLoe(14);
+
+        List<MemberTeamDto> result = search.search(condition, Sort.by(Sort.Direction.DESC, "age"));
+
+        assertThat(result).extracting("age").containsExactly(14, 13, 12, 11, 10);
+    }
+
+    @Test
+    public void teamNameIsPrunedToOneShard() {
+        MemberSearchCondition condition = new MemberSearchCondition();
+        condition.setTeamName("teamB");
+
+        List<MemberTeamDto> result = search.search(condition, Sort.by("age"));
+
+        assertThat(result).hasSize(10);
+        assertThat(result).extracting("teamName").containsOnly("teamB");
+        assertThat(result).extracting("age").startsWith(1, 4, 7);
+    }
+
+    @Test
+    public void searchPage() {
+        Page<MemberTeamDto> page = search.searchPage(new MemberSearchCondition(),
+                PageRequest.of(1, 4, Sort.by("age")));
+
+        assertThat(page.getTotalElements()).isEqualTo(30);
+        assertThat(page.getContent()).extracting("age").containsExactly(4, 5, 6, 7);
+    }
+
+    @Test
+    public void includeArchivedIsRejected() {
+        MemberSearchCondition condition = new MemberSearchCondition();
+        condition.setIncludeArchived(true);
+
+        assertThatThrownBy(() -> search.search(condition, Sort.unsorted()))
+                .isInstanceOf(BadRequestException.class);
+        assertThatThrownBy(() -> search.searchPage(condition, PageRequest.of(0, 10)))
+                .isInstanceOf(BadRequestException.class);
+    }
+
+    @Test
+    public void deepPageIsRejected() {
+        int size = 100;
+        int lastPage = (int) (ShardedMemberSearch.MAX_MERGE_ROWS / size) - 1;
+
+        assertThat(search.searchPage(new MemberSearchCondition(), PageRequest.of(lastPage, size)).getContent()).isEmpty();
+        // 샤드마다 offset + size 건을 읽어야 하므로 상한을 넘는 페이지는 보내지 않는다
+        assertThatThrownBy(() -> search.searchPage(new MemberSearchCondition(), PageRequest.of(lastPage + 1, size)))
+                .isInstanceOf(BadRequestException.class);
+    }
+}
@@ -0,0 +1,30 @@
+package study.querydsl.sharding;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class ShardedWriteInterceptorTest {
+
+    ShardedWriteInterceptor interceptor = new ShardedWriteInterceptor();
+
+    @Test
+    public void rejectsWrites() {
+        assertThatThrownBy(() -> interceptor.preHandle(
+                new MockHttpServletRequest("PATCH", "/v1/members/34"), new MockHttpServletResponse(), null))
+                .isInstanceOf(ShardedWriteUnsupportedException.class)
+                .hasMessageContaining("/v1/members/34");
+        assertThatThrownBy(() -> interceptor.preHandle(
+                new MockHttpServletRequest("POST", "/v1/teams/2/members"), new MockHttpServletResponse(), null))
+                .isInstanceOf(ShardedWriteUnsupportedException.class);
+    }
+
+    @Test
+    public void passesReads() {
+        assertThat(interceptor.preHandle(
+                new MockHttpServletRequest("GET", "/v1/members/suggest"), new MockHttpServletResponse(), null)).isTrue();
+    }
+}
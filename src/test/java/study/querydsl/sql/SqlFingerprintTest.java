@@ -0,0 +1,39 @@
+package study.querydsl.sql;
+
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class SqlFingerprintTest {
+
+    @Test
+    public void literalsAndInListsCollapse() {
+        String literal = "/* select m from Member m */ select member0_.member_id from member member0_\n" +
+                "where member0_.username = 'kim''s' and member0_.age in (10, 20, 30)";
+        String prepared = "select member0_.member_id from member member0_ " +
+                "where member0_.username=? and member0_.age in (?,?)";
+
+        assertThat(SqlFingerprint.of(literal))
+                .isEqualTo("select member0_.member_id from member member0_ where member0_.username = ? and member0_.age in (?+)");
+        assertThat(SqlFingerprint.of(prepared))
+                .isEqualTo("select member0_.member_id from member member0_ where member0_.username = ? and member0_.age in (?+)");
+    }
+
+    @Test
+    public void operatorSpacingIsNormalized() {
+        String expected = "select m.member_id from member m where m.age >= ? and m.age <> ?";
+
+        assertThat(SqlFingerprint.of("select m.member_id from member m where m.age>=10 and m.age<>?"))
+                .isEqualTo(expected);
+        assertThat(SqlFingerprint.of("select m.member_id from member m where m.age >=  ? and m.age <> 3"))
+                .isEqualTo(expected);
+        assertThat(SqlFingerprint.of("select m.member_id from member m where m.age<=? or m.age>?"))
+                .isEqualTo("select m.member_id from member m where m.age <= ? or m.age > ?");
+    }
+
+    @Test
+    public void identifiersWithDigitsAreKept() {
+        assertThat(SqlFingerprint.of("select team1_.name from team team1_ limit 10"))
+                .isEqualTo("select team1_.name from team team1_ limit ?");
+    }
+}
@@ -0,0 +1,93 @@
+package study.querydsl.sql;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.test.web.servlet.MockMvc;
+
+import javax.transaction.Transactional;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+/**
+ * 테스트 설정은 sample-rate 0 이라 X-Debug-Sql 헤더가 붙은 요청만 추적된다
+ */
+@SpringBootTest
+@AutoConfigureMockMvc
+@Transactional
+class SqlTraceTest {
+
+    @Autowired
+    MockMvc mockMvc;
+
+    @Autowired
+    MeterRegistry meterRegistry;
+
+    @AfterEach
+    public void after() {
+        SqlTrace.clear();
+    }
+
+    @Test
+    public void interceptorSamplesOrFollowsHeader() {
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        new SqlTraceInterceptor(0).preHandle(new MockHttpServletRequest(), response, null);
+        assertThat(SqlTrace.currentTraceId()).isNull();
+        assertThat(response.getHeader(SqlTrace.TRACE_ID_HEADER)).isNull();
+
+        // sample-rate 1 이면 헤더가 없어도 모두 추적
+        SqlTraceInterceptor sampleAll = new SqlTraceInterceptor(1);
+        sampleAll.preHandle(new MockHttpServletRequest(), response, null);
+        assertThat(SqlTrace.currentTraceId()).isNotNull()
+                .isEqualTo(response.getHeader(SqlTrace.TRACE_ID_HEADER));
+
+        sampleAll.afterCompletion(new MockHttpServletRequest(), response, null, null);
+        assertThat(SqlTrace.currentTraceId()).isNull();
+    }
+
+    @Test
+    public void tracedRequestIsWrittenByWriterThread() throws Exception {
+        double writtenBefore = meterRegistry.counter("sql.trace.written").count();
+
+        mockMvc.perform(get("/v1/members").param("teamName", "teamA"))
+                .andExpect(status().isOk())
+                .andExpect(header().doesNotExist(SqlTrace.TRACE_ID_HEADER));
+
+        mockMvc.perform(get("/v1/members").param("teamName", "teamA").header(SqlTrace.HEADER, "true"))
+                .andExpect(status().isOk())
+                .andExpect(header().exists(SqlTrace.TRACE_ID_HEADER));
+        // 요청이 끝나면 요청 스레드의 추적은 꺼진다
+        assertThat(SqlTrace.currentTraceId()).isNull();
+
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (meterRegistry.counter("sql.trace.written").count() == writtenBefore) {
+            if (System.nanoTime() > deadline) {
+                throw new AssertionError("traced sql was not written");
+            }
+            Thread.sleep(10);
+        }
+    }
+
+    @Test
+    public void fullQueueDropsInsteadOfBlocking() throws Exception {
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        SqlTraceWriter writer = new SqlTraceWriter(registry, 1);
+        // writer 스레드를 먼저 끝내서 큐가 비워지지 않게 한다
+        writer.shutdown();
+
+        assertThat(writer.offer(new SqlTraceRecord("trace", "select 1", 0, null))).isTrue();
+        assertThat(writer.offer(new SqlTraceRecord("trace", "select 2", 0, null))).isFalse();
+        assertThat(registry.counter("sql.trace.dropped").count()).isEqualTo(1);
+        assertThat(registry.get("sql.trace.queued").gauge().value()).isEqualTo(1);
+    }
+}
@@ -0,0 +1,39 @@
+package study.querydsl.suggest;
+
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class UsernameIndexTest {
+
+    UsernameIndex index = new UsernameIndex();
+
+    @Test
+    public void prefixInOrderWithTeam() {
+        index.putTeam(1L, "teamA");
+        index.put(10L, "member10", 1L);
+        index.put(2L, "member2", null);
+        index.put(1L, "member1", 1L);
+        index.put(11L, "member1", 1L);
+        index.put(3L, "other", 1L);
+
+        assertThat(index.suggest("member1", 10)).extracting("memberId").containsExactly(1L, 11L, 10L);
+        assertThat(index.suggest("member", 2)).extracting("username").containsExactly("member1", "member1");
+        assertThat(index.suggest("member2", 10)).extracting("teamName").containsExactly((Object) null);
+        assertThat(index.suggest("member10", 10)).extracting("teamName").containsExactly("teamA");
+        assertThat(index.suggest("x", 10)).isEmpty();
+    }
+
+    @Test
+    public void renameAndRemove() {
+        index.put(1L, "member1", null);
+        index.put(2L, "member2", null);
+
+        index.put(1L, "renamed", null);
+        index.remove(2L);
+
+        assertThat(index.suggest("member", 10)).isEmpty();
+        assertThat(index.suggest("ren", 10)).extracting("memberId").containsExactly(1L);
+        assertThat(index.size()).isEqualTo(1);
+    }
+}
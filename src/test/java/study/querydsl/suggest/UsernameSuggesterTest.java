@@ -0,0 +1,138 @@
+package study.querydsl.suggest;
+
+import com.querydsl.jpa.impl.JPAQueryFactory;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import study.querydsl.archive.MemberArchiver;
+import study.querydsl.changefeed.ChangeFeedRepository;
+import study.querydsl.dto.MemberSearchCondition;
+import study.querydsl.entity.Member;
+import study.querydsl.entity.Team;
+
+import javax.persistence.EntityManager;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.assertj.core.api.Assertions.tuple;
+
+/**
+ * 인덱스는 커밋된 데이터와 change feed 를 읽으므로 테스트 데이터도 커밋해서 넣고, 끝나면 지운다
+ */
+@SpringBootTest
+class UsernameSuggesterTest {
+
+    private static final String PREFIX = "suggestTest";
+
+    @Autowired
+    EntityManager em;
+
+    @Autowired
+    ChangeFeedRepository changeFeedRepository;
+
+    @Autowired
+    JPAQueryFactory queryFactory;
+
+    @Autowired
+    MemberArchiver memberArchiver;
+
+    @Autowired
+    PlatformTransactionManager transactionManager;
+
+    TransactionTemplate tx;
+    UsernameSuggester suggester;
+    Long teamId;
+    List<Long> memberIds = new ArrayList<>();
+
+    @BeforeEach
+    public void before() {
+        tx = new TransactionTemplate(transactionManager);
+        tx.executeWithoutResult(status -> {
+            Team team = new Team("suggestTeam");
+            em.persist(team);
+            teamId = team.getId();
+            // 범위 2개, 청크 2건씩 -> 범위마다 여러 청크
+            for (int i = 0; i < 7; i++) {
+                Member member = new Member(PREFIX + i, i, i % 2 == 0 ? team : null);
+                em.persist(member);
+                memberIds.add(member.getId());
+            }
+        });
+        suggester = new UsernameSuggester(changeFeedRepository, queryFactory, new SimpleMeterRegistry(), 20, 2, 2);
+    }
+
+    @AfterEach
+    public void after() {
+        suggester.shutdown();
+        tx.executeWithoutResult(status -> {
+            em.createQuery("delete from Member m where m.id in :ids").setParameter("ids", memberIds).executeUpdate();
+            em.createQuery("delete from MemberArchive a where a.id in :ids").setParameter("ids", memberIds).executeUpdate();
+            em.createQuery("delete from Team t where t.id = :id").setParameter("id", teamId).executeUpdate();
+        });
+    }
+
+    @Test
+    public void notReadyUntilBuilt() throws Exception {
+        assertThat(suggester.isReady()).isFalse();
+        assertThatThrownBy(() -> suggester.suggest(PREFIX, 10))
+                .isInstanceOf(RejectedExecutionException.class);
+
+        suggester.start();
+        await(suggester::isReady);
+
+        assertThat(suggester.suggest(PREFIX, 10))
+                .extracting("memberId", "teamName")
+                .containsExactly(
+                        tuple(memberIds.get(0), "suggestTeam"),
+                        tuple(memberIds.get(1), null),
+                        tuple(memberIds.get(2), "suggestTeam"),
+                        tuple(memberIds.get(3), null),
+                        tuple(memberIds.get(4), "suggestTeam"),
+                        tuple(memberIds.get(5), null),
+                        tuple(memberIds.get(6), "suggestTeam"));
+    }
+
+    @Test
+    public void followsRenameDeleteAndArchive() throws Exception {
+        suggester.start();
+        await(suggester::isReady);
+
+        tx.executeWithoutResult(status -> {
+            em.find(Member.class, memberIds.get(0)).setUsername("renamed" + PREFIX);
+            em.remove(em.find(Member.class, memberIds.get(1)));
+            Member added = new Member(PREFIX + "Added", 50, null);
+            em.persist(added);
+            memberIds.add(added.getId());
+        });
+        MemberSearchCondition rule = new MemberSearchCondition();
+        rule.setMemberIds(List.of(memberIds.get(2)));
+        assertThat(memberArchiver.archive(rule, 10)).isEqualTo(1);
+
+        await(() -> suggester.suggest(PREFIX, 10).size() == 5);
+
+        assertThat(suggester.suggest(PREFIX, 10)).extracting("username")
+                .containsExactly(PREFIX + "3", PREFIX + "4", PREFIX + "5", PREFIX + "6", PREFIX + "Added");
+        assertThat(suggester.suggest("renamed" + PREFIX, 10)).extracting("memberId")
+                .containsExactly(memberIds.get(0));
+    }
+
+    private static void await(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (!condition.getAsBoolean()) {
+            if (System.nanoTime() > deadline) {
+                throw new AssertionError("condition not met in time");
+            }
+            Thread.sleep(20);
+        }
+    }
+}
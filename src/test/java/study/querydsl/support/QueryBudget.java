@@ -0,0 +1,37 @@
+package study.querydsl.support;
+
+import org.junit.jupiter.api.extension.ExtendWith;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * 테스트 본문(@BeforeEach 제외)에서 테스트 스레드가 실행한 SQL 수 / 할당한 바이트 수 상한
+ *
+ * 시퀀스 호출(next value for)은 세지 않는다. JDBC batch 는 executeBatch 한번이 한 문장이다.
+ * 넘으면 실행된 SQL 목록과 함께 실패한다. -1 은 검사하지 않는다.
+ *
+ * ex) @QueryBudget(selects = 1) : N+1 이나 추가 조회가 생기면 실패
+ */
+@Target({ElementType.METHOD, ElementType.TYPE})
+@Retention(RetentionPolicy.RUNTIME)
+@ExtendWith(QueryBudgetExtension.class)
+public @interface QueryBudget {
+
+    /**
+     * 전체 SQL (insert/update/delete 포함)
+     */
+    int max() default -1;
+
+    /**
+     * select 문
+     */
+    int selects() default -1;
+
+    /**
+     * 테스트 스레드가 할당한 바이트 (com.sun.management.ThreadMXBean 을 지원하는 JVM 에서만)
+     */
+    long maxAllocatedBytes() default -1;
+}
@@ -0,0 +1,84 @@
+package study.querydsl.support;
+
+import org.junit.jupiter.api.extension.AfterTestExecutionCallback;
+import org.junit.jupiter.api.extension.BeforeTestExecutionCallback;
+import org.junit.jupiter.api.extension.ExtensionContext;
+import org.junit.platform.commons.support.AnnotationSupport;
+import org.opentest4j.AssertionFailedError;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * @QueryBudget 검사 (JUnit 5 extension)
+ *
+ * 테스트 메서드 실행 직전에 기록을 시작하고, 끝나면 SQL 수/할당 바이트를 상한과 비교한다.
+ * 테스트가 이미 실패했으면 원래 실패를 가리지 않도록 검사하지 않는다.
+ */
+public class QueryBudgetExtension implements BeforeTestExecutionCallback, AfterTestExecutionCallback {
+
+    private static final ExtensionContext.Namespace NAMESPACE = ExtensionContext.Namespace.create(QueryBudgetExtension.class);
+    private static final String ALLOCATED_AT_START = "allocatedAtStart";
+
+    @Override
+    public void beforeTestExecution(ExtensionContext context) {
+        QueryCountListener.start();
+        context.getStore(NAMESPACE).put(ALLOCATED_AT_START, allocatedBytes());
+    }
+
+    @Override
+    public void afterTestExecution(ExtensionContext context) {
+        List<String> statements = QueryCountListener.stop();
+        long allocatedAtStart = context.getStore(NAMESPACE).remove(ALLOCATED_AT_START, Long.class);
+        long allocated = allocatedAtStart >= 0 ? allocatedBytes() - allocatedAtStart : -1;
+
+        if (context.getExecutionException().isPresent()) {
+            return;
+        }
+        QueryBudget budget = budget(context);
+        if (budget == null) {
+            return;
+        }
+
+        List<String> violations = new ArrayList<>();
+        if (budget.max() >= 0 && statements.size() > budget.max()) {
+            violations.add("statements " + statements.size() + " > max " + budget.max());
+        }
+        long selects = statements.stream().filter(QueryCountListener::isSelect).count();
+        if (budget.selects() >= 0 && selects > budget.selects()) {
+            violations.add("selects " + selects + " > " + budget.selects());
+        }
+        if (budget.maxAllocatedBytes() >= 0 && allocated > budget.maxAllocatedBytes()) {
+            violations.add("allocated " + allocated + " bytes > " + budget.maxAllocatedBytes());
+        }
+        if (violations.isEmpty()) {
+            return;
+        }
+
+        String listing = statements.stream()
+                .map(sql -> "  " + sql.replaceAll("\\s+", " "))
+                .collect(Collectors.joining("\n"));
+        throw new AssertionFailedError(context.getDisplayName() + " exceeded query budget: "
+                + String.join(", ", violations) + "\n" + listing);
+    }
+
+    private QueryBudget budget(ExtensionContext context) {
+        return AnnotationSupport.findAnnotation(context.getRequiredTestMethod(), QueryBudget.class)
+                .or(() -> AnnotationSupport.findAnnotation(context.getRequiredTestClass(), QueryBudget.class))
+                .orElse(null);
+    }
+
+    // 지원하지 않는 JVM 이면 -1
+    private static long allocatedBytes() {
+        java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        if (bean instanceof com.sun.management.ThreadMXBean) {
+            com.sun.management.ThreadMXBean threadBean = (com.sun.management.ThreadMXBean) bean;
+            if (threadBean.isThreadAllocatedMemorySupported() && threadBean.isThreadAllocatedMemoryEnabled()) {
+                return threadBean.getThreadAllocatedBytes(Thread.currentThread().getId());
+            }
+        }
+        return -1;
+    }
+}
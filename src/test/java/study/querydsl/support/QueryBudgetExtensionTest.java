@@ -0,0 +1,172 @@
+package study.querydsl.support;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ConditionEvaluationResult;
+import org.junit.jupiter.api.extension.ExecutionCondition;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.api.extension.ExtensionContext;
+import org.junit.platform.engine.TestExecutionResult;
+import org.junit.platform.testkit.engine.EngineExecutionResults;
+import org.junit.platform.testkit.engine.EngineTestKit;
+import org.junit.platform.testkit.engine.Events;
+import org.opentest4j.AssertionFailedError;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import study.querydsl.entity.Member;
+
+import javax.persistence.EntityManager;
+import javax.transaction.Transactional;
+import java.lang.management.ManagementFactory;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assumptions.assumeThat;
+import static org.junit.platform.engine.discovery.DiscoverySelectors.selectClass;
+
+/**
+ * 예산을 넘기는 픽스처 테스트를 EngineTestKit 으로 실행해서 QueryBudgetExtension 의 실패를 확인한다
+ *
+ * 픽스처는 EngineTestKit 에 FIXTURES 설정을 넘길 때만 켜진다 (일반 테스트 실행에서는 건너뛴다)
+ */
+class QueryBudgetExtensionTest {
+
+    static final String FIXTURES = "querybudget.fixtures";
+
+    @Test
+    public void overBudgetListsStatementsButNotSequenceCalls() {
+        Events tests = execute(OverSelectBudget.class);
+
+        assertThat(tests.failed().count()).isEqualTo(1);
+        Throwable failure = failureOf(tests);
+        assertThat(failure).isInstanceOf(AssertionFailedError.class)
+                .hasMessageContaining("exceeded query budget")
+                .hasMessageContaining("selects 2 > 1");
+        // 실행된 select 두 개가 바인딩 값과 함께 나오고, 시퀀스 호출은 세지도 나열하지도 않는다
+        assertThat(failure.getMessage())
+                .contains("'budget-a'", "'budget-b'")
+                .doesNotContainIgnoringCase("next value for");
+    }
+
+    @Test
+    public void sequenceCallsAreNotCounted() {
+        Events tests = execute(SequenceCallsOnly.class);
+
+        assertThat(tests.succeeded().count()).isEqualTo(1);
+        assertThat(tests.failed().count()).isZero();
+    }
+
+    @Test
+    public void allocationBudget() {
+        assumeThat(allocationSupported()).isTrue();
+
+        Events tests = execute(OverAllocationBudget.class);
+
+        assertThat(tests.failed().count()).isEqualTo(1);
+        assertThat(failureOf(tests)).hasMessageContaining("allocated").hasMessageContaining("bytes > 1024");
+    }
+
+    @Test
+    public void failedTestKeepsOriginalFailure() {
+        Events tests = execute(FailingOverBudget.class);
+
+        // 테스트가 이미 실패했으면 예산 검사로 원래 실패를 덮지 않는다
+        assertThat(failureOf(tests)).hasMessage("original failure")
+                .hasNoSuppressedExceptions();
+    }
+
+    private static Events execute(Class<?> fixture) {
+        EngineExecutionResults results = EngineTestKit.engine("junit-jupiter")
+                .configurationParameter(FIXTURES, "true")
+                .selectors(selectClass(fixture))
+                .execute();
+        return results.testEvents();
+    }
+
+    private static Throwable failureOf(Events tests) {
+        return tests.failed().stream()
+                .findFirst()
+                .flatMap(event -> event.getPayload(TestExecutionResult.class))
+                .flatMap(TestExecutionResult::getThrowable)
+                .orElseThrow(() -> new AssertionError("fixture did not fail"));
+    }
+
+    private static boolean allocationSupported() {
+        java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        return bean instanceof com.sun.management.ThreadMXBean
+                && ((com.sun.management.ThreadMXBean) bean).isThreadAllocatedMemorySupported()
+                && ((com.sun.management.ThreadMXBean) bean).isThreadAllocatedMemoryEnabled();
+    }
+
+    static class OnlyInEngineTestKit implements ExecutionCondition {
+
+        @Override
+        public ConditionEvaluationResult evaluateExecutionCondition(ExtensionContext context) {
+            return context.getConfigurationParameter(FIXTURES).isPresent()
+                    ? ConditionEvaluationResult.enabled("run by QueryBudgetExtensionTest")
+                    : ConditionEvaluationResult.disabled("fixture for QueryBudgetExtensionTest");
+        }
+    }
+
+    @ExtendWith(OnlyInEngineTestKit.class)
+    @SpringBootTest
+    @Transactional
+    static class OverSelectBudget {
+
+        @Autowired
+        EntityManager em;
+
+        @Test
+        @QueryBudget(selects = 1)
+        public void twoSelects() {
+            em.createNativeQuery("select next value for member_seq").getSingleResult();
+            findByUsername("budget-a");
+            findByUsername("budget-b");
+        }
+
+        private void findByUsername(String username) {
+            em.createQuery("select m from Member m where m.username = :username", Member.class)
+                    .setParameter("username", username)
+                    .getResultList();
+        }
+    }
+
+    @ExtendWith(OnlyInEngineTestKit.class)
+    @SpringBootTest
+    @Transactional
+    static class SequenceCallsOnly {
+
+        @Autowired
+        EntityManager em;
+
+        @Test
+        @QueryBudget(max = 0)
+        public void sequenceCalls() {
+            em.createNativeQuery("select next value for member_seq").getSingleResult();
+            em.createNativeQuery("select next value for team_seq").getSingleResult();
+        }
+    }
+
+    @ExtendWith(OnlyInEngineTestKit.class)
+    static class OverAllocationBudget {
+
+        static byte[] sink;
+
+        @Test
+        @QueryBudget(maxAllocatedBytes = 1024)
+        public void allocates() {
+            sink = new byte[1 << 20];
+        }
+    }
+
+    @ExtendWith(OnlyInEngineTestKit.class)
+    static class FailingOverBudget {
+
+        static byte[] sink;
+
+        @Test
+        @QueryBudget(maxAllocatedBytes = 0)
+        public void fails() {
+            sink = new byte[1 << 20];
+            throw new AssertionError("original failure");
+        }
+    }
+}
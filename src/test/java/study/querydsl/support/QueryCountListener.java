@@ -0,0 +1,65 @@
+package study.querydsl.support;
+
+import com.p6spy.engine.common.StatementInformation;
+import com.p6spy.engine.event.SimpleJdbcEventListener;
+import org.springframework.stereotype.Component;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * QueryBudget 이 켜진 테스트 스레드에서 실행된 SQL 을 모은다 (p6spy 리스너, 테스트 전용)
+ */
+@Component
+public class QueryCountListener extends SimpleJdbcEventListener {
+
+    private static final ThreadLocal<List<String>> RECORDING = new ThreadLocal<>();
+
+    static void start() {
+        RECORDING.set(new ArrayList<>());
+    }
+
+    static List<String> stop() {
+        List<String> statements = RECORDING.get();
+        RECORDING.remove();
+        return statements != null ? statements : List.of();
+    }
+
+    @Override
+    public void onAfterAnyExecute(StatementInformation statementInformation, long timeElapsedNanos, SQLException e) {
+        List<String> statements = RECORDING.get();
+        if (statements == null) {
+            return;
+        }
+        String sql = statementInformation.getSqlWithValues();
+        if (sql == null || isSequenceCall(sql)) {
+            return;
+        }
+        statements.add(sql);
+    }
+
+    static boolean isSelect(String sql) {
+        String statement = stripLeadingComments(sql).toLowerCase(Locale.ROOT);
+        return statement.startsWith("select") || statement.startsWith("with");
+    }
+
+    private static boolean isSequenceCall(String sql) {
+        String lower = sql.toLowerCase(Locale.ROOT);
+        return lower.contains("next value for") || lower.contains("nextval(");
+    }
+
+    // use_sql_comments 때문에 앞에 붙는 /* ... */ 주석을 뗀다
+    private static String stripLeadingComments(String sql) {
+        String s = sql.trim();
+        while (s.startsWith("/*")) {
+            int end = s.indexOf("*/");
+            if (end < 0) {
+                return "";
+            }
+            s = s.substring(end + 2).trim();
+        }
+        return s;
+    }
+}
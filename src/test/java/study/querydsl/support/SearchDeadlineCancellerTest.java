@@ -0,0 +1,63 @@
+package study.querydsl.support;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.dao.QueryTimeoutException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import study.querydsl.dto.MemberSearchCondition;
+import study.querydsl.repository.MemberJpaRepository;
+
+import javax.transaction.Transactional;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+@SpringBootTest
+@Transactional
+class SearchDeadlineCancellerTest {
+
+    // 끝나지 않을 만큼 긴 조인 (행마다 취소 여부를 확인한다)
+    private static final String SLOW_SQL =
+            "select count(*) from system_range(1, 100000) a, system_range(1, 100000) b where a.x + b.x = 0";
+
+    @Autowired
+    JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    MemberJpaRepository memberJpaRepository;
+
+    @AfterEach
+    public void after() {
+        SearchDeadline.clear();
+    }
+
+    @Test
+    public void statementIsCanceledAtDeadline() {
+        SearchDeadline.start(200);
+        long start = System.nanoTime();
+
+        assertThatThrownBy(() -> jdbcTemplate.queryForObject(SLOW_SQL, Long.class))
+                .isInstanceOf(QueryTimeoutException.class);
+
+        // 초 단위 timeout 처럼 1초로 올림하지 않는다
+        assertThat(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start)).isLessThan(1000);
+    }
+
+    @Test
+    public void expiredDeadlineStopsBulkUpdate() {
+        MemberSearchCondition condition = new MemberSearchCondition();
+        condition.setAgeGoe(0);
+        SearchDeadline.start(0);
+
+        assertThatThrownBy(() -> memberJpaRepository.bulkAddAge(condition, 1))
+                .isInstanceOf(SearchTimeoutException.class);
+    }
+
+    @Test
+    public void withoutDeadlineNothingIsScheduled() {
+        assertThat(jdbcTemplate.queryForObject("select 1", Integer.class)).isEqualTo(1);
+    }
+}
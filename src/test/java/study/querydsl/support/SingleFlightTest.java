@@ -0,0 +1,121 @@
+package study.querydsl.support;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class SingleFlightTest {
+
+    SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    SingleFlight<String, List<String>> singleFlight = new SingleFlight<>(meterRegistry, "test");
+
+    @Test
+    public void concurrentCallsShareOneLoad() throws Exception {
+        AtomicInteger loads = new AtomicInteger();
+        CountDownLatch release = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+
+        Future<List<String>> leader = executor.submit(() -> singleFlight.execute("teamA", () -> {
+            loads.incrementAndGet();
+            await(release);
+            return List.of("member1");
+        }));
+        while (loads.get() == 0) {
+            Thread.sleep(1);
+        }
+        Future<List<String>> follower1 = executor.submit(() -> singleFlight.execute("teamA", () -> List.of("other")));
+        Future<List<String>> follower2 = executor.submit(() -> singleFlight.execute("teamA", () -> List.of("other")));
+        while (meterRegistry.counter("singleflight.coalesced", "name", "test").count() < 2) {
+            Thread.sleep(1);
+        }
+        release.countDown();
+
+        assertThat(leader.get()).containsExactly("member1");
+        assertThat(follower1.get()).isSameAs(leader.get());
+        assertThat(follower2.get()).isSameAs(leader.get());
+        assertThat(loads.get()).isEqualTo(1);
+        executor.shutdown();
+    }
+
+    @Test
+    public void leaderFailureIsNotRemembered() throws Exception {
+        assertThatThrownBy(() -> singleFlight.execute("teamA", () -> {
+            throw new IllegalStateException("boom");
+        })).isInstanceOf(IllegalStateException.class);
+
+        // 실패한 결과는 남지 않고 다음 호출은 새로 실행된다
+        assertThat(singleFlight.execute("teamA", () -> List.of("member1"))).containsExactly("member1");
+    }
+
+    @Test
+    public void followerGetsLeaderFailure() throws Exception {
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        AtomicInteger followerLoads = new AtomicInteger();
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+
+        Future<List<String>> leader = executor.submit(() -> singleFlight.execute("teamA", () -> {
+            started.countDown();
+            await(release);
+            throw new IllegalStateException("boom");
+        }));
+        started.await(5, TimeUnit.SECONDS);
+        Future<List<String>> follower = executor.submit(() -> singleFlight.execute("teamA", () -> {
+            followerLoads.incrementAndGet();
+            return List.of("other");
+        }));
+        awaitCoalesced(1);
+        release.countDown();
+
+        assertThatThrownBy(leader::get).hasCauseInstanceOf(IllegalStateException.class);
+        assertThatThrownBy(follower::get).hasCauseInstanceOf(IllegalStateException.class).hasMessageContaining("boom");
+        assertThat(followerLoads.get()).isZero();
+        executor.shutdown();
+    }
+
+    @Test
+    public void followerRetriesAfterLeaderTimeout() throws Exception {
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+
+        Future<List<String>> leader = executor.submit(() -> singleFlight.execute("teamA", () -> {
+            started.countDown();
+            await(release);
+            throw new SearchTimeoutException("leader deadline exceeded");
+        }));
+        started.await(5, TimeUnit.SECONDS);
+        Future<List<String>> follower = executor.submit(() -> singleFlight.execute("teamA", () -> List.of("member1")));
+        awaitCoalesced(1);
+        release.countDown();
+
+        // 리더의 데드라인은 팔로워와 상관없으므로 팔로워가 자기 loader 로 다시 실행한다
+        assertThatThrownBy(leader::get).hasCauseInstanceOf(SearchTimeoutException.class);
+        assertThat(follower.get(5, TimeUnit.SECONDS)).containsExactly("member1");
+        executor.shutdown();
+    }
+
+    private void awaitCoalesced(int count) throws InterruptedException {
+        while (meterRegistry.counter("singleflight.coalesced", "name", "test").count() < count) {
+            Thread.sleep(1);
+        }
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
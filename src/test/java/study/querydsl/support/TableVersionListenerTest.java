@@ -0,0 +1,40 @@
+package study.querydsl.support;
+
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class TableVersionListenerTest {
+
+    @Test
+    public void writtenTable() {
+        // use_sql_comments 로 붙는 주석, 스키마, 대소문자
+        assertThat(TableVersionListener.writtenTable(
+                "/* insert study.querydsl.entity.Member */ insert into member (age, team_id, username, member_id) values (?, ?, ?, ?)"))
+                .isEqualTo("member");
+        assertThat(TableVersionListener.writtenTable("UPDATE PUBLIC.TEAM set name=? where team_id=?")).isEqualTo("team");
+        assertThat(TableVersionListener.writtenTable("/* delete */ /* bulk */ delete from member where member_id in (?, ?)"))
+                .isEqualTo("member");
+        assertThat(TableVersionListener.writtenTable("delete member where member_id=?")).isEqualTo("member");
+        assertThat(TableVersionListener.writtenTable("merge into team key (team_id) values (?, ?)")).isEqualTo("team");
+        assertThat(TableVersionListener.writtenTable("insert into member_archive select * from member")).isEqualTo("member_archive");
+    }
+
+    @Test
+    public void readsAreNotWrites() {
+        assertThat(TableVersionListener.writtenTable("select member0_.member_id from member member0_")).isNull();
+        assertThat(TableVersionListener.writtenTable("/* select m from Member m */ select count(*) from member")).isNull();
+        assertThat(TableVersionListener.writtenTable("call next value for member_seq")).isNull();
+        assertThat(TableVersionListener.writtenTable("/* unterminated")).isNull();
+        assertThat(TableVersionListener.writtenTable(null)).isNull();
+    }
+
+    @Test
+    public void httpLastModifiedWaitsForTheNextSecond() {
+        // 12:00:10.300 에 바뀌었으면 12:00:11.000 부터 보낸다
+        long changedAt = 10_300;
+        assertThat(TableVersions.httpLastModified(changedAt, 10_300)).isEqualTo(-1);
+        assertThat(TableVersions.httpLastModified(changedAt, 10_999)).isEqualTo(-1);
+        assertThat(TableVersions.httpLastModified(changedAt, 11_000)).isEqualTo(changedAt);
+    }
+}